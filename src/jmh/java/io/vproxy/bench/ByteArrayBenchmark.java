@@ -0,0 +1,126 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.bytearray.MemorySegmentByteArray;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.foreign.Arena;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ByteArrayBenchmark {
+    private static final int LEN = 1500;
+
+    @Param({"simple", "sub", "composite", "memory-segment"})
+    public String impl;
+
+    private Arena arena;
+    private ByteArray array;
+    private ByteArray dst;
+
+    @Setup
+    public void setUp() {
+        var bytes = new byte[LEN];
+        for (int i = 0; i < LEN; ++i) {
+            bytes[i] = (byte) i;
+        }
+        switch (impl) {
+            case "simple":
+                array = ByteArray.from(bytes);
+                break;
+            case "sub":
+                array = ByteArray.from(new byte[LEN + 64]).sub(32, LEN);
+                ByteArray.from(bytes).copyInto(array, 0, 0, LEN);
+                break;
+            case "composite":
+                array = ByteArray.from(bytes).sub(0, 14)
+                    .concat(ByteArray.from(bytes).sub(14, 20))
+                    .concat(ByteArray.from(bytes).sub(34, 20))
+                    .concat(ByteArray.from(bytes).sub(54, LEN - 54));
+                break;
+            case "memory-segment":
+                arena = Arena.ofConfined();
+                var seg = arena.allocate(LEN);
+                array = new MemorySegmentByteArray(seg);
+                ByteArray.from(bytes).copyInto(array, 0, 0, LEN);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown impl " + impl);
+        }
+        dst = ByteArray.allocate(LEN);
+        array.copyInto(dst, 0, 0, LEN); // same content, so equals(...) compares all bytes
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (arena != null) {
+            arena.close();
+            arena = null;
+        }
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        for (int i = 0; i < LEN; ++i) {
+            bh.consume(array.get(i));
+        }
+    }
+
+    @Benchmark
+    public void set() {
+        for (int i = 0; i < LEN; ++i) {
+            array.set(i, (byte) i);
+        }
+    }
+
+    @Benchmark
+    public void uint16(Blackhole bh) {
+        for (int i = 0; i + 2 <= LEN; i += 2) {
+            bh.consume(array.uint16(i));
+        }
+    }
+
+    @Benchmark
+    public void int32(Blackhole bh) {
+        for (int i = 0; i + 4 <= LEN; i += 4) {
+            bh.consume(array.int32(i));
+        }
+    }
+
+    @Benchmark
+    public void int64(Blackhole bh) {
+        for (int i = 0; i + 8 <= LEN; i += 8) {
+            bh.consume(array.int64(i));
+        }
+    }
+
+    @Benchmark
+    public void writeInt32() {
+        for (int i = 0; i + 4 <= LEN; i += 4) {
+            array.int32(i, i);
+        }
+    }
+
+    @Benchmark
+    public void copyInto() {
+        array.copyInto(dst, 0, 0, LEN);
+    }
+
+    @Benchmark
+    public byte[] toNewJavaArray() {
+        return array.toNewJavaArray();
+    }
+
+    @Benchmark
+    public boolean equalsSelfCopy() {
+        return array.equals(dst);
+    }
+
+    @Benchmark
+    public int hashCodeFull() {
+        return array.hashCode();
+    }
+}
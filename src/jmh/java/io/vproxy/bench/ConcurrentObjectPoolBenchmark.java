@@ -0,0 +1,54 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.util.objectpool.ConcurrentObjectPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentObjectPoolBenchmark {
+    private ConcurrentObjectPool<Object> pool;
+
+    @Setup
+    public void setUp() {
+        pool = new ConcurrentObjectPool<>(4096);
+        for (int i = 0; i < 1024; ++i) {
+            pool.add(new Object());
+        }
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public Object pollThenAdd() {
+        var o = pool.poll();
+        if (o == null) {
+            o = new Object();
+        }
+        pool.add(o);
+        return o;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public Object contendedPollThenAdd() {
+        return pollThenAdd();
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(2)
+    public boolean produce() {
+        return pool.add(new Object());
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(2)
+    public Object consume() {
+        return pool.poll();
+    }
+}
@@ -0,0 +1,119 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.http.HttpReqParser;
+import io.vproxy.base.http.HttpRespParser;
+import io.vproxy.base.http.HttpStreamHandler;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpParserBenchmark {
+    private static final String REQ_HEAD = "" +
+        "POST /api/v1/resources/12345?verbose=true HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "User-Agent: vproxy-bench/1.0\r\n" +
+        "Accept: */*\r\n" +
+        "Accept-Encoding: gzip, deflate\r\n" +
+        "Connection: keep-alive\r\n" +
+        "Content-Type: application/json\r\n";
+    private static final String RESP_HEAD = "" +
+        "HTTP/1.1 200 OK\r\n" +
+        "Server: vproxy\r\n" +
+        "Date: Mon, 01 Jan 2024 00:00:00 GMT\r\n" +
+        "Content-Type: application/octet-stream\r\n" +
+        "Cache-Control: no-cache\r\n" +
+        "Connection: keep-alive\r\n";
+
+    @Param({"0", "4096"})
+    public int bodyLen;
+
+    private ByteArray req;
+    private ByteArray resp;
+    private ByteArray chunkedResp;
+    private RingBuffer ring;
+    private final HttpStreamHandler streamHandler = data -> data.length();
+
+    @Setup
+    public void setUp() {
+        var body = "a".repeat(bodyLen);
+        req = ByteArray.from(REQ_HEAD + "Content-Length: " + bodyLen + "\r\n\r\n" + body).arrange();
+        resp = ByteArray.from(RESP_HEAD + "Content-Length: " + bodyLen + "\r\n\r\n" + body).arrange();
+        var chunked = new StringBuilder(RESP_HEAD + "Transfer-Encoding: chunked\r\n\r\n");
+        for (int i = 0; i < bodyLen; i += 1024) {
+            int n = Math.min(1024, bodyLen - i);
+            chunked.append(Integer.toHexString(n)).append("\r\n").append("a".repeat(n)).append("\r\n");
+        }
+        chunked.append("0\r\n\r\n");
+        chunkedResp = ByteArray.from(chunked.toString()).arrange();
+        ring = RingBuffer.allocate(16384);
+    }
+
+    private static void check(int res, String err) {
+        if (res != 0) {
+            throw new IllegalStateException("parsing failed: " + err);
+        }
+    }
+
+    @Benchmark
+    public Object parseRequest() {
+        var parser = new HttpReqParser();
+        check(parser.feed(ByteArrayChannel.fromFull(req)), parser.getErrorMessage());
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Object parseRequestByteByByte() {
+        var parser = new HttpReqParser(new HttpReqParser.Params().setBulkScanning(false));
+        check(parser.feed(ByteArrayChannel.fromFull(req)), parser.getErrorMessage());
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Object parseRequestHeaderSlices() {
+        var parser = new HttpReqParser(new HttpReqParser.Params().setHeadersOnly(true).setHeaderSlices(true));
+        check(parser.feed(ByteArrayChannel.fromFull(req)), parser.getErrorMessage());
+        return parser.getBuilder();
+    }
+
+    @Benchmark
+    public Object parseRequestHeadersOnly() {
+        var parser = new HttpReqParser(new HttpReqParser.Params().setHeadersOnly(true));
+        check(parser.feed(ByteArrayChannel.fromFull(req)), parser.getErrorMessage());
+        return parser.getBuilder();
+    }
+
+    @Benchmark
+    public Object parseRequestFromRingBuffer() {
+        ring.storeBytesFrom(req);
+        var parser = new HttpReqParser();
+        check(parser.feed(ring), parser.getErrorMessage());
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Object parseResponse() {
+        var parser = new HttpRespParser();
+        check(parser.feed(ByteArrayChannel.fromFull(resp)), parser.getErrorMessage());
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Object parseChunkedResponse() {
+        var parser = new HttpRespParser();
+        check(parser.feed(ByteArrayChannel.fromFull(chunkedResp)), parser.getErrorMessage());
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Object parseChunkedResponseStreaming() {
+        var parser = new HttpRespParser(new HttpRespParser.Params().setStreamHandler(streamHandler));
+        check(parser.feed(ByteArrayChannel.fromFull(chunkedResp)), parser.getErrorMessage());
+        return parser.getResult();
+    }
+}
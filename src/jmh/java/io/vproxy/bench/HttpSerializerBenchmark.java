@@ -0,0 +1,59 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.http.HttpResponseSerializer;
+import io.vproxy.base.processor.http1.entity.Header;
+import io.vproxy.base.processor.http1.entity.Response;
+import io.vproxy.base.util.ByteArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpSerializerBenchmark {
+    @Param({"0", "4096"})
+    public int bodyLen;
+
+    private Response resp;
+    private ByteBuffer out;
+
+    @Setup
+    public void setUp() {
+        resp = new Response();
+        resp.version = "HTTP/1.1";
+        resp.statusCode = 200;
+        resp.reason = "OK";
+        resp.headers = List.of(
+            new Header("Server", "vproxy"),
+            new Header("Date", "Mon, 01 Jan 2024 00:00:00 GMT"),
+            new Header("Content-Type", "application/octet-stream"),
+            new Header("Cache-Control", "no-cache"),
+            new Header("Connection", "keep-alive"),
+            new Header("Content-Length", "" + bodyLen)
+        );
+        if (bodyLen > 0) {
+            resp.body = ByteArray.from("a".repeat(bodyLen));
+        }
+        out = ByteBuffer.allocateDirect(16384);
+    }
+
+    @Benchmark
+    public Object toByteArray() {
+        out.clear();
+        var bytes = resp.toByteArray();
+        bytes.byteBufferPut(out, 0, bytes.length());
+        return out;
+    }
+
+    @Benchmark
+    public Object serialize() {
+        out.clear();
+        var segments = HttpResponseSerializer.serialize(resp);
+        segments.writeTo(out);
+        segments.release();
+        return out;
+    }
+}
@@ -0,0 +1,155 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
+import io.vproxy.base.util.Utils;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.MacAddress;
+import io.vproxy.vpacket.*;
+import io.vproxy.vpacket.tuples.FlowKey;
+import io.vproxy.vpacket.tuples.FlowTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketBenchmark {
+    @Param({"64", "1400"})
+    public int payload;
+
+    private byte[] frame;
+    private ByteArray l3; // the ip packet inside the frame
+    private ByteArray frameArray;
+    private final PacketArena arena = new PacketArena();
+    private final FlowKey flowKey = new FlowKey();
+    private final FlowTable<Object> flowTable = new FlowTable<>();
+    private final PacketArena batchArena = new PacketArena(BATCH);
+    private final PacketBatchParser batchParser = new PacketBatchParser(BATCH, batchArena);
+    private final PacketDataBuffer[] batchFrames = new PacketDataBuffer[BATCH];
+    private final EthernetPacket[] batchPackets = new EthernetPacket[BATCH];
+    private final String[] batchErrors = new String[BATCH];
+
+    private static final int BATCH = 32;
+
+    @Setup
+    public void setUp() {
+        var tcp = new TcpPacket();
+        tcp.setSrcPort(34567);
+        tcp.setDstPort(80);
+        tcp.setSeqNum(1234567);
+        tcp.setAckNum(7654321);
+        tcp.setFlags(Consts.TCP_FLAGS_ACK | Consts.TCP_FLAGS_PSH);
+        tcp.setWindow(65535);
+        tcp.setData(ByteArray.allocateInitZero(payload));
+
+        var ip = new Ipv4Packet();
+        ip.setVersion(4);
+        ip.setTtl(64);
+        ip.setProtocol(Consts.IP_PROTOCOL_TCP);
+        ip.setSrc(IP.fromIPv4("10.0.0.1"));
+        ip.setDst(IP.fromIPv4("10.0.0.2"));
+        ip.setPacket(tcp);
+
+        var ether = new EthernetPacket();
+        ether.setSrc(new MacAddress("02:00:00:00:00:01"));
+        ether.setDst(new MacAddress("02:00:00:00:00:02"));
+        ether.setType(Consts.ETHER_TYPE_IPv4);
+        ether.setPacket(ip);
+
+        frame = ether.getRawPacket(0).toNewJavaArray();
+        l3 = ByteArray.from(frame).sub(14, frame.length - 14);
+        frameArray = ByteArray.from(frame.clone());
+
+        var key = new FlowKey();
+        for (int i = 0; i < 10000; ++i) {
+            key.setIPv4(0x0a000000 | i, 0x0a000002, Consts.IP_PROTOCOL_TCP, 34567, 80);
+            flowTable.put(key, i);
+        }
+    }
+
+    private EthernetPacket parse() {
+        var ether = new EthernetPacket();
+        var err = ether.from(new PacketDataBuffer(ByteArray.from(frame.clone())));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return ether;
+    }
+
+    @Benchmark
+    public EthernetPacket parseFull() {
+        return parse();
+    }
+
+    @Benchmark
+    public EthernetPacket parsePartial() {
+        var ether = new EthernetPacket();
+        var err = ether.from(new PacketDataBuffer(ByteArray.from(frame.clone())), true);
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return ether;
+    }
+
+    @Benchmark
+    public long parsePartialFiveTuple() {
+        var ether = parsePartial();
+        var ip = (Ipv4Packet) ether.getPacket();
+        var tcp = (TcpPacket) ip.getPacket();
+        return ((long) ip.getSrcIPv4Value() << 32) ^ ip.getDstIPv4Value() ^ ip.getProtocol()
+            ^ ((long) tcp.getSrcPort() << 16) ^ tcp.getDstPort();
+    }
+
+    @Benchmark
+    public EthernetPacket parsePartialWithArena() {
+        arena.reset();
+        var ether = arena.ethernet();
+        var err = ether.from(arena.buffer(frameArray), true);
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return ether;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int parsePartialBatch() {
+        batchArena.reset();
+        for (int i = 0; i < BATCH; ++i) {
+            batchFrames[i] = batchArena.buffer(frameArray);
+        }
+        return batchParser.parse(batchFrames, BATCH, batchPackets, batchErrors);
+    }
+
+    @Benchmark
+    public Object flowLookup() {
+        var ether = parsePartialWithArena();
+        flowKey.from(0, ether);
+        return flowTable.get(flowKey);
+    }
+
+    @Benchmark
+    public ByteArray rewritePortsAndChecksum() {
+        var ether = parse();
+        var ip = (Ipv4Packet) ether.getPacket();
+        var tcp = (TcpPacket) ip.getPacket();
+        tcp.setSrcPort(40000);
+        tcp.setDstPort(8080);
+        ip.setTtl(63);
+        return ether.getRawPacket(0);
+    }
+
+    @Benchmark
+    public int checksum() {
+        return Utils.calculateChecksum(l3, l3.length());
+    }
+
+    @Benchmark
+    public ByteArray rebuild() {
+        var ether = parse();
+        ether.clearAllRawPackets();
+        return ether.getRawPacket(0);
+    }
+}
@@ -0,0 +1,59 @@
+package io.vproxy.bench;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.base.util.ringbuffer.SimpleRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RingBufferBenchmark {
+    private static final int CAP = 16384;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    @Param({"1024", "12000"})
+    public int chunk;
+
+    private SimpleRingBuffer buffer;
+    private ByteArrayChannel src;
+    private ByteArrayChannel dst;
+
+    @Setup
+    public void setUp() {
+        buffer = direct ? RingBuffer.allocateDirect(CAP) : RingBuffer.allocate(CAP);
+        src = ByteArrayChannel.fromFull(ByteArray.allocateInitZero(chunk));
+        dst = ByteArrayChannel.fromEmpty(chunk);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.clean();
+    }
+
+    @Benchmark
+    public int storeThenWrite() {
+        src.setReadOff(0);
+        dst.reset();
+        buffer.storeBytesFrom(src);
+        return buffer.writeTo(dst);
+    }
+
+    @Benchmark
+    public int storeThenWriteWrapped() throws IOException {
+        // keep the cursors moving so that half of the cycles cross the end of the buffer
+        src.setReadOff(0);
+        dst.reset();
+        int n = buffer.storeBytesFrom(src);
+        dst.reset();
+        n += buffer.writeTo(dst, chunk / 2 + 1);
+        dst.reset();
+        return n + buffer.writeTo(dst);
+    }
+}
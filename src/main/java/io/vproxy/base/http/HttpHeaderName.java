@@ -0,0 +1,134 @@
+package io.vproxy.base.http;
+
+import io.vproxy.base.util.ByteArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Well-known http header names.<br>
+ * The instances are interned, use <code>==</code> to compare them,
+ * and use {@link #of(ByteArray, int, int)} to find the name of raw header bytes without creating a string.
+ */
+public final class HttpHeaderName {
+    public static final HttpHeaderName HOST = new HttpHeaderName("Host");
+    public static final HttpHeaderName CONTENT_LENGTH = new HttpHeaderName("Content-Length");
+    public static final HttpHeaderName TRANSFER_ENCODING = new HttpHeaderName("Transfer-Encoding");
+    public static final HttpHeaderName CONNECTION = new HttpHeaderName("Connection");
+    public static final HttpHeaderName KEEP_ALIVE = new HttpHeaderName("Keep-Alive");
+    public static final HttpHeaderName UPGRADE = new HttpHeaderName("Upgrade");
+    public static final HttpHeaderName CONTENT_TYPE = new HttpHeaderName("Content-Type");
+    public static final HttpHeaderName CONTENT_ENCODING = new HttpHeaderName("Content-Encoding");
+    public static final HttpHeaderName ACCEPT_ENCODING = new HttpHeaderName("Accept-Encoding");
+    public static final HttpHeaderName CACHE_CONTROL = new HttpHeaderName("Cache-Control");
+    public static final HttpHeaderName DATE = new HttpHeaderName("Date");
+    public static final HttpHeaderName SERVER = new HttpHeaderName("Server");
+    public static final HttpHeaderName USER_AGENT = new HttpHeaderName("User-Agent");
+    public static final HttpHeaderName COOKIE = new HttpHeaderName("Cookie");
+    public static final HttpHeaderName SET_COOKIE = new HttpHeaderName("Set-Cookie");
+    public static final HttpHeaderName LOCATION = new HttpHeaderName("Location");
+    public static final HttpHeaderName ETAG = new HttpHeaderName("ETag");
+    public static final HttpHeaderName IF_NONE_MATCH = new HttpHeaderName("If-None-Match");
+    public static final HttpHeaderName X_FORWARDED_FOR = new HttpHeaderName("X-Forwarded-For");
+
+    private static final HttpHeaderName[][] byLength; // indexed by length of the name
+    private static final Map<String, HttpHeaderName> byName = new HashMap<>();
+
+    static {
+        var all = new HttpHeaderName[]{
+            HOST, CONTENT_LENGTH, TRANSFER_ENCODING, CONNECTION, KEEP_ALIVE, UPGRADE,
+            CONTENT_TYPE, CONTENT_ENCODING, ACCEPT_ENCODING, CACHE_CONTROL, DATE, SERVER,
+            USER_AGENT, COOKIE, SET_COOKIE, LOCATION, ETAG, IF_NONE_MATCH, X_FORWARDED_FOR,
+        };
+        int max = 0;
+        for (var n : all) {
+            max = Math.max(max, n.lower.length);
+        }
+        byLength = new HttpHeaderName[max + 1][];
+        for (var n : all) {
+            byName.put(n.name, n);
+            var arr = byLength[n.lower.length];
+            if (arr == null) {
+                arr = new HttpHeaderName[1];
+            } else {
+                var tmp = new HttpHeaderName[arr.length + 1];
+                System.arraycopy(arr, 0, tmp, 0, arr.length);
+                arr = tmp;
+            }
+            arr[arr.length - 1] = n;
+            byLength[n.lower.length] = arr;
+        }
+    }
+
+    public final String name;
+    private final byte[] lower;
+    private final byte[] encoded;
+    private final ByteArray bytes;
+
+    private HttpHeaderName(String name) {
+        this.name = name;
+        this.lower = name.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+        this.encoded = name.getBytes(StandardCharsets.US_ASCII);
+        this.bytes = ByteArray.from(encoded);
+    }
+
+    byte[] encoded() {
+        return encoded;
+    }
+
+    /**
+     * @return the name in its canonical case, the returned array must not be modified
+     */
+    public ByteArray bytes() {
+        return bytes;
+    }
+
+    public boolean equalsIgnoreCase(ByteArray arr, int off, int len) {
+        if (len != lower.length) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            byte b = arr.get(off + i);
+            if ('A' <= b && b <= 'Z') {
+                b += ('a' - 'A');
+            }
+            if (b != lower[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the well-known name, or null if the bytes are not a well-known name
+     */
+    public static HttpHeaderName of(ByteArray arr, int off, int len) {
+        if (len >= byLength.length) {
+            return null;
+        }
+        var names = byLength[len];
+        if (names == null) {
+            return null;
+        }
+        for (var n : names) {
+            if (n.equalsIgnoreCase(arr, off, len)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the well-known name which is exactly the same as <code>name</code> (case sensitive), or null if not found
+     */
+    public static HttpHeaderName of(String name) {
+        return byName.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,198 @@
+package io.vproxy.base.http;
+
+import io.vproxy.base.processor.http1.builder.HeaderBuilder;
+import io.vproxy.base.processor.http1.entity.Header;
+import io.vproxy.base.util.ByteArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A header stored as views of the bytes it's parsed from.<br>
+ * The key and value are not copied, strings are created only when requested,
+ * and well-known names are recognized when the slice is created, see {@link HttpHeaderName}.<br>
+ * The slice is valid as long as the underlying bytes are not modified.
+ */
+public class HttpHeaderSlice implements IHttpHeader {
+    private final ByteArray bytes;
+    private final int keyOff;
+    private final int keyLen;
+    private final int valueOff;
+    private final int valueLen;
+    private final HttpHeaderName name; // nullable
+    private final boolean detached; // the bytes are not shared with the input
+    private String keyString;
+    private String valueString;
+
+    public HttpHeaderSlice(ByteArray bytes, int keyOff, int keyLen, int valueOff, int valueLen) {
+        this(bytes, keyOff, keyLen, valueOff, valueLen, HttpHeaderName.of(bytes, keyOff, keyLen), false);
+    }
+
+    private HttpHeaderSlice(ByteArray bytes, int keyOff, int keyLen, int valueOff, int valueLen, HttpHeaderName name, boolean detached) {
+        this.bytes = bytes;
+        this.keyOff = keyOff;
+        this.keyLen = keyLen;
+        this.valueOff = valueOff;
+        this.valueLen = valueLen;
+        this.name = name;
+        this.detached = detached;
+    }
+
+    /**
+     * Create a slice of bytes which are only used by this slice, so {@link #compact(List)} does not copy them again.
+     */
+    static HttpHeaderSlice detached(ByteArray bytes, int keyOff, int keyLen, int valueOff, int valueLen) {
+        return new HttpHeaderSlice(bytes, keyOff, keyLen, valueOff, valueLen, HttpHeaderName.of(bytes, keyOff, keyLen), true);
+    }
+
+    /**
+     * Copy the key and value of the builder into a new slice.
+     */
+    public static HttpHeaderSlice from(HeaderBuilder h) {
+        int keyLen = h.key.length();
+        int valueLen = h.value.length();
+        byte[] b = new byte[keyLen + valueLen];
+        for (int i = 0; i < keyLen; ++i) {
+            b[i] = (byte) h.key.charAt(i);
+        }
+        for (int i = 0; i < valueLen; ++i) {
+            b[keyLen + i] = (byte) h.value.charAt(i);
+        }
+        return detached(ByteArray.from(b), 0, keyLen, keyLen, valueLen);
+    }
+
+    /**
+     * Copy the keys and values of the slices which refer to the input into one array.
+     * The slices which already own their bytes are kept as is.
+     * The returned slices do not refer to the original bytes, and the strings already created are kept.
+     */
+    public static List<HttpHeaderSlice> compact(List<HttpHeaderSlice> slices) {
+        int total = 0;
+        for (var h : slices) {
+            if (!h.detached) {
+                total += h.keyLen + h.valueLen;
+            }
+        }
+        if (total == 0) {
+            return new ArrayList<>(slices);
+        }
+        var arr = ByteArray.allocate(total);
+        var ret = new ArrayList<HttpHeaderSlice>(slices.size());
+        int off = 0;
+        for (var h : slices) {
+            if (h.detached) {
+                ret.add(h);
+                continue;
+            }
+            h.bytes.copyInto(arr, off, h.keyOff, h.keyLen);
+            h.bytes.copyInto(arr, off + h.keyLen, h.valueOff, h.valueLen);
+            var copy = new HttpHeaderSlice(arr, off, h.keyLen, off + h.keyLen, h.valueLen, h.name, true);
+            copy.keyString = h.keyString;
+            copy.valueString = h.valueString;
+            ret.add(copy);
+            off += h.keyLen + h.valueLen;
+        }
+        return ret;
+    }
+
+    public ByteArray key() {
+        return bytes.sub(keyOff, keyLen);
+    }
+
+    public ByteArray value() {
+        return bytes.sub(valueOff, valueLen);
+    }
+
+    /**
+     * @return the well-known name of this header, or null if it's not a well-known header
+     */
+    public HttpHeaderName getName() {
+        return name;
+    }
+
+    public boolean is(HttpHeaderName name) {
+        return this.name == name;
+    }
+
+    public Header build() {
+        return new Header(keyAsString(), valueAsString());
+    }
+
+    // same as the chars appended by the parser
+    private String toString(int off, int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; ++i) {
+            chars[i] = (char) bytes.get(off + i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String keyAsString() {
+        if (keyString == null) {
+            keyString = toString(keyOff, keyLen);
+        }
+        return keyString;
+    }
+
+    @Override
+    public StringBuilder keyAsStringBuilder() {
+        return new StringBuilder(keyAsString());
+    }
+
+    @Override
+    public byte[] keyAsBytes() {
+        return key().toJavaArray();
+    }
+
+    @Override
+    public String valueAsString() {
+        if (valueString == null) {
+            valueString = toString(valueOff, valueLen);
+        }
+        return valueString;
+    }
+
+    @Override
+    public StringBuilder valueAsStringBuilder() {
+        return new StringBuilder(valueAsString());
+    }
+
+    @Override
+    public byte[] valueAsBytes() {
+        return value().toJavaArray();
+    }
+
+    @Override
+    public boolean keyEqualsIgnoreCase(char[] key) {
+        if (keyLen != key.length)
+            return false;
+        for (int i = 0; i < key.length; i++) {
+            char a = (char) bytes.get(keyOff + i);
+            if ('A' <= a && a <= 'Z') {
+                a += ('a' - 'A');
+            }
+            char e = key[i];
+            if ('A' <= e && e <= 'Z') {
+                e += ('a' - 'A');
+            }
+            if (a != e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean keyEqualsIgnoreCase(String key) {
+        return keyEqualsIgnoreCase(key.toCharArray());
+    }
+
+    @Override
+    public String toString() {
+        return "HttpHeaderSlice{" +
+               "key=" + keyAsString() +
+               ", value=" + valueAsString() +
+               '}';
+    }
+}
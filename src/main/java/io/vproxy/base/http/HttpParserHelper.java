@@ -73,6 +73,17 @@ public abstract class HttpParserHelper {
         STATE_END_ALL_CHUNKS,
         STATE_END_ALL_TRAILERS
     );
+    private static final boolean[] hasNextStateArray = new boolean[STATE_END_ALL_CHUNKS + 1];
+
+    static {
+        for (int s : hasNextState) {
+            hasNextStateArray[s] = true;
+        }
+    }
+
+    static boolean hasNextState(int state) {
+        return state >= 0 && state < hasNextStateArray.length && hasNextStateArray[state];
+    }
 
     final Handler[] handlers = new Handler[]{
         null, // 0 entry
@@ -113,6 +124,28 @@ public abstract class HttpParserHelper {
         public boolean segmentedParsing = false;
         public boolean buildResult = true;
         public boolean headersOnly = false;
+        /**
+         * Scan runs of bytes (method, uri, header keys and values, bodies, etc.) in one call
+         * instead of handling them one by one, the result is the same.
+         */
+        public boolean bulkScanning = true;
+        /**
+         * Store headers into {@link HttpEntityBuilder#headerSlices} instead of {@link HttpEntityBuilder#headers}.<br>
+         * When the whole header line is found in a {@link io.vproxy.base.util.nio.ByteArrayChannel},
+         * the slice refers to the bytes of the channel without copying, so the bytes must not be modified
+         * while the headers of the builder are in use. Otherwise, the header line is copied.<br>
+         * The built entity does not refer to the input: the slices still referring to the input are copied into one array,
+         * and all slices are exposed as {@link io.vproxy.base.processor.http1.entity.HttpEntity#headerSlices},
+         * the {@link io.vproxy.base.processor.http1.entity.Header} objects are created only when accessed.<br>
+         * {@link HttpEntityBuilder#headers} stays null when it's enabled, so it cannot be used with buildResult = false
+         * or {@link HttpStreamHandler}, which read headers from the builder. Disabled by default.
+         */
+        public boolean headerSlices = false;
+        /**
+         * Pass the body and chunk contents to the handler instead of collecting them,
+         * see {@link HttpStreamHandler}. Cannot be used with segmentedParsing.
+         */
+        public HttpStreamHandler streamHandler = null;
 
         public Params() {
         }
@@ -121,6 +154,9 @@ public abstract class HttpParserHelper {
             this.segmentedParsing = that.segmentedParsing;
             this.buildResult = that.buildResult;
             this.headersOnly = that.headersOnly;
+            this.bulkScanning = that.bulkScanning;
+            this.headerSlices = that.headerSlices;
+            this.streamHandler = that.streamHandler;
         }
 
         public Params setSegmentedParsing(boolean segmentedParsing) {
@@ -137,6 +173,21 @@ public abstract class HttpParserHelper {
             this.headersOnly = headersOnly;
             return this;
         }
+
+        public Params setBulkScanning(boolean bulkScanning) {
+            this.bulkScanning = bulkScanning;
+            return this;
+        }
+
+        public Params setHeaderSlices(boolean headerSlices) {
+            this.headerSlices = headerSlices;
+            return this;
+        }
+
+        public Params setStreamHandler(HttpStreamHandler streamHandler) {
+            this.streamHandler = streamHandler;
+            return this;
+        }
     }
 
     abstract int getState();
@@ -149,12 +200,21 @@ public abstract class HttpParserHelper {
 
     private HeaderBuilder header;
     private List<HeaderBuilder> headers;
+    private HttpHeaderSlice headerSlice;
+    private List<HttpHeaderSlice> headerSlices;
     private byte[] buf;
     private int bufOffset;
     private HeaderBuilder trailer;
     private List<HeaderBuilder> trailers;
 
     HttpParserHelper(Params params) {
+        if (params.streamHandler != null && params.segmentedParsing) {
+            throw new IllegalArgumentException("streamHandler cannot be used with segmentedParsing");
+        }
+        if (params.headerSlices && (params.streamHandler != null || !params.buildResult)) {
+            throw new IllegalArgumentException("headerSlices cannot be used with streamHandler or buildResult = false, " +
+                "because the headers of the builder are not filled");
+        }
         this.params = new Params(params);
     }
 
@@ -162,6 +222,222 @@ public abstract class HttpParserHelper {
         return handlers[getState()].handle(b);
     }
 
+    /**
+     * Consume the bytes which do not change the current state, the results are the same as handling them one by one.
+     *
+     * @param retained whether the bytes stay unchanged after feeding
+     * @return number of bytes consumed, 0 if the next byte should be handled by {@link #doSwitch(byte)}
+     */
+    int doSwitchBulk(ByteArray bytes, int off, int len, boolean retained) throws Exception {
+        int state = getState();
+        if (params.streamHandler != null && (state == 10 || state == 15)) {
+            return streamContent(bytes, off, len);
+        }
+        if (!params.bulkScanning) {
+            return 0;
+        }
+        int end = off + len;
+        int i;
+        switch (state) {
+            case 4: // end-first-line
+            case 8: // end-one-header
+                if (!params.headerSlices) {
+                    return 0;
+                }
+                return headerLine(bytes, off, end, retained);
+            case 5: // header-key
+                if (header == null) {
+                    return 0;
+                }
+                i = scan(bytes, off, end, (byte) ':', (byte) ':');
+                append(header.key, bytes, off, i);
+                return i - off;
+            case 7: // header-value
+                i = scan(bytes, off, end, (byte) '\n', (byte) '\n');
+                appendValue(header.value, bytes, off, i);
+                return i - off;
+            case 10: // body
+                if (params.segmentedParsing) {
+                    return 0;
+                }
+                if (getHttpEntity().body == null) {
+                    buf = Utils.allocateByteArray(getHttpEntity().dataLength);
+                    bufOffset = 0;
+                    getHttpEntity().body = ByteArray.from(buf);
+                }
+                return copyContent(bytes, off, len);
+            case 11: // chunk
+                if (getHttpEntity().chunk == null) {
+                    return 0;
+                }
+                i = scan(bytes, off, end, (byte) ';', (byte) '\n');
+                appendSkipCR(getHttpEntity().chunk.size, bytes, off, i);
+                return i - off;
+            case 13: // chunk-extension
+                i = scan(bytes, off, end, (byte) '\n', (byte) '\n');
+                appendSkipCR(getHttpEntity().chunk.extension, bytes, off, i);
+                return i - off;
+            case 15: // chunk-content
+                if (params.segmentedParsing) {
+                    return 0;
+                }
+                if (getHttpEntity().chunk.content == null) {
+                    buf = Utils.allocateByteArray(getHttpEntity().dataLength);
+                    bufOffset = 0;
+                    getHttpEntity().chunk.content = ByteArray.from(buf);
+                }
+                return copyContent(bytes, off, len);
+            case 17: // trailer-key
+                if (trailer == null) {
+                    return 0;
+                }
+                i = scan(bytes, off, end, (byte) ':', (byte) ':');
+                append(trailer.key, bytes, off, i);
+                return i - off;
+            case 19: // trailer-value
+                i = scan(bytes, off, end, (byte) '\n', (byte) '\n');
+                appendValue(trailer.value, bytes, off, i);
+                return i - off;
+            default:
+                return 0;
+        }
+    }
+
+    static final int PAUSE = -2; // AbstractParser#BULK_PAUSE
+
+    // pass the body or chunk content to the stream handler, the state is switched when all content is passed
+    private int streamContent(ByteArray bytes, int off, int len) throws Exception {
+        int n = Math.min(len, getHttpEntity().dataLength - bufOffset);
+        int accepted = params.streamHandler.data(bytes.sub(off, n));
+        if (accepted < 0 || accepted > n) {
+            throw new Exception("invalid number of bytes accepted by the stream handler: " + accepted + ", data length: " + n);
+        }
+        if (accepted == 0) {
+            return PAUSE;
+        }
+        bufOffset += accepted;
+        if (bufOffset == getHttpEntity().dataLength) {
+            if (getState() == 10) {
+                setState(end());
+            } else {
+                setState(16);
+            }
+        }
+        return accepted;
+    }
+
+    private int streamByte(byte b) throws Exception {
+        if (streamContent(ByteArray.from(b), 0, 1) != 1) {
+            throw new Exception("the stream handler must accept the data when parsing byte by byte");
+        }
+        return getState();
+    }
+
+    // parse a whole header line into a slice, the line is left to the state handlers if it's not complete
+    private int headerLine(ByteArray bytes, int off, int end, boolean retained) throws Exception {
+        byte b = bytes.get(off);
+        if (b == '\r' || b == '\n') {
+            return 0;
+        }
+        int lf = scan(bytes, off, end, (byte) '\n', (byte) '\n');
+        if (lf == end) {
+            return 0;
+        }
+        int colon = scan(bytes, off, lf, (byte) ':', (byte) ':');
+        if (colon == lf) {
+            return 0;
+        }
+        int valueOff = colon + 1;
+        while (valueOff < lf && (bytes.get(valueOff) == ' ' || bytes.get(valueOff) == '\r')) {
+            ++valueOff;
+        }
+        int valueEnd = lf;
+        if (valueEnd > valueOff && bytes.get(valueEnd - 1) == '\r') {
+            --valueEnd;
+        }
+        if (scan(bytes, valueOff, valueEnd, (byte) '\r', (byte) '\r') != valueEnd) {
+            return 0; // \r inside the value, which is removed by the state handler
+        }
+        if (getState() == 8) {
+            headerDone();
+        }
+        int lineLen = lf + 1 - off;
+        if (retained) {
+            headerSlice = new HttpHeaderSlice(bytes, off, colon - off, valueOff, valueEnd - valueOff);
+        } else {
+            headerSlice = HttpHeaderSlice.detached(bytes.sub(off, lineLen).copy(), 0, colon - off, valueOff - off, valueEnd - valueOff);
+        }
+        setState(8);
+        return lineLen;
+    }
+
+    // the last byte is left to the state handler, which finishes the content
+    private int copyContent(ByteArray bytes, int off, int len) {
+        int n = Math.min(len, buf.length - bufOffset - 1);
+        if (n <= 0) {
+            return 0;
+        }
+        bytes.sub(off, n).toNewJavaArray(buf, bufOffset);
+        bufOffset += n;
+        return n;
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Find the first <code>b1</code> or <code>b2</code> in [off, end), 8 bytes per step.
+     *
+     * @return index of the found byte, or <code>end</code> if not found
+     */
+    static int scan(ByteArray bytes, int off, int end, byte b1, byte b2) {
+        final long p1 = (b1 & 0xffL) * ONES;
+        final long p2 = (b2 & 0xffL) * ONES;
+        int i = off;
+        for (; i + 8 <= end; i += 8) {
+            long w = bytes.int64(i);
+            long x1 = w ^ p1;
+            long x2 = w ^ p2;
+            // a byte is marked iff it's zero, see AbstractByteArray#indexOf(byte, int)
+            long found = ~(((x1 & LOW7) + LOW7) | x1 | LOW7) | ~(((x2 & LOW7) + LOW7) | x2 | LOW7);
+            if (found != 0) {
+                return i + (Long.numberOfLeadingZeros(found) >>> 3);
+            }
+        }
+        for (; i < end; ++i) {
+            byte b = bytes.get(i);
+            if (b == b1 || b == b2) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    static void append(StringBuilder sb, ByteArray bytes, int off, int end) {
+        for (int i = off; i < end; ++i) {
+            sb.append((char) bytes.get(i));
+        }
+    }
+
+    static void appendSkipCR(StringBuilder sb, ByteArray bytes, int off, int end) {
+        for (int i = off; i < end; ++i) {
+            byte b = bytes.get(i);
+            if (b != '\r') {
+                sb.append((char) b);
+            }
+        }
+    }
+
+    // leading spaces of the value are ignored
+    private static void appendValue(StringBuilder sb, ByteArray bytes, int off, int end) {
+        for (int i = off; i < end; ++i) {
+            byte b = bytes.get(i);
+            if (b != '\r' && (b != ' ' || sb.length() != 0)) {
+                sb.append((char) b);
+            }
+        }
+    }
+
     int nextState(int state) throws Exception {
         switch (state) {
             case STATE_END_ALL_HEADERS: return state9Trans();
@@ -175,8 +451,13 @@ public abstract class HttpParserHelper {
     }
 
     private int end() {
+        if (params.streamHandler != null) {
+            params.streamHandler.end(getHttpEntity());
+        }
         header = null;
         headers = null;
+        headerSlice = null;
+        headerSlices = null;
         getHttpEntity().dataLength = -1;
         getHttpEntity().isChunked = false;
         buf = null;
@@ -237,6 +518,25 @@ public abstract class HttpParserHelper {
     }
 
     private int state8(byte b) throws Exception {
+        headerDone();
+
+        if (b == '\r') {
+            // ignore
+            return 8;
+        } else if (b == '\n') {
+            setState(9);
+            return state9(null);
+        } else {
+            setState(5);
+            return state5(b);
+        }
+    }
+
+    private void headerDone() throws Exception {
+        if (params.headerSlices) {
+            headerSliceDone();
+            return;
+        }
         if (headers == null) {
             headers = new LinkedList<>();
             getHttpEntity().headers = headers;
@@ -262,17 +562,39 @@ public abstract class HttpParserHelper {
             headers.add(header);
             header = null;
         }
+    }
 
-        if (b == '\r') {
-            // ignore
-            return 8;
-        } else if (b == '\n') {
-            setState(9);
-            return state9(null);
-        } else {
-            setState(5);
-            return state5(b);
+    private void headerSliceDone() throws Exception {
+        if (headerSlices == null) {
+            headerSlices = new LinkedList<>();
+            getHttpEntity().headerSlices = headerSlices;
         }
+        var slice = headerSlice;
+        if (header != null) { // not parsed by headerLine
+            slice = HttpHeaderSlice.from(header);
+            header = null;
+        }
+        if (slice == null) {
+            return;
+        }
+        headerSlice = null;
+        assert Logger.lowLevelDebug("received header " + slice);
+        if (slice.is(HttpHeaderName.CONTENT_LENGTH)) {
+            var len = slice.valueAsString().trim();
+            assert Logger.lowLevelDebug("found Content-Length: " + len);
+            getHttpEntity().dataLength = parseNonNegativeLen(len);
+        } else if (slice.is(HttpHeaderName.TRANSFER_ENCODING)) {
+            var encoding = slice.valueAsString().trim().toLowerCase();
+            assert Logger.lowLevelDebug("found Transfer-Encoding: " + encoding);
+            if (encoding.equals("chunked")) {
+                getHttpEntity().isChunked = true;
+            }
+        } else if (slice.is(HttpHeaderName.HOST)) {
+            var host = slice.valueAsString().trim();
+            assert Logger.lowLevelDebug("found Host: " + host);
+            getHttpEntity().lastHostHeader = host;
+        }
+        headerSlices.add(slice);
     }
 
     private int parseNonNegativeLen(String len) throws Exception {
@@ -294,6 +616,9 @@ public abstract class HttpParserHelper {
 
     // it's for state transferring
     private int state9(@SuppressWarnings("unused") Byte b) {
+        if (params.streamHandler != null) {
+            params.streamHandler.headers(getHttpEntity());
+        }
         if (params.headersOnly) {
             return end();
         }
@@ -304,13 +629,14 @@ public abstract class HttpParserHelper {
     }
 
     private int state9Trans() {
-        if (headers == null) {
+        if (headers == null && headerSlices == null) {
             return end();
         }
         if (getHttpEntity().dataLength >= 0) {
             if (getHttpEntity().dataLength == 0) {
                 return end();
             } else {
+                bufOffset = 0;
                 return 10;
             }
         } else if (getHttpEntity().isChunked) {
@@ -320,10 +646,13 @@ public abstract class HttpParserHelper {
         return end();
     }
 
-    private int state10(byte b) {
+    private int state10(byte b) throws Exception {
         if (params.segmentedParsing) {
             return 10;
         }
+        if (params.streamHandler != null) {
+            return streamByte(b);
+        }
         int contentLength = getHttpEntity().dataLength;
         var entity = getHttpEntity();
         if (entity.body == null) {
@@ -404,6 +733,10 @@ public abstract class HttpParserHelper {
         }
         if (size != 0) {
             getHttpEntity().dataLength = size;
+            bufOffset = 0;
+            if (params.streamHandler != null) {
+                params.streamHandler.chunk(getHttpEntity().chunk);
+            }
             return 15;
         } else {
             if (b == null) { // called from other states
@@ -411,7 +744,11 @@ public abstract class HttpParserHelper {
                 if (getHttpEntity().chunks == null) {
                     getHttpEntity().chunks = new LinkedList<>();
                 }
-                getHttpEntity().chunks.add(getHttpEntity().chunk);
+                if (params.streamHandler != null) {
+                    params.streamHandler.chunk(getHttpEntity().chunk);
+                } else {
+                    getHttpEntity().chunks.add(getHttpEntity().chunk);
+                }
                 getHttpEntity().chunk = null;
                 return 27;
             } else {
@@ -429,10 +766,13 @@ public abstract class HttpParserHelper {
         }
     }
 
-    private int state15(byte b) {
+    private int state15(byte b) throws Exception {
         if (params.segmentedParsing) {
             return 15;
         }
+        if (params.streamHandler != null) {
+            return streamByte(b);
+        }
         var chunkSize = getHttpEntity().dataLength;
         if (getHttpEntity().chunk.content == null) {
             buf = Utils.allocateByteArray(chunkSize);
@@ -452,7 +792,9 @@ public abstract class HttpParserHelper {
             getHttpEntity().chunks = new LinkedList<>();
         }
         if (getHttpEntity().chunk != null) {
-            getHttpEntity().chunks.add(getHttpEntity().chunk);
+            if (params.streamHandler == null) { // the content is already passed to the stream handler
+                getHttpEntity().chunks.add(getHttpEntity().chunk);
+            }
             getHttpEntity().chunk = null;
         }
 
@@ -3,6 +3,7 @@ package io.vproxy.base.http;
 import io.vproxy.base.processor.http1.builder.HttpEntityBuilder;
 import io.vproxy.base.processor.http1.builder.RequestBuilder;
 import io.vproxy.base.processor.http1.entity.Request;
+import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.codec.AbstractParser;
 
@@ -69,7 +70,7 @@ public class HttpReqParser extends AbstractParser<Request> implements IHttpParse
         }
 
         if (params.segmentedParsing) {
-            if (HttpParserHelper.hasNextState.contains(state)) {
+            if (HttpParserHelper.hasNextState(state)) {
                 nextState();
             }
         }
@@ -93,6 +94,53 @@ public class HttpReqParser extends AbstractParser<Request> implements IHttpParse
         return newState;
     }
 
+    @Override
+    protected int doSwitchBulk(ByteArray bytes, int off, int len) {
+        if (state >= 4 && state <= 21 || state >= 25) {
+            return helperDoSwitchBulk(bytes, off, len);
+        }
+        if (!params.bulkScanning) {
+            return 0;
+        }
+        int end = off + len;
+        int i;
+        switch (state) {
+            case 1:
+                i = HttpParserHelper.scan(bytes, off, end, (byte) ' ', (byte) ' ');
+                HttpParserHelper.append(req.method, bytes, off, i);
+                return i - off;
+            case 2:
+                i = HttpParserHelper.scan(bytes, off, end, (byte) ' ', (byte) '\n');
+                HttpParserHelper.appendSkipCR(req.uri, bytes, off, i);
+                return i - off;
+            case 3:
+                if (req.version == null) {
+                    return 0;
+                }
+                i = HttpParserHelper.scan(bytes, off, end, (byte) '\n', (byte) '\n');
+                HttpParserHelper.appendSkipCR(req.version, bytes, off, i);
+                return i - off;
+            default:
+                return 0;
+        }
+    }
+
+    private int helperDoSwitchBulk(ByteArray bytes, int off, int len) {
+        int n;
+        try {
+            n = helper.doSwitchBulk(bytes, off, len, isInputRetained());
+        } catch (Exception e) {
+            errorMessage = e.getMessage();
+            return -1;
+        }
+        if (n > 0 && state == 0) { // the message may be finished by the stream handler
+            if (params.buildResult) {
+                result = req.build();
+            }
+        }
+        return n;
+    }
+
     private int state0(byte b) {
         req = new RequestBuilder();
         return state1(b);
@@ -158,5 +206,20 @@ public class HttpReqParser extends AbstractParser<Request> implements IHttpParse
         public Params setHeadersOnly(boolean headersOnly) {
             return (Params) super.setHeadersOnly(headersOnly);
         }
+
+        @Override
+        public Params setBulkScanning(boolean bulkScanning) {
+            return (Params) super.setBulkScanning(bulkScanning);
+        }
+
+        @Override
+        public Params setHeaderSlices(boolean headerSlices) {
+            return (Params) super.setHeaderSlices(headerSlices);
+        }
+
+        @Override
+        public Params setStreamHandler(HttpStreamHandler streamHandler) {
+            return (Params) super.setStreamHandler(streamHandler);
+        }
     }
 }
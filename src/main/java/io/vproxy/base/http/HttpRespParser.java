@@ -3,6 +3,7 @@ package io.vproxy.base.http;
 import io.vproxy.base.processor.http1.builder.HttpEntityBuilder;
 import io.vproxy.base.processor.http1.builder.ResponseBuilder;
 import io.vproxy.base.processor.http1.entity.Response;
+import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.codec.AbstractParser;
 
@@ -90,7 +91,7 @@ public class HttpRespParser extends AbstractParser<Response> implements IHttpPar
         }
 
         if (params.segmentedParsing) {
-            if (HttpParserHelper.hasNextState.contains(state)) {
+            if (HttpParserHelper.hasNextState(state)) {
                 nextState();
             }
         }
@@ -114,6 +115,57 @@ public class HttpRespParser extends AbstractParser<Response> implements IHttpPar
         return newState;
     }
 
+    @Override
+    protected int doSwitchBulk(ByteArray bytes, int off, int len) {
+        if (state >= 4 && state <= 21 || state >= 25) {
+            return helperDoSwitchBulk(bytes, off, len);
+        }
+        if (!params.bulkScanning) {
+            return 0;
+        }
+        int end = off + len;
+        int i;
+        switch (state) {
+            case 22:
+                i = HttpParserHelper.scan(bytes, off, end, (byte) ' ', (byte) ' ');
+                HttpParserHelper.append(resp.version, bytes, off, i);
+                return i - off;
+            case 23:
+                i = HttpParserHelper.scan(bytes, off, end, (byte) ' ', (byte) ' ');
+                for (int j = off; j < i; ++j) {
+                    byte b = bytes.get(j);
+                    if (b < '0' || b > '9') {
+                        i = j; // the invalid character is reported by state23
+                        break;
+                    }
+                }
+                HttpParserHelper.append(resp.statusCode, bytes, off, i);
+                return i - off;
+            case 24:
+                i = HttpParserHelper.scan(bytes, off, end, (byte) '\n', (byte) '\n');
+                HttpParserHelper.appendSkipCR(resp.reason, bytes, off, i);
+                return i - off;
+            default:
+                return 0;
+        }
+    }
+
+    private int helperDoSwitchBulk(ByteArray bytes, int off, int len) {
+        int n;
+        try {
+            n = helper.doSwitchBulk(bytes, off, len, isInputRetained());
+        } catch (Exception e) {
+            errorMessage = e.getMessage();
+            return -1;
+        }
+        if (n > 0 && state == 0) { // the message may be finished by the stream handler
+            if (params.buildResult) {
+                result = resp.build();
+            }
+        }
+        return n;
+    }
+
     private int state0(byte b) {
         resp = new ResponseBuilder();
         return state22(b);
@@ -174,5 +226,20 @@ public class HttpRespParser extends AbstractParser<Response> implements IHttpPar
         public Params setHeadersOnly(boolean headersOnly) {
             return (Params) super.setHeadersOnly(headersOnly);
         }
+
+        @Override
+        public Params setBulkScanning(boolean bulkScanning) {
+            return (Params) super.setBulkScanning(bulkScanning);
+        }
+
+        @Override
+        public Params setHeaderSlices(boolean headerSlices) {
+            return (Params) super.setHeaderSlices(headerSlices);
+        }
+
+        @Override
+        public Params setStreamHandler(HttpStreamHandler streamHandler) {
+            return (Params) super.setStreamHandler(streamHandler);
+        }
     }
 }
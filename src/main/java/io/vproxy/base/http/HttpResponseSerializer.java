@@ -0,0 +1,372 @@
+package io.vproxy.base.http;
+
+import io.vproxy.base.processor.http1.entity.Chunk;
+import io.vproxy.base.processor.http1.entity.Header;
+import io.vproxy.base.processor.http1.entity.Response;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.bytearray.ByteBufferByteArray;
+import io.vproxy.base.util.direct.DirectByteBuffer;
+import io.vproxy.base.util.direct.DirectMemoryUtils;
+import io.vproxy.base.util.web.HttpStatusCodeReasonMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Serialize a {@link Response} without building the text in a StringBuilder.<br>
+ * The status line, headers, chunk lines and trailers are written into one pooled direct buffer,
+ * using the cached encodings of common status lines ({@link HttpStatusCodeReasonMap#getStatusLine(int)})
+ * and well-known header names ({@link HttpHeaderName}).
+ * The body and chunk contents are not copied, they are kept as segments between the text segments.<br>
+ * The output is the same as {@link Response#toByteArray()}, except that chunk extensions are written only when present,
+ * and trailers are written.
+ */
+public class HttpResponseSerializer {
+    private static final byte[] COLON_SP = {':', ' '};
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CONTENT_LENGTH_COLON_SP = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+
+    private HttpResponseSerializer() {
+    }
+
+    public static Segments serialize(Response resp) {
+        boolean usingGZip = false;
+        if (resp.isPlain && resp.headers != null) { // encode only if body is plain
+            for (Header h : resp.headers) {
+                if (h.key.trim().equalsIgnoreCase("content-encoding") && h.value.equalsIgnoreCase("gzip")) {
+                    usingGZip = true;
+                    break;
+                }
+            }
+        }
+        ByteArray body = resp.body;
+        if (body != null && usingGZip) {
+            body = ByteArray.from(body.toGZipJavaByteArray());
+        }
+
+        byte[] statusLine = null;
+        if ("HTTP/1.1".equals(resp.version) && HttpStatusCodeReasonMap.get(resp.statusCode).equals(resp.reason)) {
+            statusLine = HttpStatusCodeReasonMap.getStatusLine(resp.statusCode);
+        }
+
+        // calculate the text length
+        int textLen;
+        if (statusLine != null) {
+            textLen = statusLine.length;
+        } else {
+            textLen = length(resp.version) + 1 + length(Integer.toString(resp.statusCode)) + 1 + length(resp.reason) + 2;
+        }
+        if (resp.headers != null) {
+            for (Header h : resp.headers) {
+                if (usingGZip && h.key.trim().equalsIgnoreCase("content-length")) {
+                    continue; // skip content-length, will be calculated
+                }
+                textLen += length(h.key) + 2 + length(h.value) + 2;
+            }
+        }
+        if (body != null && usingGZip) {
+            textLen += CONTENT_LENGTH_COLON_SP.length + Integer.toString(body.length()).length() + 2;
+        }
+        textLen += 2;
+        if (resp.chunks != null) {
+            for (Chunk ch : resp.chunks) {
+                textLen += Integer.toHexString(ch.size).length() + extensionLength(ch) + 2;
+                if (ch.size != 0) {
+                    textLen += 2;
+                }
+            }
+        }
+        if (resp.trailers != null) {
+            for (Header h : resp.trailers) {
+                textLen += length(h.key) + 2 + length(h.value) + 2;
+            }
+        }
+        if (resp.chunks != null || resp.trailers != null) {
+            textLen += 2;
+        }
+
+        DirectByteBuffer text = DirectMemoryUtils.allocateDirectBuffer(Math.max(Utils.minPow2GreaterThan(textLen), 1));
+        ByteBuffer buf = text.realBuffer();
+        buf.limit(textLen).position(0);
+        var segments = new ArrayList<ByteArray>();
+        int textStart = 0;
+
+        if (statusLine != null) {
+            buf.put(statusLine);
+        } else {
+            put(buf, resp.version);
+            buf.put((byte) ' ');
+            put(buf, Integer.toString(resp.statusCode));
+            buf.put((byte) ' ');
+            put(buf, resp.reason);
+            buf.put(CRLF);
+        }
+        if (resp.headers != null) {
+            for (Header h : resp.headers) {
+                if (usingGZip && h.key.trim().equalsIgnoreCase("content-length")) {
+                    continue;
+                }
+                putHeader(buf, h);
+            }
+        }
+        if (body != null && usingGZip) {
+            buf.put(CONTENT_LENGTH_COLON_SP);
+            put(buf, Integer.toString(body.length()));
+            buf.put(CRLF);
+        }
+        buf.put(CRLF);
+        if (body != null && body.length() != 0) {
+            textStart = addText(segments, buf, textStart);
+            segments.add(body);
+        }
+        if (resp.chunks != null) {
+            for (Chunk ch : resp.chunks) {
+                put(buf, Integer.toHexString(ch.size));
+                if (extensionLength(ch) != 0) {
+                    buf.put((byte) ';');
+                    put(buf, ch.extension);
+                }
+                buf.put(CRLF);
+                if (ch.size != 0) {
+                    if (ch.content != null && ch.content.length() != 0) {
+                        textStart = addText(segments, buf, textStart);
+                        segments.add(ch.content);
+                    }
+                    buf.put(CRLF);
+                }
+            }
+        }
+        if (resp.trailers != null) {
+            for (Header h : resp.trailers) {
+                putHeader(buf, h);
+            }
+        }
+        if (resp.chunks != null || resp.trailers != null) {
+            buf.put(CRLF);
+        }
+        addText(segments, buf, textStart);
+        return new Segments(text, segments.toArray(new ByteArray[0]));
+    }
+
+    private static int addText(ArrayList<ByteArray> segments, ByteBuffer buf, int textStart) {
+        int pos = buf.position();
+        if (pos > textStart) {
+            segments.add(new ByteBufferByteArray(buf.duplicate().limit(pos).position(textStart)));
+        }
+        return pos;
+    }
+
+    private static int extensionLength(Chunk ch) {
+        if (ch.extension == null || ch.extension.isBlank()) {
+            return 0;
+        }
+        return 1 + length(ch.extension);
+    }
+
+    private static void putHeader(ByteBuffer buf, Header h) {
+        var name = HttpHeaderName.of(h.key);
+        if (name != null) {
+            buf.put(name.encoded());
+        } else {
+            put(buf, h.key);
+        }
+        buf.put(COLON_SP);
+        put(buf, h.value);
+        buf.put(CRLF);
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int length(String s) {
+        if (isAscii(s)) {
+            return s.length();
+        }
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void put(ByteBuffer buf, String s) {
+        if (isAscii(s)) {
+            for (int i = 0; i < s.length(); ++i) {
+                buf.put((byte) s.charAt(i));
+            }
+        } else {
+            buf.put(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The serialized message, made of text segments in a pooled direct buffer and the body segments.
+     * Empty segments are never stored.<br>
+     * Call {@link #release()} when the segments are no longer used.
+     */
+    public static class Segments {
+        private final DirectByteBuffer text;
+        private final ByteArray[] segments;
+        private final int length;
+        private int index = 0; // the segment being written
+        private int offset = 0; // offset inside the segment being written
+        private ByteBuffer[] buffers; // nullable, created by toByteBuffers()
+        private boolean released = false;
+
+        Segments(DirectByteBuffer text, ByteArray[] segments) {
+            this.text = text;
+            this.segments = segments;
+            int length = 0;
+            for (var s : segments) {
+                length += s.length();
+            }
+            this.length = length;
+        }
+
+        /**
+         * @return the segments in order, the text segments are invalid after {@link #release()}
+         */
+        public ByteArray[] getSegments() {
+            return segments;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Copy as many bytes as possible into <code>dst</code>, continuing from where the last call stopped.
+         *
+         * @return number of bytes written
+         */
+        public int writeTo(ByteBuffer dst) {
+            int total = 0;
+            while (index < segments.length && dst.hasRemaining()) {
+                var s = segments[index];
+                int n = Math.min(s.length() - offset, dst.remaining());
+                s.byteBufferPut(dst, offset, n);
+                total += n;
+                offset += n;
+                if (offset == s.length()) {
+                    ++index;
+                    offset = 0;
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Write as many bytes as possible into <code>channel</code> with one gathering write,
+         * continuing from where the last call stopped.
+         *
+         * @return number of bytes written
+         */
+        public long writeTo(GatheringByteChannel channel) throws IOException {
+            var bufs = toByteBuffers();
+            if (bufs.length == 0) {
+                return 0;
+            }
+            long n = channel.write(bufs);
+            if (n > 0) {
+                skip(n);
+            }
+            return n;
+        }
+
+        /**
+         * The bytes not written yet, as buffers for {@link GatheringByteChannel#write(ByteBuffer[])}.<br>
+         * The text segments and body segments backed by a ByteBuffer or a whole java array are not copied,
+         * other body segments are copied once.
+         * The returned buffers are not tracked, call {@link #skip(long)} with the number of bytes written.
+         *
+         * @return new buffers starting from the first byte not written yet
+         */
+        public ByteBuffer[] toByteBuffers() {
+            if (released) {
+                throw new IllegalStateException("released");
+            }
+            if (buffers == null) {
+                buffers = new ByteBuffer[segments.length];
+                for (int i = 0; i < segments.length; ++i) {
+                    buffers[i] = toByteBuffer(segments[i]);
+                }
+            }
+            var ret = new ByteBuffer[segments.length - index];
+            for (int i = 0; i < ret.length; ++i) {
+                ret[i] = buffers[index + i].duplicate();
+            }
+            if (ret.length > 0) {
+                ret[0].position(ret[0].position() + offset);
+            }
+            return ret;
+        }
+
+        private static ByteBuffer toByteBuffer(ByteArray s) {
+            if (s instanceof ByteBufferByteArray) {
+                return ((ByteBufferByteArray) s).getByteBuffer();
+            }
+            return ByteBuffer.wrap(s.toJavaArray()); // not copied for a whole java array
+        }
+
+        /**
+         * Mark <code>n</code> bytes as written, used with {@link #toByteBuffers()}.
+         */
+        public void skip(long n) {
+            if (n < 0) {
+                throw new IllegalArgumentException("n = " + n + " < 0");
+            }
+            while (n > 0) {
+                if (index == segments.length) {
+                    throw new IllegalArgumentException("skipping more bytes than remaining");
+                }
+                int rest = segments[index].length() - offset;
+                if (n < rest) {
+                    offset += (int) n;
+                    return;
+                }
+                n -= rest;
+                ++index;
+                offset = 0;
+            }
+        }
+
+        /**
+         * @return true if all bytes are written by {@link #writeTo(ByteBuffer)}, {@link #writeTo(GatheringByteChannel)}
+         * or {@link #skip(long)}
+         */
+        public boolean isDone() {
+            return index == segments.length;
+        }
+
+        /**
+         * @return a view of all segments, no bytes are copied
+         */
+        public ByteArray toByteArray() {
+            if (segments.length == 0) {
+                return ByteArray.allocate(0);
+            }
+            ByteArray ret = segments[0];
+            for (int i = 1; i < segments.length; ++i) {
+                ret = ret.concat(segments[i]);
+            }
+            return ret;
+        }
+
+        /**
+         * Return the direct buffer to the pool. Calling it more than once has no effect.
+         */
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            text.clean();
+        }
+    }
+}
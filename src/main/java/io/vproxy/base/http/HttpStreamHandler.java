@@ -0,0 +1,46 @@
+package io.vproxy.base.http;
+
+import io.vproxy.base.processor.http1.builder.ChunkBuilder;
+import io.vproxy.base.processor.http1.builder.HttpEntityBuilder;
+import io.vproxy.base.util.ByteArray;
+
+/**
+ * Receives the parts of a http message while it's being parsed, see {@link HttpParserHelper.Params#streamHandler}.<br>
+ * The body and chunk contents are not collected by the parser, they are passed to {@link #data(ByteArray)}
+ * directly from the input, so memory usage is bounded by the input buffer no matter how large the body is.
+ */
+public interface HttpStreamHandler {
+    /**
+     * Called when all headers are received.
+     *
+     * @param entity the builder holding the first line and the headers
+     */
+    default void headers(HttpEntityBuilder entity) {
+    }
+
+    /**
+     * Called when the size line of a chunk is received, before its content.
+     * The last chunk has size <code>0</code>.
+     */
+    default void chunk(ChunkBuilder chunk) {
+    }
+
+    /**
+     * Called with a part of the body or the current chunk content.<br>
+     * The array is a view of the input and is only valid during the call.<br>
+     * Returning less than <code>data.length()</code> pauses the parser,
+     * the remaining bytes are kept in the input, and will be passed again on the next feed.
+     * The bytes are passed one by one when the parser is fed byte by byte, in that case they must be accepted.
+     *
+     * @return number of bytes accepted
+     */
+    int data(ByteArray data);
+
+    /**
+     * Called when the whole message is received.
+     *
+     * @param entity the builder holding the first line, headers and trailers
+     */
+    default void end(HttpEntityBuilder entity) {
+    }
+}
@@ -0,0 +1,59 @@
+package io.vproxy.base.processor.http1.builder;
+
+import io.vproxy.base.http.HttpHeaderSlice;
+import io.vproxy.base.processor.http1.entity.Header;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The headers of an entity built from header slices.<br>
+ * A {@link Header} is created from its slice when it's accessed for the first time,
+ * so the strings of the headers which are never accessed are not created.
+ * The list can be modified like other lists.
+ */
+class HeaderSliceList extends AbstractList<Header> {
+    private final ArrayList<Object> list; // HttpHeaderSlice or Header
+
+    HeaderSliceList(List<HttpHeaderSlice> slices) {
+        this.list = new ArrayList<>(slices);
+    }
+
+    @Override
+    public Header get(int index) {
+        Object o = list.get(index);
+        if (o instanceof HttpHeaderSlice) {
+            Header h = ((HttpHeaderSlice) o).build();
+            list.set(index, h);
+            return h;
+        }
+        return (Header) o;
+    }
+
+    @Override
+    public Header set(int index, Header element) {
+        Header old = get(index);
+        list.set(index, element);
+        return old;
+    }
+
+    @Override
+    public void add(int index, Header element) {
+        list.add(index, element);
+        ++modCount;
+    }
+
+    @Override
+    public Header remove(int index) {
+        Header old = get(index);
+        list.remove(index);
+        ++modCount;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+}
@@ -1,5 +1,6 @@
 package io.vproxy.base.processor.http1.builder;
 
+import io.vproxy.base.http.HttpHeaderSlice;
 import io.vproxy.base.processor.http1.entity.HttpEntity;
 import io.vproxy.base.util.ByteArray;
 
@@ -8,6 +9,7 @@ import java.util.List;
 
 public abstract class HttpEntityBuilder {
     public List<HeaderBuilder> headers;
+    public List<HttpHeaderSlice> headerSlices; // used instead of headers when parsing with headerSlices enabled
     public ByteArray body;
     public List<ChunkBuilder> chunks;
     public List<HeaderBuilder> trailers;
@@ -26,6 +28,12 @@ public abstract class HttpEntityBuilder {
                 entity.headers.add(h.build());
             }
         }
+        if (headerSlices != null) {
+            // some slices may refer to the input bytes, copy them because the entity must not depend on the input
+            var slices = HttpHeaderSlice.compact(headerSlices);
+            entity.headerSlices = slices;
+            entity.headers = new HeaderSliceList(slices);
+        }
         if (body != null) {
             entity.body = body.copy();
         }
@@ -1,11 +1,16 @@
 package io.vproxy.base.processor.http1.entity;
 
+import io.vproxy.base.http.HttpHeaderSlice;
 import io.vproxy.base.util.ByteArray;
 
 import java.util.List;
 
 public abstract class HttpEntity {
     public List<Header> headers; // nullable
+    // nullable, the parsed headers when the entity is parsed with headerSlices enabled,
+    // the Header objects in `headers` are created from the slices on first access,
+    // the slices are not updated when `headers` is modified
+    public List<HttpHeaderSlice> headerSlices;
     public ByteArray body; // nullable
     public boolean isPlain = false;
 
@@ -280,6 +280,72 @@ public interface ByteArray extends ToByteArray {
         }
     }
 
+    /**
+     * Copy <code>len</code> bytes from offset <code>src</code> to offset <code>dst</code> of this array.<br>
+     * The two ranges may overlap, the result is the same as copying into a temporary array first (memmove).
+     */
+    default ByteArray copyWithin(int src, int dst, int len) {
+        if (src < 0 || dst < 0 || len < 0 || src > length() - len || dst > length() - len) {
+            throw new ArrayIndexOutOfBoundsException("src=" + src + ", dst=" + dst + ", len=" + len + ", length=" + length());
+        }
+        if (src == dst) {
+            return this;
+        }
+        if (dst < src) {
+            for (int i = 0; i < len; ++i) {
+                set(dst + i, get(src + i));
+            }
+        } else {
+            for (int i = len - 1; i >= 0; --i) {
+                set(dst + i, get(src + i));
+            }
+        }
+        return this;
+    }
+
+    default int indexOf(byte b) {
+        return indexOf(b, 0);
+    }
+
+    default int indexOf(byte b, int fromIndex) {
+        final int len = length();
+        for (int i = Math.max(fromIndex, 0); i < len; ++i) {
+            if (get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    default int indexOf(ByteArray needle) {
+        return indexOf(needle, 0);
+    }
+
+    default int indexOf(ByteArray needle, int fromIndex) {
+        final int needleLen = needle.length();
+        if (needleLen == 0) {
+            return Math.min(Math.max(fromIndex, 0), length());
+        }
+        final byte first = needle.get(0);
+        final int last = length() - needleLen;
+        int i = Math.max(fromIndex, 0);
+        while (i <= last) {
+            i = indexOf(first, i);
+            if (i == -1 || i > last) {
+                return -1;
+            }
+            int j = 1;
+            while (j < needleLen && get(i + j) == needle.get(j)) {
+                ++j;
+            }
+            if (j == needleLen) {
+                return i;
+            }
+            ++i;
+        }
+        return -1;
+    }
+
     default String toHexString() {
         return Utils.bytesToHex(toJavaArray());
     }
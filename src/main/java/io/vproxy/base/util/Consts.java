@@ -45,6 +45,7 @@ public class Consts {
     public static final int ICMPv6_PROTOCOL_CODE_PORT_UNREACHABLE = 4;
     public static final int IPv6_NEXT_HEADER_HOP_BY_HOP_OPTIONS = 0;
     public static final int IPv6_NEXT_HEADER_ROUTING = 43;
+    public static final int IPv6_NEXT_HEADER_FRAGMENT = 44;
 
     public static final ByteArray IPv6_Solicitation_Node_Multicast_Address = ByteArray.from(IP.parseIpString("ff02::1:ff00:0"));
 
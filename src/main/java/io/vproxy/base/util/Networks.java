@@ -1,19 +1,21 @@
 package io.vproxy.base.util;
 
 import io.vproxy.base.util.functional.ConsumerEx;
+import io.vproxy.base.util.net.IPv4PrefixTrie;
+import io.vproxy.base.util.net.IPv6PrefixTrie;
 import io.vproxy.vfd.IP;
 import io.vproxy.vfd.IPv4;
 import io.vproxy.vfd.IPv6;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Predicate;
 
 public class Networks<R extends Networks.Rule> {
     private final List<V4RulesGroupedByMask> v4Rules = new ArrayList<>(32);
     private final List<V6RulesGroupedByMask> v6Rules = new ArrayList<>(128);
+    // longest prefix match indexes, the grouped rules above are used for exact match and iteration
+    private final IPv4PrefixTrie<Rule> v4Trie = new IPv4PrefixTrie<>();
+    private final IPv6PrefixTrie<Rule> v6Trie = new IPv6PrefixTrie<>();
 
     public interface Rule {
     }
@@ -70,29 +72,19 @@ public class Networks<R extends Networks.Rule> {
     }
 
     private Rule lookupV4(IPv4 ip) {
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0, size = v4Rules.size(); i < size; ++i) {
-            var rules = v4Rules.get(i);
-            var v4 = ip.maskValue(rules.mask);
-            var rule = rules.rules.get(v4);
-            if (rule != null) {
-                return rule;
-            }
-        }
-        return null;
+        return v4Trie.lookup(ip.getIPv4Value());
     }
 
     private Rule lookupV6(IPv6 ip) {
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0, size = v6Rules.size(); i < size; ++i) {
-            var rules = v6Rules.get(i);
-            var v6 = ip.maskValues(rules.mask);
-            var rule = rules.rules.get(v6);
-            if (rule != null) {
-                return rule;
-            }
-        }
-        return null;
+        return v6Trie.lookup(v6Hi(ip.getIPv6Value0(), ip.getIPv6Value1()), v6Lo(ip.getIPv6Value2(), ip.getIPv6Value3()));
+    }
+
+    private static long v6Hi(int value0, int value1) {
+        return (((long) value0) << 32) | (value1 & 0xffffffffL);
+    }
+
+    private static long v6Lo(int value2, int value3) {
+        return (((long) value2) << 32) | (value3 & 0xffffffffL);
     }
 
     public R add(Network net, R rule) {
@@ -105,6 +97,17 @@ public class Networks<R extends Networks.Rule> {
         }
     }
 
+    /**
+     * Add rules in bulk, shorter prefixes are added first so that the lookup index is built with less rewriting.
+     */
+    public void addAll(Map<? extends Network, ? extends R> rules) {
+        var entries = new ArrayList<Map.Entry<? extends Network, ? extends R>>(rules.entrySet());
+        entries.sort(Comparator.comparingInt(e -> e.getKey().getMask()));
+        for (var e : entries) {
+            add(e.getKey(), e.getValue());
+        }
+    }
+
     private Rule addV4(Network net, R rule) {
         int mask = net.getMask();
         V4RulesGroupedByMask group = null;
@@ -124,7 +127,9 @@ public class Networks<R extends Networks.Rule> {
             group = new V4RulesGroupedByMask(mask);
             v4Rules.add(group);
         }
-        return group.rules.put(((IPv4) net.getIp()).getIPv4Value(), rule);
+        int v4 = ((IPv4) net.getIp()).getIPv4Value();
+        v4Trie.put(v4, mask, rule);
+        return group.rules.put(v4, rule);
     }
 
     private Rule addV6(Network net, R rule) {
@@ -146,7 +151,9 @@ public class Networks<R extends Networks.Rule> {
             group = new V6RulesGroupedByMask(mask);
             v6Rules.add(group);
         }
-        return group.rules.put(((IPv6) net.getIp()).getIPv6Values(), rule);
+        var v6 = ((IPv6) net.getIp()).getIPv6Values();
+        v6Trie.put(v6Hi(v6.value0, v6.value1), v6Lo(v6.value2, v6.value3), mask, rule);
+        return group.rules.put(v6, rule);
     }
 
     public R remove(Network net) {
@@ -168,7 +175,11 @@ public class Networks<R extends Networks.Rule> {
             } else if (rules.mask > mask) {
                 continue;
             }
-            var ret = rules.rules.remove(((IPv4) net.getIp()).getIPv4Value());
+            int v4 = ((IPv4) net.getIp()).getIPv4Value();
+            var ret = rules.rules.remove(v4);
+            if (ret != null) {
+                v4Trie.remove(v4, mask);
+            }
             if (rules.rules.isEmpty()) {
                 v4Rules.remove(i);
             }
@@ -186,7 +197,11 @@ public class Networks<R extends Networks.Rule> {
             } else if (rules.mask > mask) {
                 continue;
             }
-            var ret = rules.rules.remove(((IPv6) net.getIp()).getIPv6Values());
+            var v6 = ((IPv6) net.getIp()).getIPv6Values();
+            var ret = rules.rules.remove(v6);
+            if (ret != null) {
+                v6Trie.remove(v6Hi(v6.value0, v6.value1), v6Lo(v6.value2, v6.value3), mask);
+            }
             if (rules.rules.isEmpty()) {
                 v6Rules.remove(i);
             }
@@ -211,10 +226,12 @@ public class Networks<R extends Networks.Rule> {
     public R removeBy(Predicate<R> f) {
         for (var iter = v4Rules.iterator(); iter.hasNext(); ) {
             V4RulesGroupedByMask rules = iter.next();
-            for (var iterator = rules.rules.values().iterator(); iterator.hasNext(); ) {
-                Rule rule = iterator.next();
+            for (var iterator = rules.rules.entrySet().iterator(); iterator.hasNext(); ) {
+                var entry = iterator.next();
+                Rule rule = entry.getValue();
                 if (f.test(cast(rule))) {
                     iterator.remove();
+                    v4Trie.remove(entry.getKey(), rules.mask);
                     if (rules.rules.isEmpty()) {
                         iter.remove();
                     }
@@ -224,10 +241,13 @@ public class Networks<R extends Networks.Rule> {
         }
         for (var iter = v6Rules.iterator(); iter.hasNext(); ) {
             V6RulesGroupedByMask rules = iter.next();
-            for (var iterator = rules.rules.values().iterator(); iterator.hasNext(); ) {
-                Rule rule = iterator.next();
+            for (var iterator = rules.rules.entrySet().iterator(); iterator.hasNext(); ) {
+                var entry = iterator.next();
+                Rule rule = entry.getValue();
                 if (f.test(cast(rule))) {
                     iterator.remove();
+                    var v6 = entry.getKey();
+                    v6Trie.remove(v6Hi(v6.value0, v6.value1), v6Lo(v6.value2, v6.value3), rules.mask);
                     if (rules.rules.isEmpty()) {
                         iter.remove();
                     }
@@ -5,9 +5,11 @@ import io.vproxy.base.util.callback.Callback;
 import io.vproxy.base.util.exception.AlreadyExistException;
 import io.vproxy.base.util.exception.NotFoundException;
 import io.vproxy.base.util.exception.XException;
+import io.vproxy.base.util.net.InternetChecksum;
 import io.vproxy.base.util.net.Nic;
 import io.vproxy.base.util.unsafe.JDKUnsafe;
 import io.vproxy.vfd.MacAddress;
+import io.vproxy.vpacket.AbstractIpPacket;
 import io.vproxy.vpacket.Ipv4Packet;
 import io.vproxy.vpacket.Ipv6Packet;
 
@@ -777,30 +779,64 @@ public class Utils {
     }
 
     public static int calculateChecksum(ByteArray array, int limit) {
-        var intermediate = calculateChecksumIntermediate(0, array, limit);
-        return calculateChecksumDoFinal(intermediate);
+        return InternetChecksum.calculate(array, 0, limit);
+    }
+
+    /**
+     * Calculate checksum of the upper layer packet together with the pseudo header built from the ip packet,
+     * the pseudo header is not allocated.
+     */
+    public static int calculateChecksum(AbstractIpPacket ip, int upperType, ByteArray upper) {
+        long sum = InternetChecksum.pseudoHeaderSum(ip.getSrc(), ip.getDst(), upperType, upper.length());
+        sum = InternetChecksum.sum(sum, upper, 0, upper.length());
+        return InternetChecksum.doFinal(sum);
     }
 
     public static int calculateChecksumIntermediate(int sum, ByteArray array, int limit) {
-        for (int i = 0; i < limit / 2; ++i) {
-            sum += array.uint16(i * 2);
-            while (sum > 0xffff) {
-                sum = (sum & 0xffff) + 1;
-            }
-        }
-        if (limit % 2 != 0) {
-            sum += (array.uint8(limit - 1) << 8);
-            while (sum > 0xffff) {
-                sum = (sum & 0xffff) + 1;
-            }
-        }
-        return sum;
+        return InternetChecksum.fold(InternetChecksum.sum(sum & 0xffffffffL, array, 0, limit));
     }
 
     public static int calculateChecksumDoFinal(int sum) {
         return 0xffff - sum;
     }
 
+    /**
+     * Update the checksum when a 16-bit word of the checksummed data is modified, see RFC 1624.<br>
+     * <code>HC' = ~(~HC + ~m + m')</code>
+     */
+    public static int incrementalChecksum(int checksum, int oldWord, int newWord) {
+        int sum = (~checksum & 0xffff) + (~oldWord & 0xffff) + (newWord & 0xffff);
+        return ~foldChecksum(sum) & 0xffff;
+    }
+
+    /**
+     * Same as {@link #incrementalChecksum(int, int, int)}, but for a 32-bit field.
+     */
+    public static int incrementalChecksum32(int checksum, int oldValue, int newValue) {
+        int sum = (~checksum & 0xffff)
+            + (~oldValue >>> 16) + (~oldValue & 0xffff)
+            + (newValue >>> 16) + (newValue & 0xffff);
+        return ~foldChecksum(sum) & 0xffff;
+    }
+
+    /**
+     * Same as {@link #incrementalChecksum(int, int, int)}, but for a field with even length.
+     */
+    public static int incrementalChecksum(int checksum, ByteArray oldBytes, ByteArray newBytes) {
+        if (oldBytes.length() != newBytes.length() || oldBytes.length() % 2 != 0)
+            throw new IllegalArgumentException("oldBytes.length " + oldBytes.length() + ", newBytes.length " + newBytes.length());
+        int sum = ~checksum & 0xffff;
+        for (int i = 0; i < oldBytes.length(); i += 2) {
+            sum += (~oldBytes.uint16(i) & 0xffff) + newBytes.uint16(i);
+        }
+        return ~foldChecksum(sum) & 0xffff;
+    }
+
+    private static int foldChecksum(int sum) {
+        sum = (sum & 0xffff) + (sum >>> 16);
+        return (sum & 0xffff) + (sum >>> 16);
+    }
+
     public static byte[] sha1(byte[] input) {
         MessageDigest md;
         try {
@@ -29,7 +29,7 @@ public class BitwiseGeneralMatcher extends BitwiseMatcher {
             }
             var mask2 = ByteArray.allocateInitZero(matcher.length());
             int i;
-            for (i = 1; mask.length() - i >= 0; --i) {
+            for (i = 1; mask.length() - i >= 0; ++i) {
                 mask2.set(mask2.length() - i, mask.get(mask.length() - i));
             }
             mask = mask2;
@@ -0,0 +1,107 @@
+package io.vproxy.base.util.bitwise;
+
+import io.vproxy.base.util.coll.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A set of BitwiseIntMatcher rules, answering which rule matches first for an int input.<br>
+ * Same as {@link BitwiseMatcherSet}: higher priority first, then in the order they are added.
+ * Rules are grouped by mask, each group is a primitive hash table keyed by the masked value.
+ * The groups are rebuilt when the set is modified and are never modified after that,
+ * so {@link #match(int)} can be called from any thread without locking.
+ *
+ * @param <T> value type
+ */
+public class BitwiseIntMatcherSet<T> {
+    private final List<Rule<T>> rules = new ArrayList<>(); // guarded by this
+    private volatile Group<T>[] groups = compile(rules);
+
+    private static final class Rule<T> {
+        final BitwiseIntMatcher matcher;
+        final int priority;
+        final T value;
+
+        Rule(BitwiseIntMatcher matcher, int priority, T value) {
+            this.matcher = matcher;
+            this.priority = priority;
+            this.value = value;
+        }
+    }
+
+    private static final class Entry<T> {
+        final int rank; // 0 is the best
+        final T value;
+
+        Entry(int rank, T value) {
+            this.rank = rank;
+            this.value = value;
+        }
+    }
+
+    private static final class Group<T> {
+        final int mask;
+        final int bestRank;
+        final IntObjectHashMap<Entry<T>> entries = new IntObjectHashMap<>();
+
+        Group(int mask, int bestRank) {
+            this.mask = mask;
+            this.bestRank = bestRank;
+        }
+    }
+
+    public synchronized BitwiseIntMatcherSet<T> add(BitwiseIntMatcher matcher, int priority, T value) {
+        rules.add(new Rule<>(matcher, priority, value));
+        groups = compile(rules);
+        return this;
+    }
+
+    public synchronized boolean remove(BitwiseIntMatcher matcher) {
+        boolean removed = rules.removeIf(r -> r.matcher.equals(matcher));
+        if (removed) {
+            groups = compile(rules);
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return rules.size();
+    }
+
+    /**
+     * @return value of the first matching rule, or null if no rule matches
+     */
+    public T match(int n) {
+        Entry<T> best = null;
+        for (var g : groups) {
+            if (best != null && best.rank < g.bestRank) {
+                break;
+            }
+            var e = g.entries.get(n & g.mask);
+            if (e != null && (best == null || e.rank < best.rank)) {
+                best = e;
+            }
+        }
+        return best == null ? null : best.value;
+    }
+
+    private static <T> Group<T>[] compile(List<Rule<T>> rules) {
+        var sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingInt((Rule<T> r) -> r.priority).reversed()); // stable
+        var groups = new LinkedHashMap<Integer, Group<T>>();
+        for (int i = 0; i < sorted.size(); ++i) {
+            var r = sorted.get(i);
+            int mask = r.matcher.getMask();
+            int rank = i;
+            var g = groups.computeIfAbsent(mask, m -> new Group<>(m, rank));
+            // keep the first one for the same value
+            g.entries.putIfAbsent(r.matcher.getMatcher(), new Entry<>(i, r.value));
+        }
+        @SuppressWarnings("unchecked")
+        Group<T>[] arr = (Group<T>[]) new Group<?>[0];
+        return groups.values().toArray(arr);
+    }
+}
@@ -0,0 +1,328 @@
+package io.vproxy.base.util.bitwise;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.ToByteArray;
+import io.vproxy.base.util.coll.Tuple;
+
+import java.util.*;
+
+/**
+ * A set of BitwiseMatcher rules, answering which rule matches first for an input.<br>
+ * Rules with higher priority are checked first, rules with the same priority are checked in the order they are added.
+ * The result is the same as calling {@link BitwiseMatcher#match(ByteArray)} for each rule in that order.<br>
+ * <br>
+ * The rules are compiled into a tuple space: all matchers and masks are right-aligned into the same number of long words,
+ * and rules with the same mask are grouped into one hash table keyed by the masked value.
+ * A lookup masks the input words once per group and probes the table,
+ * groups are sorted by the best rule inside, so the lookup stops when no remaining group can do better.
+ * The cost depends on the number of distinct masks, not the number of rules.<br>
+ * The set is compiled when it's modified, and the compiled result is immutable,
+ * so {@link #match(ByteArray)} can be called from any thread without locking, even when the set is being modified.
+ *
+ * @param <T> value type
+ */
+public class BitwiseMatcherSet<T> {
+    private final List<Rule<T>> rules = new ArrayList<>(); // guarded by this
+    private volatile Compiled<T> compiled = compile(rules);
+
+    private static final class Rule<T> {
+        final BitwiseMatcher matcher;
+        final int priority;
+        final T value;
+
+        Rule(BitwiseMatcher matcher, int priority, T value) {
+            this.matcher = matcher;
+            this.priority = priority;
+            this.value = value;
+        }
+    }
+
+    private static final class Entry<T> {
+        final int rank; // 0 is the best
+        final T value;
+
+        Entry(int rank, T value) {
+            this.rank = rank;
+            this.value = value;
+        }
+    }
+
+    public synchronized BitwiseMatcherSet<T> add(BitwiseMatcher matcher, int priority, T value) {
+        rules.add(new Rule<>(matcher, priority, value));
+        compiled = compile(rules);
+        return this;
+    }
+
+    public synchronized boolean remove(BitwiseMatcher matcher) {
+        boolean removed = rules.removeIf(r -> r.matcher.equals(matcher));
+        if (removed) {
+            compiled = compile(rules);
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return rules.size();
+    }
+
+    public T match(byte[] bytes) {
+        return match(ByteArray.from(bytes));
+    }
+
+    public T match(ToByteArray input) {
+        return match(input.toByteArray());
+    }
+
+    /**
+     * @return value of the first matching rule, or null if no rule matches
+     */
+    public T match(ByteArray input) {
+        return compiled.match(input);
+    }
+
+    private static <T> Compiled<T> compile(List<Rule<T>> rules) {
+        var sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingInt((Rule<T> r) -> r.priority).reversed()); // stable
+        int width = 0;
+        for (var r : sorted) {
+            width = Math.max(width, alignedWidth(r.matcher));
+        }
+        int words = Math.max(1, (width + 7) / 8);
+
+        var groups = new LinkedHashMap<Mask, List<Tuple<long[], Entry<T>>>>();
+        for (int i = 0; i < sorted.size(); ++i) {
+            var r = sorted.get(i);
+            long[] mask = new long[words];
+            long[] value = new long[words];
+            toWords(r.matcher, mask, value);
+            boolean possible = true;
+            for (int w = 0; w < words; ++w) {
+                if ((value[w] & ~mask[w]) != 0) {
+                    possible = false; // bits outside the mask can never match
+                    break;
+                }
+            }
+            if (!possible) {
+                continue;
+            }
+            groups.computeIfAbsent(new Mask(mask), k -> new ArrayList<>()).add(new Tuple<>(value, new Entry<>(i, r.value)));
+        }
+        var compiledGroups = new ArrayList<Group<T>>(groups.size());
+        for (var e : groups.entrySet()) {
+            compiledGroups.add(new Group<>(e.getKey().words, e.getValue()));
+        }
+        // rules were iterated from the best, so the groups are already ordered by their best rule
+        @SuppressWarnings("unchecked")
+        Group<T>[] arr = (Group<T>[]) compiledGroups.toArray(new Group<?>[0]);
+        return new Compiled<>(words, arr);
+    }
+
+    private static int alignedWidth(BitwiseMatcher matcher) {
+        return Math.min(matcher.getMatcher().length(), matcher.getMask().length());
+    }
+
+    private static void toWords(BitwiseMatcher matcher, long[] mask, long[] value) {
+        var m = matcher.getMatcher();
+        var k = matcher.getMask();
+        int total = mask.length * 8;
+        int width = alignedWidth(matcher);
+        for (int i = 1; i <= width; ++i) {
+            int pos = total - i;
+            int shift = (7 - (pos & 7)) * 8;
+            mask[pos >>> 3] |= ((long) (k.get(k.length() - i) & 0xff)) << shift;
+            value[pos >>> 3] |= ((long) (m.get(m.length() - i) & 0xff)) << shift;
+        }
+    }
+
+    private static final class Mask {
+        final long[] words;
+
+        Mask(long[] words) {
+            this.words = words;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Mask && Arrays.equals(words, ((Mask) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+
+    private static long hash(long h, long word) {
+        return (h ^ word) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Group<T> {
+        final long[] mask;
+        final int words;
+        final int bestRank;
+        final long[] keys; // words per slot
+        final Entry<T>[] slots;
+        final int slotMask;
+
+        Group(long[] mask, List<Tuple<long[], Entry<T>>> rules) {
+            this.mask = mask;
+            this.words = mask.length;
+            this.bestRank = rules.get(0).right.rank;
+            int cap = Integer.highestOneBit(Math.max(2, rules.size() * 2) - 1) << 1;
+            this.keys = new long[cap * words];
+            @SuppressWarnings("unchecked")
+            Entry<T>[] slots = (Entry<T>[]) new Entry<?>[cap];
+            this.slots = slots;
+            this.slotMask = cap - 1;
+            for (var rule : rules) {
+                long[] v = rule.left;
+                long h = 0;
+                for (long w : v) {
+                    h = hash(h, w);
+                }
+                int s = slot(h);
+                while (slots[s] != null && !keyEquals(s, v)) {
+                    s = (s + 1) & slotMask;
+                }
+                if (slots[s] == null) {
+                    // rules are added from the best, keep the first one for the same value
+                    slots[s] = rule.right;
+                    System.arraycopy(v, 0, keys, s * words, words);
+                }
+            }
+        }
+
+        private int slot(long h) {
+            return (int) (h ^ (h >>> 32)) & slotMask;
+        }
+
+        private boolean keyEquals(int s, long[] v) {
+            for (int w = 0; w < words; ++w) {
+                if (keys[s * words + w] != v[w]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Entry<T> find(long input) {
+            long v = input & mask[0];
+            int s = slot(hash(0, v));
+            while (true) {
+                var e = slots[s];
+                if (e == null) {
+                    return null;
+                }
+                if (keys[s] == v) {
+                    return e;
+                }
+                s = (s + 1) & slotMask;
+            }
+        }
+
+        Entry<T> find(long input0, long input1) {
+            long v0 = input0 & mask[0];
+            long v1 = input1 & mask[1];
+            int s = slot(hash(hash(0, v0), v1));
+            while (true) {
+                var e = slots[s];
+                if (e == null) {
+                    return null;
+                }
+                if (keys[s * 2] == v0 && keys[s * 2 + 1] == v1) {
+                    return e;
+                }
+                s = (s + 1) & slotMask;
+            }
+        }
+
+        // the words are read from the input when needed, so nothing is allocated for wide inputs
+        Entry<T> find(ByteArray input) {
+            long h = 0;
+            for (int w = 0; w < words; ++w) {
+                h = hash(h, word(input, words, w) & mask[w]);
+            }
+            int s = slot(h);
+            outer:
+            while (true) {
+                var e = slots[s];
+                if (e == null) {
+                    return null;
+                }
+                int base = s * words;
+                for (int w = 0; w < words; ++w) {
+                    if (keys[base + w] != (word(input, words, w) & mask[w])) {
+                        s = (s + 1) & slotMask;
+                        continue outer;
+                    }
+                }
+                return e;
+            }
+        }
+    }
+
+    /**
+     * @param index the index of the word, the input is right-aligned and padded with 0 on the left
+     */
+    private static long word(ByteArray input, int words, int index) {
+        int len = input.length();
+        int off = len - (words - index) * 8;
+        if (off >= 0) {
+            return input.int64(off);
+        }
+        long w = 0;
+        for (int i = Math.max(0, off); i < off + 8; ++i) {
+            w = (w << 8) | (input.uint8(i));
+        }
+        return w;
+    }
+
+    private static final class Compiled<T> {
+        final int words;
+        final Group<T>[] groups;
+
+        Compiled(int words, Group<T>[] groups) {
+            this.words = words;
+            this.groups = groups;
+        }
+
+        T match(ByteArray input) {
+            Entry<T> best = null;
+            if (words == 1) {
+                long w = word(input, 1, 0);
+                for (var g : groups) {
+                    if (best != null && best.rank < g.bestRank) {
+                        break;
+                    }
+                    var e = g.find(w);
+                    if (e != null && (best == null || e.rank < best.rank)) {
+                        best = e;
+                    }
+                }
+            } else if (words == 2) {
+                long w0 = word(input, 2, 0);
+                long w1 = word(input, 2, 1);
+                for (var g : groups) {
+                    if (best != null && best.rank < g.bestRank) {
+                        break;
+                    }
+                    var e = g.find(w0, w1);
+                    if (e != null && (best == null || e.rank < best.rank)) {
+                        best = e;
+                    }
+                }
+            } else {
+                for (var g : groups) {
+                    if (best != null && best.rank < g.bestRank) {
+                        break;
+                    }
+                    var e = g.find(input);
+                    if (e != null && (best == null || e.rank < best.rank)) {
+                        best = e;
+                    }
+                }
+            }
+            return best == null ? null : best.value;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import io.vproxy.base.util.Utils;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public abstract class AbstractByteArray implements ByteArray {
     public static final ByteArray EMPTY = new SimpleByteArray(Utils.getZeroLengthByteArray());
@@ -31,6 +32,11 @@ public abstract class AbstractByteArray implements ByteArray {
         }
     }
 
+    protected void checkBoundForCopyWithin(int src, int dst, int len) {
+        checkBoundForOffsetAndLength(src, len);
+        checkBoundForOffsetAndLength(dst, len);
+    }
+
     protected void checkBoundForByteBufferAndOffsetAndLength(ByteBuffer byteBuffer, int off, int len) {
         checkBoundForOffsetAndLength(off, len);
 
@@ -51,8 +57,60 @@ public abstract class AbstractByteArray implements ByteArray {
 
     abstract protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen);
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Scan 8 bytes per step: a byte in {@code x ^ (b * ONES)} is zero iff it equals b.
+     * The expression below marks exactly those bytes (no borrow across bytes), so the first
+     * marked byte in big endian order is the first match.
+     */
+    @Override
+    public int indexOf(byte b, int fromIndex) {
+        final int len = length();
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        int i = fromIndex;
+        if (len - i >= 8) {
+            final long pattern = (b & 0xffL) * ONES;
+            for (; i + 8 <= len; i += 8) {
+                long x = int64(i) ^ pattern;
+                long found = ~(((x & LOW7) + LOW7) | x | LOW7);
+                if (found != 0) {
+                    return i + (Long.numberOfLeadingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < len; ++i) {
+            if (get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] heapArray(ByteArray a) {
+        if (a instanceof SimpleByteArray) {
+            return a.toJavaArray();
+        }
+        if (a instanceof SubByteArray && ((SubByteArray) a).source instanceof SimpleByteArray) {
+            return ((SubByteArray) a).source.toJavaArray();
+        }
+        return null;
+    }
+
+    private static int heapOffset(ByteArray a) {
+        if (a instanceof SubByteArray) {
+            return ((SubByteArray) a).from;
+        }
+        return 0;
+    }
+
     @Override
     public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
         if (!(obj instanceof ByteArray))
             return false;
         ByteArray o = (ByteArray) obj;
@@ -62,21 +120,64 @@ public abstract class AbstractByteArray implements ByteArray {
         if (len != o.length())
             return false;
 
-        for (int i = 0; i < len; ++i) {
+        byte[] a = heapArray(this);
+        byte[] b = heapArray(o);
+        if (a != null && b != null) {
+            int aOff = heapOffset(this);
+            int bOff = heapOffset(o);
+            return Arrays.equals(a, aOff, aOff + len, b, bOff, bOff + len);
+        }
+
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            if (this.int64(i) != o.int64(i))
+                return false;
+        }
+        for (; i < len; ++i) {
             if (this.get(i) != o.get(i))
                 return false;
         }
         return true;
     }
 
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static long mixK(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        return k;
+    }
+
+    /**
+     * Murmur3-style hash over 8-byte big endian words.<br>
+     * Only the content is used, so any two ByteArray implementations which are {@link #equals(Object)}
+     * produce the same hash.
+     */
     @Override
     public int hashCode() {
         final int len = length();
-        int ret = 0;
-        for (int i = 0; i < len; ++i) {
-            ret = (ret << 31) | get(i);
+        long h = len;
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            h ^= mixK(int64(i));
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        if (i < len) {
+            long tail = 0;
+            for (; i < len; ++i) {
+                tail = (tail << 8) | uint8long(i);
+            }
+            h ^= mixK(tail);
         }
-        return ret;
+        h ^= len;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h ^ (h >>> 32));
     }
 
     @Override
@@ -0,0 +1,184 @@
+package io.vproxy.base.util.bytearray;
+
+import io.vproxy.base.util.ByteArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A ByteArray view of the bytes between position and limit of a ByteBuffer, no bytes are copied.<br>
+ * Works with direct and mapped buffers, the position/limit of the input buffer are not used after construction.
+ * Modifying a read-only buffer throws {@link java.nio.ReadOnlyBufferException}.
+ */
+public class ByteBufferByteArray extends AbstractByteArray implements ByteArray {
+    private final ByteBuffer buf;
+
+    public ByteBufferByteArray(ByteBuffer buf) {
+        this.buf = buf.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return buf.duplicate();
+    }
+
+    @Override
+    public byte get(int idx) {
+        checkBoundForOffset(idx);
+        return buf.get(idx);
+    }
+
+    @Override
+    public ByteArray set(int idx, byte value) {
+        checkBoundForOffset(idx);
+        buf.put(idx, value);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return buf.capacity();
+    }
+
+    @Override
+    public void byteBufferPut(ByteBuffer dst, int off, int len) {
+        checkBoundForByteBufferAndOffsetAndLength(dst, off, len);
+        dst.put(buf.duplicate().limit(off + len).position(off));
+    }
+
+    @Override
+    public void byteBufferGet(ByteBuffer src, int off, int len) {
+        checkBoundForByteBufferAndOffsetAndLength(src, off, len);
+        int lim = src.limit();
+        src.limit(src.position() + len);
+        buf.duplicate().position(off).put(src);
+        src.limit(lim);
+    }
+
+    @Override
+    public ByteArray copyWithin(int src, int dst, int len) {
+        checkBoundForCopyWithin(src, dst, len);
+        if (src == dst || len == 0) {
+            return this;
+        }
+        if (buf.hasArray()) {
+            var array = buf.array();
+            int off = buf.arrayOffset();
+            System.arraycopy(array, off + src, array, off + dst, len);
+            return this;
+        }
+        // overlapping behavior of ByteBuffer.put is not specified,
+        // so copy in chunks no longer than the distance, each chunk does not overlap with itself
+        int step = Math.min(Math.abs(dst - src), len);
+        if (dst < src) {
+            for (int i = 0; i < len; i += step) {
+                int n = Math.min(step, len - i);
+                buf.duplicate().position(dst + i).put(buf.duplicate().limit(src + i + n).position(src + i));
+            }
+        } else {
+            for (int i = len; i > 0; i -= step) {
+                int n = Math.min(step, i);
+                buf.duplicate().position(dst + i - n).put(buf.duplicate().limit(src + i).position(src + i - n));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen) {
+        buf.duplicate().position(srcOff).get(dst, dstOff, srcLen);
+    }
+
+    @Override
+    public ByteArray sub(int fromInclusive, int len) {
+        checkBoundForOffsetAndLength(fromInclusive, len);
+        return new ByteBufferByteArray(buf.duplicate().limit(fromInclusive + len).position(fromInclusive));
+    }
+
+    @Override
+    public int uint16(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return buf.getShort(offset) & 0xffff;
+    }
+
+    @Override
+    public int uint16ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return Short.reverseBytes(buf.getShort(offset)) & 0xffff;
+    }
+
+    @Override
+    public int int32(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return buf.getInt(offset);
+    }
+
+    @Override
+    public int int32ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return Integer.reverseBytes(buf.getInt(offset));
+    }
+
+    @Override
+    public long uint32(int offset) {
+        return int32(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long uint32ReverseNetworkByteOrder(int offset) {
+        return int32ReverseNetworkByteOrder(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long int64(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return buf.getLong(offset);
+    }
+
+    @Override
+    public long int64ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return Long.reverseBytes(buf.getLong(offset));
+    }
+
+    @Override
+    public ByteArray int16(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        buf.putShort(offset, (short) val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int16ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        buf.putShort(offset, Short.reverseBytes((short) val));
+        return this;
+    }
+
+    @Override
+    public ByteArray int32(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        buf.putInt(offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int32ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        buf.putInt(offset, Integer.reverseBytes(val));
+        return this;
+    }
+
+    @Override
+    public ByteArray int64(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        buf.putLong(offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int64ReverseNetworkByteOrder(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        buf.putLong(offset, Long.reverseBytes(val));
+        return this;
+    }
+}
@@ -3,43 +3,143 @@ package io.vproxy.base.util.bytearray;
 import io.vproxy.base.util.ByteArray;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * A flat list of segments with a prefix-offset index.<br>
+ * Segments are never nested: concatenating composites copies the segment references instead of wrapping them,
+ * so random access is a binary search over the offsets, and sequential access hits the cached segment.<br>
+ * The segment arrays may be shared by composites produced from the same left operand:
+ * <pre>
+ *     a.concat(b).concat(c).concat(d)
+ * </pre>
+ * appends b, c, d into the same arrays, and each composite only sees its own leading segments.
+ * Only the first caller which appends after the last segment can reuse the arrays, others copy.
+ */
 public class CompositeByteArray extends AbstractByteArray implements ByteArray {
-    private final ByteArray first;
-    private final ByteArray second;
+    private static final int MIN_CAPACITY = 4;
+
+    private final ByteArray[] segments;
+    private final int[] offsets; // offsets[i] is the index of segments[i][0] in this array
+    private final AtomicInteger appended; // number of slots occupied in the shared arrays
+    private final int count;
     private final int len;
 
-    public CompositeByteArray(ByteArray first, ByteArray second) {
-        this.first = first;
-        this.second = second;
+    private int lastSegment = 0; // hint for sequential access
 
+    public CompositeByteArray(ByteArray first, ByteArray second) {
+        int firstCount = segmentCount(first);
+        int total = firstCount + segmentCount(second);
+        this.segments = new ByteArray[capacityFor(total)];
+        this.offsets = new int[this.segments.length];
+        fill(segments, offsets, 0, 0, first);
+        fill(segments, offsets, firstCount, first.length(), second);
+        this.appended = new AtomicInteger(total);
+        this.count = total;
         this.len = first.length() + second.length();
     }
 
+    private CompositeByteArray(ByteArray[] segments, int[] offsets, AtomicInteger appended, int count, int len) {
+        this.segments = segments;
+        this.offsets = offsets;
+        this.appended = appended;
+        this.count = count;
+        this.len = len;
+    }
+
+    private static int capacityFor(int count) {
+        return Math.max(MIN_CAPACITY, count + (count >> 1));
+    }
+
+    private static int segmentCount(ByteArray array) {
+        if (array instanceof CompositeByteArray) {
+            return ((CompositeByteArray) array).count;
+        }
+        return 1;
+    }
+
+    private static void fill(ByteArray[] segments, int[] offsets, int index, int offset, ByteArray array) {
+        if (array instanceof CompositeByteArray) {
+            var o = (CompositeByteArray) array;
+            System.arraycopy(o.segments, 0, segments, index, o.count);
+            for (int i = 0; i < o.count; ++i) {
+                offsets[index + i] = offset + o.offsets[i];
+            }
+        } else {
+            segments[index] = array;
+            offsets[index] = offset;
+        }
+    }
+
+    public int segmentCount() {
+        return count;
+    }
+
+    public ByteArray segment(int index) {
+        if (index < 0 || index >= count) {
+            throw new ArrayIndexOutOfBoundsException("index=" + index + ", segmentCount=" + count);
+        }
+        return segments[index];
+    }
+
+    @Override
+    public ByteArray concat(ByteArray array) {
+        int arrayLen = array.length();
+        if (arrayLen == 0) {
+            return this;
+        }
+        int addCount = segmentCount(array);
+        int newCount = count + addCount;
+        if (newCount <= segments.length && appended.compareAndSet(count, newCount)) {
+            // the slots after this composite are not used by anyone else, append in place
+            fill(segments, offsets, count, len, array);
+            return new CompositeByteArray(segments, offsets, appended, newCount, len + arrayLen);
+        }
+        var newSegments = new ByteArray[capacityFor(newCount)];
+        var newOffsets = new int[newSegments.length];
+        System.arraycopy(segments, 0, newSegments, 0, count);
+        System.arraycopy(offsets, 0, newOffsets, 0, count);
+        fill(newSegments, newOffsets, count, len, array);
+        return new CompositeByteArray(newSegments, newOffsets, new AtomicInteger(newCount), newCount, len + arrayLen);
+    }
+
+    private int segmentEnd(int index) {
+        return index + 1 < count ? offsets[index + 1] : len;
+    }
+
+    private int segmentIndex(int idx) {
+        int hint = lastSegment;
+        if (offsets[hint] <= idx && idx < segmentEnd(hint)) {
+            return hint;
+        }
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= idx) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        lastSegment = lo;
+        return lo;
+    }
+
     @Override
     public byte get(int idx) {
         checkBoundForOffset(idx);
 
-        if (idx >= len || idx < 0)
-            throw new ArrayIndexOutOfBoundsException("index=" + idx + ", length=" + len);
-        if (idx < first.length()) {
-            return first.get(idx);
-        } else {
-            return second.get(idx - first.length());
-        }
+        int i = segmentIndex(idx);
+        return segments[i].get(idx - offsets[i]);
     }
 
     @Override
     public ByteArray set(int idx, byte value) {
         checkBoundForOffset(idx);
 
-        if (idx >= len || idx < 0)
-            throw new ArrayIndexOutOfBoundsException("index=" + idx + ", length=" + len);
-        if (idx < first.length()) {
-            first.set(idx, value);
-        } else {
-            second.set(idx - first.length(), value);
-        }
+        int i = segmentIndex(idx);
+        segments[i].set(idx - offsets[i], value);
         return this;
     }
 
@@ -48,53 +148,137 @@ public class CompositeByteArray extends AbstractByteArray implements ByteArray {
         return len;
     }
 
+    @Override
+    public ByteArray sub(int fromInclusive, int len) {
+        if (fromInclusive == 0 && len == this.len) {
+            return this;
+        }
+        checkBoundForOffsetAndLength(fromInclusive, len);
+        if (len == 0) {
+            return AbstractByteArray.EMPTY;
+        }
+        int first = segmentIndex(fromInclusive);
+        int last = segmentIndex(fromInclusive + len - 1);
+        if (first == last) {
+            return segments[first].sub(fromInclusive - offsets[first], len);
+        }
+        int newCount = last - first + 1;
+        var newSegments = new ByteArray[newCount];
+        var newOffsets = new int[newCount];
+        int headOff = fromInclusive - offsets[first];
+        newSegments[0] = segments[first].sub(headOff, segmentEnd(first) - fromInclusive);
+        for (int i = 1; i < newCount; ++i) {
+            newSegments[i] = segments[first + i];
+            newOffsets[i] = offsets[first + i] - fromInclusive;
+        }
+        newSegments[newCount - 1] = segments[last].sub(0, fromInclusive + len - offsets[last]);
+        return new CompositeByteArray(newSegments, newOffsets, new AtomicInteger(newCount), newCount, len);
+    }
+
     @Override
     public void byteBufferPut(ByteBuffer dst, int off, int len) {
         checkBoundForByteBufferAndOffsetAndLength(dst, off, len);
-
-        int firstLen = first.length();
-        if (off > firstLen) {
-            second.byteBufferPut(dst, off - firstLen, len);
+        if (len == 0) {
             return;
         }
-        if (len < firstLen - off) {
-            first.byteBufferPut(dst, off, len);
-            return;
+
+        int i = segmentIndex(off);
+        while (len > 0) {
+            int segOff = off - offsets[i];
+            int n = Math.min(len, segmentEnd(i) - off);
+            segments[i].byteBufferPut(dst, segOff, n);
+            off += n;
+            len -= n;
+            ++i;
         }
-        first.byteBufferPut(dst, off, firstLen - off);
-        second.byteBufferPut(dst, 0, len - (firstLen - off));
     }
 
     @Override
     public void byteBufferGet(ByteBuffer src, int off, int len) {
         checkBoundForByteBufferAndOffsetAndLength(src, off, len);
-
-        int firstLen = first.length();
-        if (off > firstLen) {
-            second.byteBufferGet(src, off - firstLen, len);
+        if (len == 0) {
             return;
         }
-        if (len < firstLen - off) {
-            first.byteBufferGet(src, off, len);
+
+        int i = segmentIndex(off);
+        while (len > 0) {
+            int segOff = off - offsets[i];
+            int n = Math.min(len, segmentEnd(i) - off);
+            segments[i].byteBufferGet(src, segOff, n);
+            off += n;
+            len -= n;
+            ++i;
+        }
+    }
+
+    @Override
+    public void copyInto(ByteArray dst, int dstOff, int srcOff, int srcLen) {
+        if (srcLen == 0) {
             return;
         }
-        first.byteBufferGet(src, off, firstLen - off);
-        second.byteBufferGet(src, 0, len - (firstLen - off));
+        checkBoundForOffsetAndLength(srcOff, srcLen);
+
+        int i = segmentIndex(srcOff);
+        while (srcLen > 0) {
+            int segOff = srcOff - offsets[i];
+            int n = Math.min(srcLen, segmentEnd(i) - srcOff);
+            segments[i].copyInto(dst, dstOff, segOff, n);
+            dstOff += n;
+            srcOff += n;
+            srcLen -= n;
+            ++i;
+        }
     }
 
     @Override
     protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen) {
-        int firstLen = first.length();
-        if (firstLen > srcOff) {
-            //noinspection UnnecessaryLocalVariable
-            int off = srcOff;
-            int len = Math.min(srcLen, firstLen - off);
-            ((AbstractByteArray) first).doToNewJavaArray(dst, dstOff, off, len);
-            if (srcLen > len) {
-                ((AbstractByteArray) second).doToNewJavaArray(dst, dstOff + len, 0, srcLen - len);
-            }
-        } else {
-            ((AbstractByteArray) second).doToNewJavaArray(dst, dstOff, srcOff - firstLen, srcLen);
+        if (srcLen == 0) {
+            return;
+        }
+        int i = segmentIndex(srcOff);
+        while (srcLen > 0) {
+            int segOff = srcOff - offsets[i];
+            int n = Math.min(srcLen, segmentEnd(i) - srcOff);
+            ((AbstractByteArray) segments[i]).doToNewJavaArray(dst, dstOff, segOff, n);
+            dstOff += n;
+            srcOff += n;
+            srcLen -= n;
+            ++i;
+        }
+    }
+
+    @Override
+    public int uint16(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        int i = segmentIndex(offset);
+        if (offset + 2 <= segmentEnd(i)) {
+            return segments[i].uint16(offset - offsets[i]);
+        }
+        return (uint8(offset) << 8) | uint8(offset + 1);
+    }
+
+    @Override
+    public int int32(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        int i = segmentIndex(offset);
+        if (offset + 4 <= segmentEnd(i)) {
+            return segments[i].int32(offset - offsets[i]);
+        }
+        return (uint16(offset) << 16) | uint16(offset + 2);
+    }
+
+    @Override
+    public long uint32(int offset) {
+        return int32(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long int64(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        int i = segmentIndex(offset);
+        if (offset + 8 <= segmentEnd(i)) {
+            return segments[i].int64(offset - offsets[i]);
         }
+        return (((long) int32(offset)) << 32) | (int32(offset + 4) & 0xffffffffL);
     }
 }
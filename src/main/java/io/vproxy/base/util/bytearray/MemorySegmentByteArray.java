@@ -174,6 +174,21 @@ public class MemorySegmentByteArray extends AbstractByteArray implements ByteArr
         }
     }
 
+    @Override
+    public ByteArray copyWithin(int src, int dst, int len) {
+        checkBoundForCopyWithin(src, dst, len);
+        if (src == dst || len == 0) {
+            return this;
+        }
+        // MemorySegment.copyFrom handles overlapping segments
+        try {
+            copyFrom.invoke(asSlice.invoke(seg, dst, len), asSlice.invoke(seg, src, len));
+        } catch (Throwable e) {
+            throw new UnsupportedOperationException(e);
+        }
+        return this;
+    }
+
     @Override
     protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen) {
         ByteBuffer buf;
@@ -258,6 +273,16 @@ public class MemorySegmentByteArray extends AbstractByteArray implements ByteArr
         }
     }
 
+    @Override
+    public int uint24(int offset) {
+        return (uint16(offset) << 8) | uint8(offset + 2);
+    }
+
+    @Override
+    public int uint24ReverseNetworkByteOrder(int offset) {
+        return (uint8(offset + 2) << 16) | uint16ReverseNetworkByteOrder(offset);
+    }
+
     @Override
     public ByteArray int16(int offset, int val) {
         try {
@@ -278,6 +303,20 @@ public class MemorySegmentByteArray extends AbstractByteArray implements ByteArr
         return this;
     }
 
+    @Override
+    public ByteArray int24(int offset, int val) {
+        int16(offset, val >> 8);
+        set(offset + 2, (byte) val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int24ReverseNetworkByteOrder(int offset, int val) {
+        int16ReverseNetworkByteOrder(offset, val);
+        set(offset + 2, (byte) (val >> 16));
+        return this;
+    }
+
     @Override
     public ByteArray int32(int offset, int val) {
         try {
@@ -2,9 +2,19 @@ package io.vproxy.base.util.bytearray;
 
 import io.vproxy.base.util.ByteArray;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class SimpleByteArray extends AbstractByteArray implements ByteArray {
+    private static final VarHandle SHORT_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORT_LITTLE_ENDIAN = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LITTLE_ENDIAN = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_LITTLE_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     private final byte[] array;
 
     public SimpleByteArray(byte[] array) {
@@ -51,8 +61,131 @@ public class SimpleByteArray extends AbstractByteArray implements ByteArray {
         src.get(array, off, len);
     }
 
+    @Override
+    public ByteArray copyWithin(int src, int dst, int len) {
+        checkBoundForCopyWithin(src, dst, len);
+        System.arraycopy(array, src, array, dst, len);
+        return this;
+    }
+
     @Override
     protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen) {
         System.arraycopy(array, srcOff, dst, dstOff, srcLen);
     }
+
+    @Override
+    public int uint16(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return ((short) SHORT_BIG_ENDIAN.get(array, offset)) & 0xffff;
+    }
+
+    @Override
+    public int uint16ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return ((short) SHORT_LITTLE_ENDIAN.get(array, offset)) & 0xffff;
+    }
+
+    @Override
+    public int uint24(int offset) {
+        checkBoundForOffsetAndLength(offset, 3);
+        return ((((short) SHORT_BIG_ENDIAN.get(array, offset)) & 0xffff) << 8) | (array[offset + 2] & 0xff);
+    }
+
+    @Override
+    public int uint24ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 3);
+        return ((array[offset + 2] & 0xff) << 16) | (((short) SHORT_LITTLE_ENDIAN.get(array, offset)) & 0xffff);
+    }
+
+    @Override
+    public int int32(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return (int) INT_BIG_ENDIAN.get(array, offset);
+    }
+
+    @Override
+    public int int32ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return (int) INT_LITTLE_ENDIAN.get(array, offset);
+    }
+
+    @Override
+    public long uint32(int offset) {
+        return int32(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long uint32ReverseNetworkByteOrder(int offset) {
+        return int32ReverseNetworkByteOrder(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long int64(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return (long) LONG_BIG_ENDIAN.get(array, offset);
+    }
+
+    @Override
+    public long int64ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return (long) LONG_LITTLE_ENDIAN.get(array, offset);
+    }
+
+    @Override
+    public ByteArray int16(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        SHORT_BIG_ENDIAN.set(array, offset, (short) val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int16ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        SHORT_LITTLE_ENDIAN.set(array, offset, (short) val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int24(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 3);
+        SHORT_BIG_ENDIAN.set(array, offset, (short) (val >> 8));
+        array[offset + 2] = (byte) val;
+        return this;
+    }
+
+    @Override
+    public ByteArray int24ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 3);
+        SHORT_LITTLE_ENDIAN.set(array, offset, (short) val);
+        array[offset + 2] = (byte) (val >> 16);
+        return this;
+    }
+
+    @Override
+    public ByteArray int32(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        INT_BIG_ENDIAN.set(array, offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int32ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        INT_LITTLE_ENDIAN.set(array, offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int64(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        LONG_BIG_ENDIAN.set(array, offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int64ReverseNetworkByteOrder(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        LONG_LITTLE_ENDIAN.set(array, offset, val);
+        return this;
+    }
 }
@@ -62,8 +62,129 @@ public class SubByteArray extends AbstractByteArray implements ByteArray {
         source.byteBufferGet(src, off + from, len);
     }
 
+    @Override
+    public ByteArray copyWithin(int src, int dst, int len) {
+        checkBoundForCopyWithin(src, dst, len);
+        source.copyWithin(from + src, from + dst, len);
+        return this;
+    }
+
     @Override
     protected void doToNewJavaArray(byte[] dst, int dstOff, int srcOff, int srcLen) {
         ((AbstractByteArray) source).doToNewJavaArray(dst, dstOff, from + srcOff, srcLen);
     }
+
+    @Override
+    public int uint16(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return source.uint16(from + offset);
+    }
+
+    @Override
+    public int uint16ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 2);
+        return source.uint16ReverseNetworkByteOrder(from + offset);
+    }
+
+    @Override
+    public int uint24(int offset) {
+        checkBoundForOffsetAndLength(offset, 3);
+        return source.uint24(from + offset);
+    }
+
+    @Override
+    public int uint24ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 3);
+        return source.uint24ReverseNetworkByteOrder(from + offset);
+    }
+
+    @Override
+    public int int32(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return source.int32(from + offset);
+    }
+
+    @Override
+    public int int32ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 4);
+        return source.int32ReverseNetworkByteOrder(from + offset);
+    }
+
+    @Override
+    public long uint32(int offset) {
+        return int32(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long uint32ReverseNetworkByteOrder(int offset) {
+        return int32ReverseNetworkByteOrder(offset) & 0xffffffffL;
+    }
+
+    @Override
+    public long int64(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return source.int64(from + offset);
+    }
+
+    @Override
+    public long int64ReverseNetworkByteOrder(int offset) {
+        checkBoundForOffsetAndLength(offset, 8);
+        return source.int64ReverseNetworkByteOrder(from + offset);
+    }
+
+    @Override
+    public ByteArray int16(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        source.int16(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int16ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 2);
+        source.int16ReverseNetworkByteOrder(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int24(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 3);
+        source.int24(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int24ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 3);
+        source.int24ReverseNetworkByteOrder(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int32(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        source.int32(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int32ReverseNetworkByteOrder(int offset, int val) {
+        checkBoundForOffsetAndLength(offset, 4);
+        source.int32ReverseNetworkByteOrder(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int64(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        source.int64(from + offset, val);
+        return this;
+    }
+
+    @Override
+    public ByteArray int64ReverseNetworkByteOrder(int offset, long val) {
+        checkBoundForOffsetAndLength(offset, 8);
+        source.int64ReverseNetworkByteOrder(from + offset, val);
+        return this;
+    }
 }
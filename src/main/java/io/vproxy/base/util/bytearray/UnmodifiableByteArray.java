@@ -56,4 +56,54 @@ public class UnmodifiableByteArray extends AbstractByteArray implements ByteArra
             }
         }
     }
+
+    @Override
+    public int uint16(int offset) {
+        return array.uint16(offset);
+    }
+
+    @Override
+    public int uint16ReverseNetworkByteOrder(int offset) {
+        return array.uint16ReverseNetworkByteOrder(offset);
+    }
+
+    @Override
+    public int uint24(int offset) {
+        return array.uint24(offset);
+    }
+
+    @Override
+    public int uint24ReverseNetworkByteOrder(int offset) {
+        return array.uint24ReverseNetworkByteOrder(offset);
+    }
+
+    @Override
+    public int int32(int offset) {
+        return array.int32(offset);
+    }
+
+    @Override
+    public int int32ReverseNetworkByteOrder(int offset) {
+        return array.int32ReverseNetworkByteOrder(offset);
+    }
+
+    @Override
+    public long uint32(int offset) {
+        return array.uint32(offset);
+    }
+
+    @Override
+    public long uint32ReverseNetworkByteOrder(int offset) {
+        return array.uint32ReverseNetworkByteOrder(offset);
+    }
+
+    @Override
+    public long int64(int offset) {
+        return array.int64(offset);
+    }
+
+    @Override
+    public long int64ReverseNetworkByteOrder(int offset) {
+        return array.int64ReverseNetworkByteOrder(offset);
+    }
 }
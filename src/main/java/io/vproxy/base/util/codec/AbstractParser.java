@@ -1,22 +1,44 @@
 package io.vproxy.base.util.codec;
 
+import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.RingBuffer;
 import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.bytearray.ByteBufferByteArray;
 import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.base.util.ringbuffer.ByteBufferRingBuffer;
 
+import java.io.IOException;
 import java.util.Set;
 
 public abstract class AbstractParser<T> {
+    /**
+     * Returned by {@link #doSwitchBulk(ByteArray, int, int)} to stop parsing without consuming the bytes.
+     */
+    protected static final int BULK_PAUSE = -2;
+
     protected int state = 0; // initial state is set to 0
     protected T result;
     protected String errorMessage;
 
     private final byte[] bytes = Utils.allocateByteArrayInitZero(1);
     private final ByteArrayChannel chnl = ByteArrayChannel.fromEmpty(bytes);
-    private final Set<Integer> terminateStates;
+    private final boolean[] terminateStates; // indexed by state
+    private boolean stopped; // used when feeding a ring buffer
+    private boolean inputRetained;
 
     protected AbstractParser(Set<Integer> terminateStates) {
-        this.terminateStates = terminateStates;
+        int max = 0;
+        for (int s : terminateStates) {
+            max = Math.max(max, s);
+        }
+        this.terminateStates = new boolean[max + 1];
+        for (int s : terminateStates) {
+            this.terminateStates[s] = true;
+        }
+    }
+
+    private boolean isTerminateState(int state) {
+        return state >= 0 && state < terminateStates.length && terminateStates[state];
     }
 
     public int feed(RingBuffer buffer) {
@@ -24,6 +46,27 @@ public abstract class AbstractParser<T> {
             // nothing provided
             return -1;
         }
+        if (buffer instanceof ByteBufferRingBuffer) {
+            // parse the readable regions of the buffer directly, only the consumed bytes are removed from the buffer
+            stopped = false;
+            inputRetained = false;
+            try {
+                ((ByteBufferRingBuffer) buffer).operateOnByteBufferWriteOut(Integer.MAX_VALUE, buf -> {
+                    if (stopped) {
+                        return; // this is the second region, and parsing already stopped in the first one
+                    }
+                    var b = buf.realBuffer();
+                    int len = b.limit() - b.position();
+                    int n = feed(new ByteBufferByteArray(b), 0, len);
+                    b.position(b.position() + n);
+                    stopped = n < len || state == -1 || isTerminateState(state);
+                });
+            } catch (IOException e) {
+                // will not happen, it's memory operation
+                throw new RuntimeException(e);
+            }
+            return result();
+        }
         while (buffer.used() != 0) {
             chnl.reset();
             buffer.writeTo(chnl);
@@ -36,10 +79,10 @@ public abstract class AbstractParser<T> {
                 }
                 return -1;
             }
-            if (terminateStates.contains(state))
+            if (isTerminateState(state))
                 break;
         }
-        if (terminateStates.contains(state)) {
+        if (isTerminateState(state)) {
             return 0;
         }
         return -1; // indicating that the parser want more data
@@ -50,26 +93,80 @@ public abstract class AbstractParser<T> {
             // nothing provided
             return -1;
         }
-        while (chnl.used() != 0) {
-            byte b = chnl.read();
-            state = doSwitch(b);
-            if (state == -1) { // parse failed, return -1
+        var arr = chnl.readableArray();
+        inputRetained = true;
+        chnl.skip(feed(arr, 0, arr.length()));
+        return result();
+    }
+
+    private int result() {
+        if (state == -1) {
+            return -1;
+        }
+        if (isTerminateState(state)) {
+            return 0;
+        }
+        return -1; // indicating that the parser want more data
+    }
+
+    /**
+     * @return number of bytes consumed
+     */
+    private int feed(ByteArray arr, int off, int len) {
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = doSwitchBulk(arr, i, end - i);
+            if (n > 0) {
+                i += n;
+                if (isTerminateState(state))
+                    break;
+                continue;
+            }
+            if (n == BULK_PAUSE) {
+                break;
+            }
+            if (n == -1) {
+                state = -1;
+            } else {
+                state = doSwitch(arr.get(i++));
+            }
+            if (state == -1) { // parse failed
                 if (errorMessage == null) {
                     errorMessage = "unexpected error";
                 }
-                return -1;
+                break;
             }
-            if (terminateStates.contains(state))
+            if (isTerminateState(state))
                 break;
         }
-        if (terminateStates.contains(state)) {
-            return 0;
-        }
-        return -1; // indicating that the parser want more data
+        return i - off;
     }
 
     protected abstract int doSwitch(byte b);
 
+    /**
+     * Consume a run of bytes in one call.
+     * The byte which ends the run is usually left to {@link #doSwitch(byte)}.
+     *
+     * @param bytes the input
+     * @param off   offset of the first byte to consume
+     * @param len   number of bytes available, always &gt; 0
+     * @return number of bytes consumed, 0 to feed the next byte to {@link #doSwitch(byte)},
+     * {@link #BULK_PAUSE} to stop parsing until the next feed, or -1 if parsing failed
+     */
+    protected int doSwitchBulk(ByteArray bytes, int off, int len) {
+        return 0;
+    }
+
+    /**
+     * @return true if the bytes passed to {@link #doSwitchBulk(ByteArray, int, int)} stay in place after feeding,
+     * false if they will be overwritten, e.g. they are inside a {@link RingBuffer}
+     */
+    protected boolean isInputRetained() {
+        return inputRetained;
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
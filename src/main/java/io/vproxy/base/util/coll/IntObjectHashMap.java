@@ -0,0 +1,348 @@
+package io.vproxy.base.util.coll;
+
+import java.util.*;
+
+/**
+ * A hash map with primitive int keys.<br>
+ * Uses open addressing with linear probing, and deletes with backward shifting, so no tombstones are left.
+ * Keys are never boxed, and iterating with {@link #forEach(Visitor)} or {@link #cursor()} does not allocate.<br>
+ * Null values are not allowed, null returned from get/remove/put means absent.<br>
+ * The map must not be modified when iterating.
+ *
+ * @param <V> value type
+ */
+public class IntObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] keys;
+    private Object[] values; // null means the slot is empty
+    private int mask;
+    private int shift;
+    private int size;
+    private int threshold;
+
+    private final Cursor cursor = new Cursor();
+
+    public IntObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize = " + expectedSize + " < 0");
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        // keep load factor <= 0.5
+        long n = Math.max(DEFAULT_CAPACITY, (long) expectedSize * 2);
+        if (n >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) n - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        threshold = capacity == MAX_CAPACITY ? MAX_CAPACITY - 1 : capacity >>> 1;
+    }
+
+    private int slot(int key) {
+        // fibonacci hashing, use the high bits which are well mixed
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    private int indexOf(int key) {
+        int i = slot(key);
+        while (true) {
+            if (values[i] == null) {
+                return -1;
+            }
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) != -1;
+    }
+
+    public V get(int key) {
+        int i = slot(key);
+        while (true) {
+            Object v = values[i];
+            if (v == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                //noinspection unchecked
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public V getOrDefault(int key, V defaultValue) {
+        V v = get(key);
+        return v == null ? defaultValue : v;
+    }
+
+    public V put(int key, V value) {
+        return put(key, value, false);
+    }
+
+    public V putIfAbsent(int key, V value) {
+        return put(key, value, true);
+    }
+
+    private V put(int key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new IllegalArgumentException("null is not allowed");
+        }
+        int i = slot(key);
+        while (true) {
+            Object v = values[i];
+            if (v == null) {
+                break;
+            }
+            if (keys[i] == key) {
+                if (!onlyIfAbsent) {
+                    values[i] = value;
+                }
+                //noinspection unchecked
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash();
+        }
+        return null;
+    }
+
+    private void rehash() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("map is full: size=" + size);
+        }
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int j = 0; j < oldKeys.length; ++j) {
+            Object v = oldValues[j];
+            if (v == null) {
+                continue;
+            }
+            int i = slot(oldKeys[j]);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = v;
+        }
+    }
+
+    public V remove(int key) {
+        int i = indexOf(key);
+        if (i == -1) {
+            return null;
+        }
+        //noinspection unchecked
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    private void removeAt(int i) {
+        values[i] = null;
+        --size;
+        // shift back the following entries in the same probe sequence
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = slot(keys[j]);
+            // move the entry if its home slot is not in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                values[j] = null;
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public interface Visitor<V> {
+        void accept(int key, V value);
+    }
+
+    public void forEach(Visitor<? super V> visitor) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < values.length; ++i) {
+            Object v = values[i];
+            if (v != null) {
+                //noinspection unchecked
+                visitor.accept(keys[i], (V) v);
+            }
+        }
+    }
+
+    /**
+     * The cursor object is reused, every call rewinds it.
+     * <pre>
+     *     var c = map.cursor();
+     *     while (c.next()) {
+     *         c.key(); c.value();
+     *     }
+     * </pre>
+     *
+     * @return the rewound cursor of this map
+     */
+    public Cursor cursor() {
+        cursor.index = -1;
+        return cursor;
+    }
+
+    public class Cursor {
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            Object[] values = IntObjectHashMap.this.values;
+            while (++index < values.length) {
+                if (values[index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int key() {
+            return keys[index];
+        }
+
+        public V value() {
+            //noinspection unchecked
+            return (V) values[index];
+        }
+    }
+
+    private abstract class Itr<E> implements Iterator<E> {
+        private int index = -1;
+        private int next = advance(-1);
+
+        private int advance(int from) {
+            Object[] values = IntObjectHashMap.this.values;
+            int i = from + 1;
+            while (i < values.length && values[i] == null) {
+                ++i;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        int nextIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index = next;
+            next = advance(next);
+            return index;
+        }
+    }
+
+    /**
+     * @return a view of the keys, the keys are boxed when iterating
+     */
+    public Set<Integer> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Itr<>() {
+                    @Override
+                    public Integer next() {
+                        return keys[nextIndex()];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Integer && containsKey((Integer) o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a view of the values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Itr<>() {
+                    @Override
+                    public V next() {
+                        //noinspection unchecked
+                        return (V) values[nextIndex()];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean[] first = {true};
+        forEach((k, v) -> {
+            if (!first[0]) {
+                sb.append(", ");
+            }
+            first[0] = false;
+            sb.append(k).append("=").append(v);
+        });
+        return sb.append("}").toString();
+    }
+}
@@ -0,0 +1,260 @@
+package io.vproxy.base.util.net;
+
+/**
+ * Multibit trie for ipv4 longest prefix match, stride is 8 bits.<br>
+ * A prefix with length L is stored in the node of depth <code>(L-1)/8</code>,
+ * and is expanded into the entries it covers in that node,
+ * so a lookup reads at most 4 nodes and does no hashing.<br>
+ * Each node also keeps the original prefixes, which are used for exact get and for restoring the expanded
+ * entries when a prefix is removed.<br>
+ * A node costs about 3.3KB when it holds prefixes (<code>Object[512]</code>, <code>Object[256]</code> and <code>byte[256]</code>),
+ * plus about 1KB when it has children (<code>Node[256]</code>). The arrays are allocated only when needed
+ * and released when they become empty, so a node which only leads to longer prefixes costs about 1KB.
+ *
+ * @param <V> value type, null is not allowed
+ */
+public class IPv4PrefixTrie<V> {
+    private static final int STRIDE = 8;
+    private static final int WIDTH = 1 << STRIDE;
+
+    private final Node root = new Node();
+    private Object defaultValue; // the /0 prefix
+    private int size = 0;
+
+    private static final class Node {
+        // prefixes stored in this node, indexed by (1 << rem) | bits, rem is in [1, 8]
+        // the arrays are null when there are no prefixes in this node
+        Object[] prefixes;
+        // expanded entries: the longest prefix in this node covering each entry
+        Object[] best;
+        byte[] bestLen;
+        int prefixCount = 0;
+        Node[] children;
+        int count = 0; // prefixes + children, the node can be released when it's 0
+
+        void allocatePrefixes() {
+            prefixes = new Object[WIDTH << 1];
+            best = new Object[WIDTH];
+            bestLen = new byte[WIDTH];
+        }
+
+        void releasePrefixes() {
+            prefixes = null;
+            best = null;
+            bestLen = null;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static void checkMask(int maskNumber) {
+        if (maskNumber < 0 || maskNumber > 32) {
+            throw new IllegalArgumentException("mask for ipv4 should be between [0,32], but got " + maskNumber);
+        }
+    }
+
+    private static int byteAt(int addr, int depth) {
+        return (addr >>> (24 - depth * STRIDE)) & 0xff;
+    }
+
+    public V put(int addr, int maskNumber, V value) {
+        checkMask(maskNumber);
+        if (value == null) {
+            throw new IllegalArgumentException("null is not allowed");
+        }
+        if (maskNumber == 0) {
+            V old = cast(defaultValue);
+            defaultValue = value;
+            if (old == null) {
+                ++size;
+            }
+            return old;
+        }
+        int depth = (maskNumber - 1) / STRIDE;
+        int rem = maskNumber - depth * STRIDE;
+        Node node = root;
+        for (int i = 0; i < depth; ++i) {
+            int b = byteAt(addr, i);
+            if (node.children == null) {
+                node.children = new Node[WIDTH];
+            }
+            Node child = node.children[b];
+            if (child == null) {
+                child = new Node();
+                node.children[b] = child;
+                ++node.count;
+            }
+            node = child;
+        }
+        if (node.prefixes == null) {
+            node.allocatePrefixes();
+        }
+        int bits = byteAt(addr, depth) >>> (STRIDE - rem);
+        int idx = (1 << rem) | bits;
+        V old = cast(node.prefixes[idx]);
+        node.prefixes[idx] = value;
+        if (old == null) {
+            ++node.prefixCount;
+            ++node.count;
+            ++size;
+        }
+        int from = bits << (STRIDE - rem);
+        int to = from + (1 << (STRIDE - rem));
+        for (int e = from; e < to; ++e) {
+            if (node.bestLen[e] <= rem) {
+                node.best[e] = value;
+                node.bestLen[e] = (byte) rem;
+            }
+        }
+        return old;
+    }
+
+    public V get(int addr, int maskNumber) {
+        checkMask(maskNumber);
+        if (maskNumber == 0) {
+            return cast(defaultValue);
+        }
+        int depth = (maskNumber - 1) / STRIDE;
+        int rem = maskNumber - depth * STRIDE;
+        Node node = root;
+        for (int i = 0; i < depth; ++i) {
+            if (node.children == null) {
+                return null;
+            }
+            node = node.children[byteAt(addr, i)];
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.prefixes == null) {
+            return null;
+        }
+        int bits = byteAt(addr, depth) >>> (STRIDE - rem);
+        return cast(node.prefixes[(1 << rem) | bits]);
+    }
+
+    public V remove(int addr, int maskNumber) {
+        checkMask(maskNumber);
+        if (maskNumber == 0) {
+            V old = cast(defaultValue);
+            defaultValue = null;
+            if (old != null) {
+                --size;
+            }
+            return old;
+        }
+        int depth = (maskNumber - 1) / STRIDE;
+        int rem = maskNumber - depth * STRIDE;
+        Node[] path = new Node[depth + 1];
+        Node node = root;
+        for (int i = 0; i < depth; ++i) {
+            path[i] = node;
+            if (node.children == null) {
+                return null;
+            }
+            node = node.children[byteAt(addr, i)];
+            if (node == null) {
+                return null;
+            }
+        }
+        path[depth] = node;
+        if (node.prefixes == null) {
+            return null;
+        }
+        int bits = byteAt(addr, depth) >>> (STRIDE - rem);
+        int idx = (1 << rem) | bits;
+        V old = cast(node.prefixes[idx]);
+        if (old == null) {
+            return null;
+        }
+        node.prefixes[idx] = null;
+        --node.prefixCount;
+        --node.count;
+        --size;
+
+        if (node.prefixCount == 0) {
+            node.releasePrefixes();
+        } else {
+            restore(node, bits, rem);
+        }
+
+        // release empty nodes
+        for (int i = depth; i > 0 && path[i].count == 0; --i) {
+            Node parent = path[i - 1];
+            parent.children[byteAt(addr, i - 1)] = null;
+            --parent.count;
+            if (parent.count == parent.prefixCount) {
+                parent.children = null;
+            }
+        }
+        return old;
+    }
+
+    // restore the entries covered by the removed prefix
+    private static void restore(Node node, int bits, int rem) {
+        int from = bits << (STRIDE - rem);
+        int to = from + (1 << (STRIDE - rem));
+        for (int e = from; e < to; ++e) {
+            if (node.bestLen[e] != rem) {
+                continue; // covered by a longer prefix
+            }
+            node.best[e] = null;
+            node.bestLen[e] = 0;
+            for (int r = rem - 1; r > 0; --r) {
+                Object v = node.prefixes[(1 << r) | (e >>> (STRIDE - r))];
+                if (v != null) {
+                    node.best[e] = v;
+                    node.bestLen[e] = (byte) r;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return value of the longest prefix containing the address, or null if not found
+     */
+    public V lookup(int addr) {
+        Object res = defaultValue;
+        Node node = root;
+        for (int shift = 24; ; shift -= STRIDE) {
+            int e = (addr >>> shift) & 0xff;
+            Object[] best = node.best;
+            if (best != null) {
+                Object v = best[e];
+                if (v != null) {
+                    res = v;
+                }
+            }
+            Node[] children = node.children;
+            if (children == null) {
+                break;
+            }
+            node = children[e];
+            if (node == null) {
+                break;
+            }
+        }
+        return cast(res);
+    }
+
+    public void clear() {
+        root.children = null;
+        root.releasePrefixes();
+        root.prefixCount = 0;
+        root.count = 0;
+        defaultValue = null;
+        size = 0;
+    }
+
+    private V cast(Object o) {
+        //noinspection unchecked
+        return (V) o;
+    }
+}
@@ -0,0 +1,223 @@
+package io.vproxy.base.util.net;
+
+/**
+ * Path-compressed binary trie for ipv6 longest prefix match.<br>
+ * The 128 bits address is represented by two longs.
+ * A node is created only for a stored prefix or for a branch point,
+ * so a lookup visits at most as many nodes as there are prefixes and branches on the path.
+ *
+ * @param <V> value type, null is not allowed
+ */
+public class IPv6PrefixTrie<V> {
+    private Node<V> root;
+    private int size = 0;
+
+    private static final class Node<V> {
+        final long hi;
+        final long lo;
+        final int len;
+        V value; // null for branch nodes
+        Node<V> left;
+        Node<V> right;
+
+        Node(long hi, long lo, int len, V value) {
+            this.hi = hi;
+            this.lo = lo;
+            this.len = len;
+            this.value = value;
+        }
+
+        Node<V> child(int bit) {
+            return bit == 0 ? left : right;
+        }
+
+        void child(int bit, Node<V> n) {
+            if (bit == 0) {
+                left = n;
+            } else {
+                right = n;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static void checkMask(int maskNumber) {
+        if (maskNumber < 0 || maskNumber > 128) {
+            throw new IllegalArgumentException("mask for ipv6 should be between [0,128], but got " + maskNumber);
+        }
+    }
+
+    private static long maskHi(int len) {
+        if (len >= 64) return -1L;
+        if (len == 0) return 0;
+        return -1L << (64 - len);
+    }
+
+    private static long maskLo(int len) {
+        if (len <= 64) return 0;
+        if (len == 128) return -1L;
+        return -1L << (128 - len);
+    }
+
+    private static int bit(long hi, long lo, int index) {
+        if (index < 64) {
+            return (int) (hi >>> (63 - index)) & 1;
+        }
+        return (int) (lo >>> (127 - index)) & 1;
+    }
+
+    private static int commonPrefixLength(long hi1, long lo1, long hi2, long lo2) {
+        long x = hi1 ^ hi2;
+        if (x != 0) {
+            return Long.numberOfLeadingZeros(x);
+        }
+        x = lo1 ^ lo2;
+        if (x != 0) {
+            return 64 + Long.numberOfLeadingZeros(x);
+        }
+        return 128;
+    }
+
+    private static boolean matches(Node<?> n, long hi, long lo) {
+        return ((hi ^ n.hi) & maskHi(n.len)) == 0 && ((lo ^ n.lo) & maskLo(n.len)) == 0;
+    }
+
+    public V put(long hi, long lo, int maskNumber, V value) {
+        checkMask(maskNumber);
+        if (value == null) {
+            throw new IllegalArgumentException("null is not allowed");
+        }
+        hi &= maskHi(maskNumber);
+        lo &= maskLo(maskNumber);
+
+        Node<V> parent = null;
+        int dir = 0;
+        Node<V> n = root;
+        while (true) {
+            if (n == null) {
+                link(parent, dir, new Node<>(hi, lo, maskNumber, value));
+                ++size;
+                return null;
+            }
+            int cpl = Math.min(commonPrefixLength(hi, lo, n.hi, n.lo), Math.min(maskNumber, n.len));
+            if (cpl == n.len) {
+                if (n.len == maskNumber) {
+                    V old = n.value;
+                    n.value = value;
+                    if (old == null) {
+                        ++size;
+                    }
+                    return old;
+                }
+                parent = n;
+                dir = bit(hi, lo, n.len);
+                n = n.child(dir);
+                continue;
+            }
+            // split n
+            Node<V> split;
+            if (cpl == maskNumber) {
+                split = new Node<>(hi, lo, maskNumber, value);
+            } else {
+                split = new Node<>(hi & maskHi(cpl), lo & maskLo(cpl), cpl, null);
+                split.child(bit(hi, lo, cpl), new Node<>(hi, lo, maskNumber, value));
+            }
+            split.child(bit(n.hi, n.lo, cpl), n);
+            link(parent, dir, split);
+            ++size;
+            return null;
+        }
+    }
+
+    private void link(Node<V> parent, int dir, Node<V> n) {
+        if (parent == null) {
+            root = n;
+        } else {
+            parent.child(dir, n);
+        }
+    }
+
+    public V get(long hi, long lo, int maskNumber) {
+        checkMask(maskNumber);
+        hi &= maskHi(maskNumber);
+        lo &= maskLo(maskNumber);
+        Node<V> n = root;
+        while (n != null && n.len <= maskNumber && matches(n, hi, lo)) {
+            if (n.len == maskNumber) {
+                return n.value;
+            }
+            n = n.child(bit(hi, lo, n.len));
+        }
+        return null;
+    }
+
+    public V remove(long hi, long lo, int maskNumber) {
+        checkMask(maskNumber);
+        hi &= maskHi(maskNumber);
+        lo &= maskLo(maskNumber);
+
+        Node<V> grand = null;
+        int grandDir = 0;
+        Node<V> parent = null;
+        int dir = 0;
+        Node<V> n = root;
+        while (n != null && n.len <= maskNumber && matches(n, hi, lo)) {
+            if (n.len == maskNumber) {
+                break;
+            }
+            grand = parent;
+            grandDir = dir;
+            parent = n;
+            dir = bit(hi, lo, n.len);
+            n = n.child(dir);
+        }
+        if (n == null || n.len != maskNumber || n.value == null || !matches(n, hi, lo)) {
+            return null;
+        }
+        V old = n.value;
+        n.value = null;
+        --size;
+
+        if (n.left != null && n.right != null) {
+            return old; // still a branch point
+        }
+        Node<V> only = n.left != null ? n.left : n.right;
+        link(parent, dir, only);
+        if (only == null && parent != null && parent.value == null) {
+            // the parent is a branch node with only one child now
+            Node<V> other = parent.child(1 - dir);
+            link(grand, grandDir, other);
+        }
+        return old;
+    }
+
+    /**
+     * @return value of the longest prefix containing the address, or null if not found
+     */
+    public V lookup(long hi, long lo) {
+        V res = null;
+        Node<V> n = root;
+        while (n != null && matches(n, hi, lo)) {
+            if (n.value != null) {
+                res = n.value;
+            }
+            if (n.len == 128) {
+                break;
+            }
+            n = n.child(bit(hi, lo, n.len));
+        }
+        return res;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+}
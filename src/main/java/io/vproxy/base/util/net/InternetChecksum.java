@@ -0,0 +1,160 @@
+package io.vproxy.base.util.net;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.bytearray.CompositeByteArray;
+import io.vproxy.base.util.bytearray.SimpleByteArray;
+import io.vproxy.base.util.bytearray.SubByteArray;
+import io.vproxy.vfd.IP;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * The internet checksum (RFC 1071).<br>
+ * The data is read in 64-bit big endian words, the two 32-bit halves of each word are added into a long accumulator,
+ * and the carries are folded only once at the end.
+ * The accumulator cannot overflow for any ByteArray since the length is an int.<br>
+ * byte[] backed arrays (and their sub arrays) are read with VarHandles directly,
+ * composite arrays are summed segment by segment,
+ * other arrays (e.g. MemorySegmentByteArray) use their own int64 accessors.<br>
+ * <pre>
+ * long sum = InternetChecksum.sum(0, pseudoHeader, 0, pseudoHeader.length());
+ * sum = InternetChecksum.sum(sum, packet, 0, packet.length());
+ * int checksum = InternetChecksum.doFinal(sum);
+ * </pre>
+ */
+public class InternetChecksum {
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private InternetChecksum() {
+    }
+
+    public static int calculate(ByteArray array) {
+        return doFinal(sum(0, array, 0, array.length()));
+    }
+
+    public static int calculate(ByteArray array, int off, int len) {
+        return doFinal(sum(0, array, off, len));
+    }
+
+    /**
+     * @param acc the accumulator returned by previous calls, or 0
+     * @return the new accumulator, not folded
+     */
+    public static long sum(long acc, ByteArray array, int off, int len) {
+        if (off < 0 || len < 0 || array.length() - off < len)
+            throw new ArrayIndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + array.length());
+        return acc + sum0(array, off, len);
+    }
+
+    /**
+     * Sum of the pseudo header used by tcp/udp/icmpv6 checksum, ipv4 and ipv6 share the same result.
+     */
+    public static long pseudoHeaderSum(IP src, IP dst, int upperType, int upperLength) {
+        long sum = sum0(src.bytes, 0, src.bytes.length());
+        sum += sum0(dst.bytes, 0, dst.bytes.length());
+        sum += upperType & 0xff;
+        sum += (upperLength >>> 16) + (upperLength & 0xffff);
+        return sum;
+    }
+
+    /**
+     * @return the 16-bit one's complement sum
+     */
+    public static int fold(long sum) {
+        sum = (sum & 0xffffffffL) + (sum >>> 32);
+        sum = (sum & 0xffffffffL) + (sum >>> 32);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        return (int) sum;
+    }
+
+    /**
+     * @return the checksum to be filled into the packet
+     */
+    public static int doFinal(long sum) {
+        return 0xffff - fold(sum);
+    }
+
+    private static long sum0(ByteArray array, int off, int len) {
+        if (array instanceof SimpleByteArray) {
+            return sumJavaArray(array.toJavaArray(), off, len);
+        }
+        if (array instanceof SubByteArray) {
+            var sub = (SubByteArray) array;
+            return sum0(sub.source, sub.from + off, len);
+        }
+        if (array instanceof CompositeByteArray) {
+            return sumComposite((CompositeByteArray) array, off, len);
+        }
+        return sumGeneric(array, off, len);
+    }
+
+    private static long sumJavaArray(byte[] array, int off, int len) {
+        long s0 = 0;
+        long s1 = 0;
+        int i = off;
+        int end = off + len;
+        // two independent accumulators, 16 bytes per iteration
+        for (; i + 16 <= end; i += 16) {
+            long a = (long) LONG_BIG_ENDIAN.get(array, i);
+            long b = (long) LONG_BIG_ENDIAN.get(array, i + 8);
+            s0 += (a >>> 32) + (a & 0xffffffffL);
+            s1 += (b >>> 32) + (b & 0xffffffffL);
+        }
+        if (i + 8 <= end) {
+            long a = (long) LONG_BIG_ENDIAN.get(array, i);
+            s0 += (a >>> 32) + (a & 0xffffffffL);
+            i += 8;
+        }
+        for (; i + 2 <= end; i += 2) {
+            s1 += ((array[i] & 0xff) << 8) | (array[i + 1] & 0xff);
+        }
+        if (i < end) {
+            s1 += (array[i] & 0xff) << 8;
+        }
+        return s0 + s1;
+    }
+
+    private static long sumGeneric(ByteArray array, int off, int len) {
+        long s = 0;
+        int i = off;
+        int end = off + len;
+        for (; i + 8 <= end; i += 8) {
+            long a = array.int64(i);
+            s += (a >>> 32) + (a & 0xffffffffL);
+        }
+        for (; i + 2 <= end; i += 2) {
+            s += array.uint16(i);
+        }
+        if (i < end) {
+            s += array.uint8(i) << 8;
+        }
+        return s;
+    }
+
+    private static long sumComposite(CompositeByteArray array, int off, int len) {
+        long s = 0;
+        int pos = 0; // position relative to off, decides whether a segment starts at an odd byte
+        int segStart = 0;
+        for (int i = 0, n = array.segmentCount(); i < n && pos < len; ++i) {
+            var seg = array.segment(i);
+            int segLen = seg.length();
+            int segEnd = segStart + segLen;
+            if (segEnd > off) {
+                int from = Math.max(off + pos, segStart) - segStart;
+                int cnt = Math.min(segLen - from, len - pos);
+                int x = fold(sum0(seg, from, cnt));
+                if ((pos & 1) != 0) {
+                    // the one's complement sum is byte order independent, swap when the segment is not word aligned
+                    x = ((x << 8) | (x >>> 8)) & 0xffff;
+                }
+                s += x;
+                pos += cnt;
+            }
+            segStart = segEnd;
+        }
+        return s;
+    }
+}
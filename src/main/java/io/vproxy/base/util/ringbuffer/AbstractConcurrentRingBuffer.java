@@ -0,0 +1,344 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.util.ByteBufferEx;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.RingBufferETHandler;
+import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.direct.DirectMemoryUtils;
+import io.vproxy.vfd.WritableByteStream;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Base of the ring buffers which can be used across threads.<br>
+ * Bytes are addressed by two monotonic sequences: <code>head</code> is owned by the consumer,
+ * <code>tail</code> is published by the producer(s). The index in the backing buffer is <code>seq % cap</code>,
+ * so the cursors never need to be reset or defragmented.<br>
+ * The consumer side (writeTo, operateOnByteBufferWriteOut, clear) must be called from only one thread.<br>
+ * <br>
+ * The handlers are called on the thread which made the transition:
+ * readableET on a producer thread when the buffer turns from empty to non-empty,
+ * writableET on the consumer thread when the buffer turns from full to not full,
+ * or when space is freed while a producer is waiting for it (see {@link #markProducerWaiting()}).
+ * So the handlers must be thread safe, usually they only wake up the event loop which owns the other side.
+ * The notified side should keep operating until the buffer is drained/filled, otherwise an event may be missed.
+ */
+public abstract class AbstractConcurrentRingBuffer implements RingBuffer {
+    protected final boolean isDirect;
+    protected final ByteBufferEx buffer;
+    protected final int cap;
+
+    protected final Sequence head = new Sequence(); // next sequence to read
+    protected final Sequence tail = new Sequence(); // next sequence to write
+
+    // consumer side views
+    private final ByteBufferEx consumerBuffer;
+    private final ByteBuffer[] consumerIOBuffers;
+
+    private final Set<RingBufferETHandler> handler = new CopyOnWriteArraySet<>();
+    private volatile boolean cleaned = false;
+    private volatile boolean producerWaiting = false;
+
+    protected AbstractConcurrentRingBuffer(boolean isDirect, int cap) {
+        if (cap <= 0) {
+            throw new IllegalArgumentException("cap = " + cap + " <= 0");
+        }
+        this.isDirect = isDirect;
+        if (isDirect) {
+            this.buffer = DirectMemoryUtils.allocateDirectBuffer(cap);
+        } else {
+            this.buffer = new ByteBufferEx(Utils.allocateByteBuffer(cap));
+        }
+        this.cap = cap;
+
+        this.consumerBuffer = view();
+        this.consumerIOBuffers = new ByteBuffer[]{view().realBuffer(), view().realBuffer()};
+    }
+
+    protected ByteBufferEx view() {
+        var real = buffer.realBuffer();
+        return new ByteBufferEx(real.duplicate().limit(real.capacity()).position(0));
+    }
+
+    protected int index(long seq) {
+        return (int) (seq % cap);
+    }
+
+    protected void ensureBufferAvailable() {
+        if (cleaned) {
+            throw new IllegalStateException("this buffer is already cleaned");
+        }
+    }
+
+    @Override
+    public int writeTo(WritableByteStream channel, int maxBytesToWrite) throws IOException {
+        if (maxBytesToWrite < 0) {
+            throw new IllegalArgumentException("input parameter maxBytesToWrite = " + maxBytesToWrite + " < 0");
+        }
+        ensureBufferAvailable();
+
+        long h = head.getPlain();
+        long t = tail.get();
+        int n = (int) Math.min(t - h, maxBytesToWrite);
+        if (n == 0) {
+            return 0;
+        }
+        int from = index(h);
+        int write;
+        if (from + n <= cap) {
+            consumerBuffer.limit(from + n).position(from);
+            channel.write(consumerBuffer.realBuffer());
+            write = consumerBuffer.position() - from;
+        } else {
+            // data is split into [from, cap) and [0, rest)
+            var bufs = consumerIOBuffers;
+            bufs[0].limit(cap).position(from);
+            bufs[1].limit(n - (cap - from)).position(0);
+            channel.write(bufs);
+            write = (bufs[0].position() - from) + bufs[1].position();
+        }
+        consumed(h, write);
+        return write;
+    }
+
+    /**
+     * Only call on the consumer side.
+     */
+    public int operateOnByteBufferWriteOut(int maxBytesToWrite, ByteBufferRingBuffer.WriteOutOp op) throws IOException {
+        ensureBufferAvailable();
+
+        long h = head.getPlain();
+        long t = tail.get();
+        int n = (int) Math.min(t - h, maxBytesToWrite);
+
+        // call the op even if there's no data, same as SimpleRingBuffer
+        int from = index(h);
+        int lim = Math.min(n, cap - from);
+        int write = writeOutOnce(from, lim, op);
+        if (write == lim && lim < n) {
+            // data wraps around, continue from 0
+            write += writeOutOnce(0, n - lim, op);
+        }
+        consumed(h, write);
+        return write;
+    }
+
+    private int writeOutOnce(int from, int len, ByteBufferRingBuffer.WriteOutOp op) throws IOException {
+        int newLimit = from + len;
+        consumerBuffer.limit(newLimit).position(from);
+        op.accept(consumerBuffer);
+        if (newLimit != consumerBuffer.limit()) {
+            assert Logger.lowLevelDebug("newLimit=" + newLimit + ", buffer.limit()=" + consumerBuffer.limit());
+            throw new IllegalStateException("should only write out");
+        }
+        return consumerBuffer.position() - from;
+    }
+
+    private void consumed(long h, int n) {
+        if (n == 0) {
+            return;
+        }
+        head.set(h + n);
+        // read the flag and tail after publishing head:
+        // if the producer failed to store because the buffer was full or the space was not enough,
+        // either it sees the new head, or we see the full buffer or the waiting flag here
+        if (producerWaiting) {
+            producerWaiting = false;
+            triggerWritable();
+        } else if (claimed() - h == cap) {
+            triggerWritable();
+        }
+    }
+
+    /**
+     * Called by a producer which failed to store because the free space is not enough for its bytes,
+     * the next consume will trigger writableET.
+     *
+     * @return true if the producer should check the free space again before giving up,
+     * false if the event is already going to be triggered
+     */
+    protected boolean markProducerWaiting() {
+        if (producerWaiting) {
+            return false;
+        }
+        producerWaiting = true;
+        return true;
+    }
+
+    /**
+     * Called by a producer which gives back the space it reserved but did not use,
+     * the producers waiting for space (see {@link #markProducerWaiting()}) are notified.
+     */
+    protected void unreserved() {
+        if (producerWaiting) {
+            producerWaiting = false;
+            triggerWritable();
+        }
+    }
+
+    /**
+     * @return the sequence which producers have reserved to, it's the tail when there's only one producer
+     */
+    protected long claimed() {
+        return tail.get();
+    }
+
+    protected void produced(long t, int n) {
+        tail.set(t + n);
+        // same as consumed(...), see the comments there
+        if (head.get() == t) {
+            triggerReadable();
+        }
+    }
+
+    protected void triggerReadable() {
+        assert Logger.lowLevelNetDebug("trigger readable for " + handler.size() + " times");
+        for (RingBufferETHandler aHandler : handler) {
+            aHandler.readableET();
+        }
+    }
+
+    protected void triggerWritable() {
+        assert Logger.lowLevelNetDebug("trigger writable for " + handler.size() + " times");
+        for (RingBufferETHandler aHandler : handler) {
+            aHandler.writableET();
+        }
+    }
+
+    @Override
+    public int free() {
+        return cap - used();
+    }
+
+    @Override
+    public int used() {
+        long h = head.get();
+        long t = tail.get();
+        return (int) (t - h);
+    }
+
+    @Override
+    public int capacity() {
+        return cap;
+    }
+
+    /**
+     * Only call on the consumer side.
+     */
+    @Override
+    public byte[] getBytes() {
+        ensureBufferAvailable();
+
+        long h = head.getPlain();
+        int len = (int) (tail.get() - h);
+        byte[] arr = Utils.allocateByteArray(len);
+        int from = index(h);
+        int lim = Math.min(len, cap - from);
+        consumerBuffer.limit(from + lim).position(from);
+        consumerBuffer.get(arr, 0, lim);
+        if (lim < len) {
+            consumerBuffer.limit(len - lim).position(0);
+            consumerBuffer.get(arr, lim, len - lim);
+        }
+        return arr;
+    }
+
+    @Override
+    public String toString() {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void addHandler(RingBufferETHandler h) {
+        handler.add(h);
+    }
+
+    @Override
+    public void removeHandler(RingBufferETHandler h) {
+        handler.remove(h);
+    }
+
+    @Override
+    public Set<RingBufferETHandler> getHandlers() {
+        return new HashSet<>(handler);
+    }
+
+    /**
+     * release the direct memory<br>
+     * PLEASE BE VERY CAREFUL, both sides must have stopped using this buffer
+     */
+    @Override
+    public void clean() {
+        if (cleaned)
+            return;
+        cleaned = true;
+        if (isDirect) {
+            buffer.clean();
+        }
+    }
+
+    /**
+     * Discard all bytes stored in the buffer. Only call on the consumer side.
+     */
+    @Override
+    public void clear() {
+        ensureBufferAvailable();
+
+        long h = head.getPlain();
+        long t = tail.get();
+        consumed(h, (int) (t - h));
+    }
+
+    protected static abstract class SequenceLhsPadding {
+        @SuppressWarnings("unused")
+        private long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    protected static abstract class SequenceValue extends SequenceLhsPadding {
+        protected volatile long value;
+    }
+
+    /**
+     * A sequence counter which occupies its own cache line,
+     * so the producer and consumer do not invalidate each other's cursors.
+     */
+    protected static final class Sequence extends SequenceValue {
+        @SuppressWarnings("unused")
+        private long p11, p12, p13, p14, p15, p16, p17;
+
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        public long get() {
+            return value;
+        }
+
+        // only use when the current thread is the only writer
+        public long getPlain() {
+            return (long) VALUE.get(this);
+        }
+
+        public void set(long v) {
+            value = v;
+        }
+
+        public boolean compareAndSet(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.vfd.ReadableByteStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Multi-producer single-consumer ring buffer.<br>
+ * Producers reserve a range of sequences with CAS, copy their bytes, then publish the range in order.
+ * Bytes stored by one call are contiguous and are stored as a whole:
+ * when the free space is not enough, nothing is stored and 0 is returned,
+ * so messages from different producers are never interleaved.
+ * Only a source larger than the capacity is stored partially.<br>
+ * Sources with known length (ByteArrayChannel, ByteArray and ByteBuffer) reserve exactly the bytes they store.
+ * Other streams reserve the whole window with one CAS and read directly into the free space,
+ * then give back the space they did not use.
+ * Other producers see no free space until then, they return 0 instead of waiting,
+ * and writableET is triggered when the space is given back.<br>
+ * When 0 is returned because the space is not enough, writableET will be triggered when the space is freed,
+ * so the producer can retry then.<br>
+ * Note: a producer waits for the producers which reserved before it to publish, so storing should not be interrupted.
+ */
+public class MPSCRingBuffer extends AbstractConcurrentRingBuffer {
+    private final Sequence claim = new Sequence(); // next sequence to reserve
+
+    public static MPSCRingBuffer allocateDirect(int cap) {
+        return new MPSCRingBuffer(true, cap);
+    }
+
+    public static MPSCRingBuffer allocate(int cap) {
+        return new MPSCRingBuffer(false, cap);
+    }
+
+    protected MPSCRingBuffer(boolean isDirect, int cap) {
+        super(isDirect, cap);
+    }
+
+    @Override
+    protected long claimed() {
+        return claim.get();
+    }
+
+    /**
+     * @return may return -1 for EOF
+     */
+    @Override
+    public int storeBytesFrom(ReadableByteStream channel) throws IOException {
+        if (channel instanceof ByteArrayChannel) {
+            return storeBytesFrom((ByteArrayChannel) channel);
+        }
+        ensureBufferAvailable();
+
+        long c;
+        int free;
+        while (true) {
+            c = claim.get();
+            free = (int) (cap - (c - head.get()));
+            if (free <= 0) {
+                // the buffer is full, or another stream is being read
+                if (markProducerWaiting()) {
+                    continue;
+                }
+                return 0;
+            }
+            // reserve until the end of the window: the consumer cannot pass c before this range is published,
+            // so other producers see no free space and cannot reserve after this range while reading
+            if (claim.compareAndSet(c, c + cap)) {
+                break;
+            }
+        }
+
+        // [c, c + free) is free and belongs to this thread now
+        int read = 0;
+        long n;
+        try {
+            int from = index(c);
+            if (from + free <= cap) {
+                ByteBuffer buf = buffer.realBuffer().duplicate();
+                buf.limit(from + free).position(from);
+                n = channel.read(buf);
+                read = buf.position() - from;
+            } else {
+                // free space is split into [from, cap) and [0, rest)
+                ByteBuffer buf0 = buffer.realBuffer().duplicate();
+                ByteBuffer buf1 = buffer.realBuffer().duplicate();
+                buf0.limit(cap).position(from);
+                buf1.limit(free - (cap - from)).position(0);
+                n = channel.read(new ByteBuffer[]{buf0, buf1});
+                read = (buf0.position() - from) + buf1.position();
+            }
+        } finally {
+            // give back the space which is not used, no one else could have reserved after it
+            claim.set(c + read);
+            if (read > 0) {
+                publish(c, read);
+            }
+            unreserved();
+        }
+
+        if (read == 0 && n < 0) {
+            return -1; // EOF
+        }
+        return read;
+    }
+
+    @Override
+    public int storeBytesFrom(ByteArrayChannel channel) {
+        ensureBufferAvailable();
+
+        int len = channel.used();
+        if (len == 0) {
+            return 0;
+        }
+        long c;
+        int n;
+        while (true) {
+            c = claim.get();
+            int free = (int) (cap - (c - head.get()));
+            if (len <= free) {
+                n = len;
+            } else if (len > cap && free > 0) {
+                n = free; // will never fit, store as much as possible
+            } else {
+                // not enough space, retry later
+                // ask the consumer (or the producer reading a stream) to notify when space is freed,
+                // and check again in case the space is freed before the flag is seen
+                if (markProducerWaiting()) {
+                    continue;
+                }
+                return 0;
+            }
+            if (claim.compareAndSet(c, c + n)) {
+                break;
+            }
+        }
+
+        // the range [c, c + n) belongs to this thread now
+        int from = index(c);
+        int lim = Math.min(n, cap - from);
+        ByteBuffer buf = buffer.realBuffer().duplicate();
+        buf.limit(from + lim).position(from);
+        channel.read(buf);
+        if (lim < n) {
+            buf.limit(n - lim).position(0);
+            channel.read(buf);
+        }
+
+        publish(c, n);
+        return n;
+    }
+
+    private void publish(long c, int n) {
+        // wait for the previous producers to publish
+        while (tail.get() != c) {
+            Thread.onSpinWait();
+        }
+        produced(c, n);
+    }
+}
@@ -0,0 +1,120 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.util.ByteBufferEx;
+import io.vproxy.base.util.Logger;
+import io.vproxy.vfd.ReadableByteStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Single-producer single-consumer ring buffer.<br>
+ * One thread stores bytes into the buffer, and another thread writes bytes out, without any lock.
+ * The producer side (storeBytesFrom, operateOnByteBufferStoreIn) must be called from only one thread.
+ */
+public class SPSCRingBuffer extends AbstractConcurrentRingBuffer implements ByteBufferRingBuffer {
+    // producer side views
+    private final ByteBufferEx producerBuffer;
+    private final ByteBuffer[] producerIOBuffers;
+
+    public static SPSCRingBuffer allocateDirect(int cap) {
+        return new SPSCRingBuffer(true, cap);
+    }
+
+    public static SPSCRingBuffer allocate(int cap) {
+        return new SPSCRingBuffer(false, cap);
+    }
+
+    protected SPSCRingBuffer(boolean isDirect, int cap) {
+        super(isDirect, cap);
+        this.producerBuffer = view();
+        this.producerIOBuffers = new ByteBuffer[]{view().realBuffer(), view().realBuffer()};
+    }
+
+    /**
+     * @return may return -1 for EOF
+     */
+    @Override
+    public int storeBytesFrom(ReadableByteStream channel) throws IOException {
+        ensureBufferAvailable();
+
+        long t = tail.getPlain();
+        int free = (int) (cap - (t - head.get()));
+        if (free == 0) {
+            return 0;
+        }
+        int from = index(t);
+        long n;
+        int read;
+        if (from + free <= cap) {
+            producerBuffer.limit(from + free).position(from);
+            n = channel.read(producerBuffer.realBuffer());
+            read = producerBuffer.position() - from;
+        } else {
+            // free space is split into [from, cap) and [0, rest)
+            var bufs = producerIOBuffers;
+            bufs[0].limit(cap).position(from);
+            bufs[1].limit(free - (cap - from)).position(0);
+            n = channel.read(bufs);
+            read = (bufs[0].position() - from) + bufs[1].position();
+        }
+        if (read > 0) {
+            produced(t, read);
+        } else if (n < 0) {
+            return -1; // EOF
+        }
+        return read;
+    }
+
+    @Override
+    public int operateOnByteBufferStoreIn(StoreInOp op) throws IOException {
+        ensureBufferAvailable();
+
+        long t = tail.getPlain();
+        int free = (int) (cap - (t - head.get()));
+        if (free == 0) {
+            return 0; // buffer is full
+        }
+        int from = index(t);
+        int lim = Math.min(free, cap - from);
+
+        int newLimit = from + lim;
+        producerBuffer.limit(newLimit).position(from);
+        boolean succeeded = op.test(producerBuffer);
+        checkStoreInLimit(newLimit);
+        int read = producerBuffer.position() - from;
+
+        if (succeeded && read == lim && lim < free) {
+            // free space wraps around, continue from 0
+            newLimit = free - lim;
+            producerBuffer.limit(newLimit).position(0);
+            op.test(producerBuffer); // ignore error here, because the first read is ok
+            checkStoreInLimit(newLimit);
+            read += producerBuffer.position();
+        }
+        if (read > 0) {
+            produced(t, read);
+        }
+        if (!succeeded)
+            return -1; // some error occurred, maybe EOF
+        return read;
+    }
+
+    private void checkStoreInLimit(int newLimit) {
+        if (newLimit != producerBuffer.limit()) {
+            // limit of the buffer changed, which is illegal
+            assert Logger.lowLevelDebug("newLimit=" + newLimit + ", buffer.limit()=" + producerBuffer.limit());
+            throw new IllegalStateException("should only read in");
+        }
+    }
+
+    @Override
+    public boolean canDefragment() {
+        return false;
+    }
+
+    @Override
+    public void defragment() {
+        // data is addressed by sequences, no need to defragment
+    }
+}
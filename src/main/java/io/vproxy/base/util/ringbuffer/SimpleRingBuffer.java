@@ -37,6 +37,10 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
     private final int cap;
     protected boolean ePosIsAfterSPos = true;
 
+    // duplicates of the buffer, used for scattering/gathering io when data wraps around
+    private ByteBufferEx ioBuffersSource;
+    private ByteBuffer[] ioBuffers;
+
     private boolean notFirstOperator = false;
     private boolean operating = false;
     private boolean operatingBuffer = false;
@@ -95,6 +99,10 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
      */
     @Override
     public int storeBytesFrom(ReadableByteStream channel) throws IOException {
+        if (ePosIsAfterSPos && sPos != 0 && ePos != cap) {
+            // free space is split into [ePos, cap) and [0, sPos)
+            return scatteringStoreBytesFrom(channel);
+        }
         return operateOnByteBufferStoreIn(b -> channel.read(b.realBuffer()) != -1);
     }
 
@@ -107,9 +115,125 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
 
     @Override
     public int writeTo(WritableByteStream channel, int maxBytesToWrite) throws IOException {
+        if (!ePosIsAfterSPos && ePos != 0 && maxBytesToWrite > cap - sPos) {
+            // data is split into [sPos, cap) and [0, ePos)
+            return gatheringWriteTo(channel, maxBytesToWrite);
+        }
         return operateOnByteBufferWriteOut(maxBytesToWrite, buffer -> channel.write(buffer.realBuffer()));
     }
 
+    private ByteBuffer[] ioBuffers() {
+        if (ioBuffersSource != buffer) {
+            var real = buffer.realBuffer();
+            ioBuffers = new ByteBuffer[]{real.duplicate(), real.duplicate()};
+            ioBuffersSource = buffer;
+        }
+        return ioBuffers;
+    }
+
+    private int gatheringWriteTo(WritableByteStream channel, int maxBytesToWrite) throws IOException {
+        if (operatingBuffer) {
+            throw new IllegalStateException("this buffer is operating");
+        }
+        ensureBufferAvailable();
+
+        boolean firstOperator = isFirstOperate();
+        operatingBuffer = true;
+
+        boolean triggerWritable = false;
+
+        assert Logger.lowLevelNetDebug("before gathering write out, sPos=" + sPos);
+
+        try { // only use try-finally here, we do not catch
+            boolean triggerWritablePre = free() == 0;
+
+            var bufs = ioBuffers();
+            bufs[0].limit(cap).position(sPos);
+            bufs[1].limit(Math.min(ePos, maxBytesToWrite - (cap - sPos))).position(0);
+
+            channel.write(bufs);
+
+            int write1 = bufs[0].position() - sPos;
+            int write2 = bufs[1].position();
+            if (sPos + write1 == cap) {
+                sPos = write2;
+                ePosIsAfterSPos = true;
+            } else {
+                sPos += write1;
+                write2 = 0; // should not happen for a sequential write
+            }
+            if (ePosIsAfterSPos && sPos == ePos) {
+                // buffer is empty now
+                resetCursors();
+            }
+            int write = write1 + write2;
+            triggerWritable = triggerWritablePre && write > 0;
+            return write;
+        } finally {
+            assert Logger.lowLevelNetDebug("after gathering write out, sPos=" + sPos);
+
+            operatingBuffer = false;
+            if (triggerWritable) {
+                assert Logger.lowLevelNetDebug("trigger writable for " + handler.size() + " times");
+                for (RingBufferETHandler aHandler : handler) {
+                    aHandler.writableET();
+                }
+            }
+            resetFirst(firstOperator);
+        }
+    }
+
+    private int scatteringStoreBytesFrom(ReadableByteStream channel) throws IOException {
+        if (operatingBuffer) {
+            throw new IllegalStateException("this buffer is operating");
+        }
+        ensureBufferAvailable();
+
+        boolean firstOperator = isFirstOperate();
+        operatingBuffer = true;
+
+        boolean triggerReadable = false;
+
+        assert Logger.lowLevelNetDebug("before scattering store in, ePos=" + ePos);
+
+        try { // only use try-finally here, we do not catch
+            boolean triggerReadablePre = used() == 0;
+
+            var bufs = ioBuffers();
+            bufs[0].limit(cap).position(ePos);
+            bufs[1].limit(sPos).position(0);
+
+            long n = channel.read(bufs);
+
+            int read1 = bufs[0].position() - ePos;
+            int read2 = bufs[1].position();
+            if (ePos + read1 == cap) {
+                ePos = read2;
+                ePosIsAfterSPos = false;
+            } else {
+                ePos += read1;
+                read2 = 0; // should not happen for a sequential read
+            }
+            int read = read1 + read2;
+            if (n < 0 && read == 0) {
+                return -1; // EOF
+            }
+            triggerReadable = triggerReadablePre && read > 0;
+            return read;
+        } finally {
+            assert Logger.lowLevelNetDebug("after scattering store in, ePos=" + ePos);
+
+            operatingBuffer = false;
+            if (triggerReadable) {
+                assert Logger.lowLevelNetDebug("trigger readable for " + handler.size() + " times");
+                for (RingBufferETHandler aHandler : handler) {
+                    aHandler.readableET();
+                }
+            }
+            resetFirst(firstOperator);
+        }
+    }
+
     @Override
     public int free() {
         return cap - used();
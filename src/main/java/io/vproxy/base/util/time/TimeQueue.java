@@ -1,10 +1,32 @@
 package io.vproxy.base.util.time;
 
 import io.vproxy.base.util.time.impl.TimeQueueImpl;
+import io.vproxy.base.util.time.impl.TimeWheelQueueImpl;
 
 public interface TimeQueue<T> {
+    enum Type {
+        /**
+         * binary heap, O(log n) add and remove
+         */
+        HEAP,
+        /**
+         * hierarchical timing wheel, O(1) add and remove, suitable for a large number of timers
+         */
+        TIMING_WHEEL,
+    }
+
     static <T> TimeQueue<T> create() {
-        return new TimeQueueImpl<>();
+        return create(Type.HEAP);
+    }
+
+    static <T> TimeQueue<T> create(Type type) {
+        switch (type) {
+            case TIMING_WHEEL:
+                return new TimeWheelQueueImpl<>();
+            case HEAP:
+            default:
+                return new TimeQueueImpl<>();
+        }
     }
 
     TimeElem<T> add(long current, int timeout, T elem);
@@ -6,6 +6,7 @@ public class TimeElemImpl<T> implements TimeElem<T> {
     public final long triggerTime;
     public final T elem;
     private final TimeQueueImpl<T> queue;
+    int index = -1; // index in the heap, -1 when removed
 
     TimeElemImpl(long triggerTime, T elem, TimeQueueImpl<T> queue) {
         this.triggerTime = triggerTime;
@@ -19,6 +20,6 @@ public class TimeElemImpl<T> implements TimeElem<T> {
     }
 
     public void removeSelf() {
-        queue.queue.remove(this);
+        queue.remove(this);
     }
 }
@@ -3,37 +3,113 @@ package io.vproxy.base.util.time.impl;
 import io.vproxy.base.util.time.TimeElem;
 import io.vproxy.base.util.time.TimeQueue;
 
-import java.util.PriorityQueue;
-
+/**
+ * Binary heap ordered by trigger time.<br>
+ * Each element records its index in the heap, so removeSelf is O(log n).
+ */
 public class TimeQueueImpl<T> implements TimeQueue<T> {
-    final PriorityQueue<TimeElemImpl<T>> queue = new PriorityQueue<>((a, b) -> (int) (a.triggerTime - b.triggerTime));
+    private TimeElemImpl<T>[] heap;
+    private int size = 0;
+
+    public TimeQueueImpl() {
+        heap = newHeap(16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> TimeElemImpl<T>[] newHeap(int len) {
+        return (TimeElemImpl<T>[]) new TimeElemImpl<?>[len];
+    }
 
     @Override
     public TimeElem<T> add(long currentTimestamp, int timeout, T elem) {
         TimeElemImpl<T> event = new TimeElemImpl<>(currentTimestamp + timeout, elem, this);
-        queue.add(event);
+        if (size == heap.length) {
+            TimeElemImpl<T>[] newHeap = newHeap(heap.length << 1);
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        siftUp(size++, event);
         return event;
     }
 
     @Override
     public T poll() {
-        TimeElemImpl<T> elem = queue.poll();
-        if (elem == null)
+        if (size == 0)
             return null;
+        TimeElemImpl<T> elem = heap[0];
+        removeAt(0);
         return elem.elem;
     }
 
     @Override
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return size == 0;
     }
 
     @Override
     public int nextTime(long currentTimestamp) {
-        TimeElemImpl<T> elem = queue.peek();
-        if (elem == null)
+        if (size == 0)
             return Integer.MAX_VALUE;
-        long triggerTime = elem.triggerTime;
-        return Math.max((int) (triggerTime - currentTimestamp), 0);
+        long triggerTime = heap[0].triggerTime;
+        return (int) Math.max(triggerTime - currentTimestamp, 0);
+    }
+
+    void remove(TimeElemImpl<T> elem) {
+        int index = elem.index;
+        if (index < 0 || index >= size || heap[index] != elem) {
+            return; // already removed
+        }
+        removeAt(index);
+    }
+
+    private void removeAt(int index) {
+        TimeElemImpl<T> removed = heap[index];
+        removed.index = -1;
+        int last = --size;
+        TimeElemImpl<T> moved = heap[last];
+        heap[last] = null;
+        if (index == last) {
+            return;
+        }
+        siftDown(index, moved);
+        if (heap[index] == moved) {
+            siftUp(index, moved);
+        }
+    }
+
+    private void siftUp(int index, TimeElemImpl<T> elem) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            TimeElemImpl<T> p = heap[parent];
+            if (elem.triggerTime >= p.triggerTime) {
+                break;
+            }
+            heap[index] = p;
+            p.index = index;
+            index = parent;
+        }
+        heap[index] = elem;
+        elem.index = index;
+    }
+
+    private void siftDown(int index, TimeElemImpl<T> elem) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            TimeElemImpl<T> c = heap[child];
+            int right = child + 1;
+            if (right < size && heap[right].triggerTime < c.triggerTime) {
+                child = right;
+                c = heap[child];
+            }
+            if (elem.triggerTime <= c.triggerTime) {
+                break;
+            }
+            heap[index] = c;
+            c.index = index;
+            index = child;
+        }
+        heap[index] = elem;
+        elem.index = index;
     }
 }
@@ -0,0 +1,30 @@
+package io.vproxy.base.util.time.impl;
+
+import io.vproxy.base.util.time.TimeElem;
+
+public class TimeWheelElemImpl<T> implements TimeElem<T> {
+    public final long triggerTime;
+    public final T elem;
+    private final TimeWheelQueueImpl<T> queue;
+
+    // intrusive doubly linked list of the slot
+    int slot = -1; // -1 when removed
+    TimeWheelElemImpl<T> prev;
+    TimeWheelElemImpl<T> next;
+
+    TimeWheelElemImpl(long triggerTime, T elem, TimeWheelQueueImpl<T> queue) {
+        this.triggerTime = triggerTime;
+        this.elem = elem;
+        this.queue = queue;
+    }
+
+    @Override
+    public T get() {
+        return elem;
+    }
+
+    @Override
+    public void removeSelf() {
+        queue.remove(this);
+    }
+}
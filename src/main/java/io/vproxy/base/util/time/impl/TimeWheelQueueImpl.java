@@ -0,0 +1,277 @@
+package io.vproxy.base.util.time.impl;
+
+import io.vproxy.base.util.time.TimeElem;
+import io.vproxy.base.util.time.TimeQueue;
+
+/**
+ * Hashed hierarchical timing wheel, tick is 1 millisecond.<br>
+ * <pre>
+ * level 0: 256 slots * 1ms
+ * level 1:  64 slots * 256ms
+ * level 2:  64 slots * 16384ms
+ * level 3:  64 slots * 1048576ms
+ * level 4:  64 slots * 67108864ms
+ * </pre>
+ * An element is put into the lowest level which can hold its distance to <code>base</code>,
+ * and it's moved to lower levels (cascaded) when <code>base</code> reaches the range of its slot.
+ * Elements which are due are moved into the <code>ready</code> list, ordered by trigger time.<br>
+ * add and removeSelf are O(1), expiry is amortized O(1) per element.
+ * Empty slots are skipped with bitmaps, so advancing the wheel does not walk every millisecond.<br>
+ * nextTime(...) may return a value smaller than the exact time left when the nearest element is in higher levels,
+ * calling nextTime(...) again after that time will return the precise value.
+ */
+public class TimeWheelQueueImpl<T> implements TimeQueue<T> {
+    private static final int L0_BITS = 8;
+    private static final int L0_SIZE = 1 << L0_BITS;
+    private static final int L0_MASK = L0_SIZE - 1;
+    private static final int LN_BITS = 6;
+    private static final int LN_SIZE = 1 << LN_BITS;
+    private static final int LN_MASK = LN_SIZE - 1;
+    private static final int LEVELS = 5;
+    private static final long WHEEL_RANGE = 1L << (L0_BITS + LN_BITS * (LEVELS - 1));
+    private static final int READY = L0_SIZE + LN_SIZE * (LEVELS - 1);
+
+    // slots of all levels are flattened: [level 0][level 1]...[level 4][ready]
+    private final TimeWheelElemImpl<T>[] heads = newSlots(READY + 1);
+    private final TimeWheelElemImpl<T>[] tails = newSlots(READY + 1);
+    // one bit for each slot except ready, level 0 uses 4 words, the others use 1 word each
+    private final long[] bitmap = new long[READY / 64];
+
+    private long base = 0; // the next millisecond to process, elements before this time are in the ready list
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    private static <T> TimeWheelElemImpl<T>[] newSlots(int len) {
+        return (TimeWheelElemImpl<T>[]) new TimeWheelElemImpl<?>[len];
+    }
+
+    @Override
+    public TimeElem<T> add(long currentTimestamp, int timeout, T elem) {
+        TimeWheelElemImpl<T> event = new TimeWheelElemImpl<>(currentTimestamp + timeout, elem, this);
+        if (size == 0) {
+            base = currentTimestamp;
+        } else if (event.triggerTime - base >= WHEEL_RANGE) {
+            advance(event.triggerTime - WHEEL_RANGE);
+        }
+        place(event);
+        ++size;
+        return event;
+    }
+
+    @Override
+    public T poll() {
+        if (size == 0)
+            return null;
+        while (heads[READY] == null) {
+            advance(nextLowerBound());
+        }
+        TimeWheelElemImpl<T> event = heads[READY];
+        unlink(event);
+        --size;
+        return event.elem;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int nextTime(long currentTimestamp) {
+        if (size == 0)
+            return Integer.MAX_VALUE;
+        advance(currentTimestamp);
+        TimeWheelElemImpl<T> ready = heads[READY];
+        if (ready != null) {
+            return (int) Math.max(ready.triggerTime - currentTimestamp, 0);
+        }
+        long delta = nextLowerBound() - currentTimestamp;
+        return (int) Math.min(Math.max(delta, 0), Integer.MAX_VALUE);
+    }
+
+    void remove(TimeWheelElemImpl<T> event) {
+        if (event.slot == -1) {
+            return; // already removed
+        }
+        unlink(event);
+        --size;
+    }
+
+    private static int levelShift(int level) {
+        return L0_BITS + LN_BITS * (level - 1);
+    }
+
+    private void place(TimeWheelElemImpl<T> event) {
+        long time = event.triggerTime;
+        if (time < base) {
+            insertReady(event);
+            return;
+        }
+        long delta = time - base;
+        if (delta < L0_SIZE) {
+            append((int) (time & L0_MASK), event);
+            return;
+        }
+        int level = 1;
+        while (delta >= (1L << levelShift(level + 1))) {
+            ++level;
+        }
+        int index = (int) ((time >>> levelShift(level)) & LN_MASK);
+        append(L0_SIZE + (level - 1) * LN_SIZE + index, event);
+    }
+
+    private void append(int slot, TimeWheelElemImpl<T> event) {
+        event.slot = slot;
+        event.next = null;
+        TimeWheelElemImpl<T> tail = tails[slot];
+        event.prev = tail;
+        if (tail == null) {
+            heads[slot] = event;
+            if (slot != READY) {
+                bitmap[slot >>> 6] |= 1L << slot;
+            }
+        } else {
+            tail.next = event;
+        }
+        tails[slot] = event;
+    }
+
+    private void insertReady(TimeWheelElemImpl<T> event) {
+        // usually appended to the tail, elements in the ready list are sorted
+        TimeWheelElemImpl<T> after = tails[READY];
+        while (after != null && after.triggerTime > event.triggerTime) {
+            after = after.prev;
+        }
+        if (after == tails[READY]) {
+            append(READY, event);
+            return;
+        }
+        event.slot = READY;
+        event.prev = after;
+        if (after == null) {
+            event.next = heads[READY];
+            heads[READY] = event;
+        } else {
+            event.next = after.next;
+            after.next = event;
+        }
+        event.next.prev = event;
+    }
+
+    private void unlink(TimeWheelElemImpl<T> event) {
+        int slot = event.slot;
+        if (event.prev == null) {
+            heads[slot] = event.next;
+        } else {
+            event.prev.next = event.next;
+        }
+        if (event.next == null) {
+            tails[slot] = event.prev;
+        } else {
+            event.next.prev = event.prev;
+        }
+        if (heads[slot] == null && slot != READY) {
+            bitmap[slot >>> 6] &= ~(1L << slot);
+        }
+        event.slot = -1;
+        event.prev = null;
+        event.next = null;
+    }
+
+    private TimeWheelElemImpl<T> detach(int slot) {
+        TimeWheelElemImpl<T> head = heads[slot];
+        heads[slot] = null;
+        tails[slot] = null;
+        bitmap[slot >>> 6] &= ~(1L << slot);
+        return head;
+    }
+
+    /**
+     * process all milliseconds until <code>target</code> (inclusive)
+     */
+    private void advance(long target) {
+        while (base <= target) {
+            int index = (int) (base & L0_MASK);
+            // all elements in this slot trigger at base
+            TimeWheelElemImpl<T> e = detach(index);
+            while (e != null) {
+                TimeWheelElemImpl<T> next = e.next;
+                append(READY, e);
+                e = next;
+            }
+            // skip empty slots, but do not skip the end of level 0
+            int nextIndex = nextSetBitInLevel0(index + 1);
+            long next;
+            if (nextIndex == -1) {
+                next = (base | L0_MASK) + 1;
+            } else {
+                next = base + (nextIndex - index);
+            }
+            base = Math.min(next, target + 1);
+            if ((base & L0_MASK) == 0) {
+                cascade();
+            }
+        }
+    }
+
+    private int nextSetBitInLevel0(int from) {
+        for (int w = from >>> 6; w < L0_SIZE / 64; ++w) {
+            long word = bitmap[w];
+            if (w == from >>> 6) {
+                word &= -1L << from;
+            }
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    private void cascade() {
+        for (int level = 1; level < LEVELS; ++level) {
+            int index = (int) ((base >>> levelShift(level)) & LN_MASK);
+            TimeWheelElemImpl<T> e = detach(L0_SIZE + (level - 1) * LN_SIZE + index);
+            while (e != null) {
+                TimeWheelElemImpl<T> next = e.next;
+                place(e);
+                e = next;
+            }
+            if (index != 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return a time which is not later than the nearest element in the wheel (excluding the ready list)
+     */
+    private long nextLowerBound() {
+        long min = Long.MAX_VALUE;
+        int index = (int) (base & L0_MASK);
+        for (int i = 0; i < L0_SIZE / 64; ++i) {
+            if (bitmap[i] != 0) {
+                int found = nextSetBitInLevel0(index);
+                if (found == -1) {
+                    found = nextSetBitInLevel0(0);
+                }
+                min = base + ((found - index) & L0_MASK);
+                break;
+            }
+        }
+        for (int level = 1; level < LEVELS; ++level) {
+            long word = bitmap[(L0_SIZE >>> 6) + level - 1];
+            if (word == 0) {
+                continue;
+            }
+            int shift = levelShift(level);
+            int cur = (int) ((base >>> shift) & LN_MASK);
+            // the slot of the current index belongs to the next round
+            int distance = Long.numberOfTrailingZeros(Long.rotateRight(word, cur + 1)) + 1;
+            long time = ((base >>> shift) + distance) << shift;
+            if (time < min) {
+                min = time;
+            }
+        }
+        return min;
+    }
+}
@@ -2,15 +2,23 @@ package io.vproxy.base.util.web;
 
 import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.Logger;
-import io.vproxy.base.util.Utils;
 
 import java.io.IOException;
 import java.io.InputStream;
 
 public class ClasspathResourceHolder {
     private final String basePath;
+    private final CompressedResourceCache cache; // nullable
 
     public ClasspathResourceHolder(String basePath) {
+        this(basePath, null);
+    }
+
+    /**
+     * @param cache when not null, resources are loaded only once and stored in the cache,
+     *              and {@link #get(String)} returns read-only arrays
+     */
+    public ClasspathResourceHolder(String basePath, CompressedResourceCache cache) {
         if (!basePath.startsWith("/")) {
             basePath = "/" + basePath;
         }
@@ -18,9 +26,33 @@ public class ClasspathResourceHolder {
             basePath = basePath.substring(0, basePath.length() - 1);
         }
         this.basePath = basePath;
+        this.cache = cache;
     }
 
     public ByteArray get(String path) {
+        if (cache != null) {
+            var entry = getCached(path);
+            if (entry == null) {
+                return null;
+            }
+            return entry.identity();
+        }
+        return load(resourcePath(path));
+    }
+
+    /**
+     * @return the cached resource with its compressed variants and ETag, or null if not found
+     * @throws IllegalStateException the holder is created without a cache
+     */
+    public CompressedResourceCache.Entry getCached(String path) {
+        if (cache == null) {
+            throw new IllegalStateException("no cache is configured for " + basePath);
+        }
+        String resPath = resourcePath(path);
+        return cache.get(resPath, () -> load(resPath));
+    }
+
+    private String resourcePath(String path) {
         if (path.contains("#")) {
             path = path.substring(0, path.indexOf('#'));
         }
@@ -30,28 +62,17 @@ public class ClasspathResourceHolder {
         if (!path.startsWith("/")) {
             path = "/" + path;
         }
-        String resPath = basePath + path;
+        return basePath + path;
+    }
+
+    private static ByteArray load(String resPath) {
         InputStream inputStream = ClasspathResourceHolder.class.getResourceAsStream(resPath);
         if (inputStream == null) {
             return null;
         }
-        ByteArray ret = null;
-        final int BUF_LEN = 2048;
-        byte[] buf = Utils.allocateByteArray(BUF_LEN);
-        int len;
+        ByteArray ret;
         try {
-            while ((len = inputStream.read(buf)) > 0) {
-                ByteArray b = ByteArray.from(buf);
-                if (len < BUF_LEN) {
-                    b = b.sub(0, len);
-                }
-                b = b.copy();
-                if (ret == null) {
-                    ret = b;
-                } else {
-                    ret = ret.concat(b);
-                }
-            }
+            ret = ByteArray.from(inputStream.readAllBytes());
         } catch (IOException e) {
             Logger.shouldNotHappen("reading from classpath got exception", e);
             return null;
@@ -61,9 +82,6 @@ public class ClasspathResourceHolder {
             } catch (IOException ignore) {
             }
         }
-        if (ret == null) {
-            ret = ByteArray.allocate(0);
-        }
         return ret;
     }
 }
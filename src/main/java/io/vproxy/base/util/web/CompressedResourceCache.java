@@ -0,0 +1,293 @@
+package io.vproxy.base.util.web;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.bytearray.ByteBufferByteArray;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+/**
+ * Cache of static resources, each resource is loaded only once.<br>
+ * The identity, gzip and deflate variants are stored in direct memory (a compressed variant is kept only
+ * when it's smaller than the identity), and they are returned as shared read-only {@link ByteArray}s.
+ * The strong ETag of a resource is computed from its content, and each variant has its own ETag
+ * (<code>"hash"</code>, <code>"hash-gzip"</code>, <code>"hash-deflate"</code>),
+ * so respond with <code>Vary: Accept-Encoding</code>.<br>
+ * When the total size exceeds <code>maxBytes</code>, the least recently used resources are evicted.
+ * An evicted entry stays valid for the users still holding it, its memory is released by gc.<br>
+ * The cache is thread safe.
+ */
+public class CompressedResourceCache {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    public CompressedResourceCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes = " + maxBytes + " <= 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param loader called when the resource is not cached, returns null if the resource does not exist
+     * @return the cached entry, or null if the loader returns null
+     */
+    public Entry get(String key, Supplier<ByteArray> loader) {
+        synchronized (this) {
+            var e = entries.get(key);
+            if (e != null) {
+                return e;
+            }
+        }
+        // load without holding the lock
+        var content = loader.get();
+        if (content == null) {
+            return null;
+        }
+        var e = new Entry(content);
+        if (e.size() > maxBytes) {
+            return e; // too large to be cached
+        }
+        synchronized (this) {
+            var old = entries.get(key);
+            if (old != null) {
+                return old; // loaded by another thread
+            }
+            entries.put(key, e);
+            bytes += e.size();
+            Iterator<Entry> ite = entries.values().iterator();
+            while (bytes > maxBytes) {
+                var eldest = ite.next();
+                ite.remove();
+                bytes -= eldest.size();
+            }
+        }
+        return e;
+    }
+
+    public synchronized void remove(String key) {
+        var e = entries.remove(key);
+        if (e != null) {
+            bytes -= e.size();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int count() {
+        return entries.size();
+    }
+
+    /**
+     * @return total bytes of the cached variants
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public static class Entry {
+        private final int size;
+        private final ByteArray identity;
+        private final ByteArray gzip; // nullable
+        private final ByteArray deflate; // nullable
+        private final String etag;
+        private final String gzipEtag; // nullable
+        private final String deflateEtag; // nullable
+
+        private Entry(ByteArray content) {
+            byte[] raw = content.toJavaArray();
+            byte[] gz = content.toGZipJavaByteArray();
+            byte[] df = deflate(raw);
+            if (gz.length >= raw.length) {
+                gz = null;
+            }
+            if (df.length >= raw.length) {
+                df = null;
+            }
+            int size = raw.length + (gz == null ? 0 : gz.length) + (df == null ? 0 : df.length);
+            ByteBuffer buf = ByteBuffer.allocateDirect(size);
+            identity = put(buf, raw);
+            gzip = gz == null ? null : put(buf, gz);
+            deflate = df == null ? null : put(buf, df);
+            this.size = size;
+            String hash = hash(raw);
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = gzip == null ? null : "\"" + hash + "-" + GZIP + "\"";
+            this.deflateEtag = deflate == null ? null : "\"" + hash + "-" + DEFLATE + "\"";
+        }
+
+        private static ByteArray put(ByteBuffer buf, byte[] bytes) {
+            int pos = buf.position();
+            buf.put(bytes);
+            return new ByteBufferByteArray(buf.asReadOnlyBuffer().limit(buf.position()).position(pos));
+        }
+
+        private static byte[] deflate(byte[] raw) {
+            var deflater = new Deflater();
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[raw.length + 64];
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == out.length) {
+                    byte[] tmp = new byte[out.length * 2];
+                    System.arraycopy(out, 0, tmp, 0, len);
+                    out = tmp;
+                }
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            deflater.end();
+            byte[] ret = new byte[len];
+            System.arraycopy(out, 0, ret, 0, len);
+            return ret;
+        }
+
+        private static String hash(byte[] raw) {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            byte[] digest = md.digest(raw);
+            // 16 bytes are enough for identifying a resource
+            return ByteArray.from(digest).sub(0, 16).toHexString();
+        }
+
+        private int size() {
+            return size;
+        }
+
+        public ByteArray identity() {
+            return identity;
+        }
+
+        /**
+         * @return the gzip variant, or null if compressing does not make it smaller
+         */
+        public ByteArray gzip() {
+            return gzip;
+        }
+
+        /**
+         * @return the deflate variant, or null if compressing does not make it smaller
+         */
+        public ByteArray deflate() {
+            return deflate;
+        }
+
+        /**
+         * @return the strong ETag of the identity variant, including the quotes
+         */
+        public String etag() {
+            return etag;
+        }
+
+        /**
+         * @param encoding returned by {@link #selectEncoding(String)}
+         * @return the strong ETag of the variant, including the quotes, or null if the variant does not exist
+         */
+        public String etag(String encoding) {
+            if (GZIP.equals(encoding)) {
+                return gzipEtag;
+            }
+            if (DEFLATE.equals(encoding)) {
+                return deflateEtag;
+            }
+            return etag;
+        }
+
+        /**
+         * @param ifNoneMatch value of the If-None-Match header, nullable
+         * @param encoding    the variant to respond with, returned by {@link #selectEncoding(String)}
+         * @return true if the client already has this variant, and 304 can be responded
+         */
+        public boolean notModified(String ifNoneMatch, String encoding) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            String etag = etag(encoding);
+            if (etag == null) {
+                return false;
+            }
+            for (String s : ifNoneMatch.split(",")) {
+                s = s.trim();
+                if (s.startsWith("W/")) {
+                    s = s.substring(2);
+                }
+                if (s.equals("*") || s.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param acceptEncoding value of the Accept-Encoding header, nullable
+         * @return the content-encoding to respond with, {@link #GZIP}, {@link #DEFLATE} or null for identity
+         */
+        public String selectEncoding(String acceptEncoding) {
+            if (acceptEncoding == null) {
+                return null;
+            }
+            // null means the coding is not listed, an explicitly listed coding overrides "*"
+            Boolean gzipListed = null;
+            Boolean deflateListed = null;
+            boolean acceptAny = false;
+            for (String s : acceptEncoding.split(",")) {
+                s = s.trim();
+                String q = null;
+                if (s.contains(";")) {
+                    q = s.substring(s.indexOf(';') + 1).trim();
+                    s = s.substring(0, s.indexOf(';')).trim();
+                }
+                boolean acceptable = q == null || !q.replace(" ", "").matches("q=0(\\.0*)?");
+                if (s.equalsIgnoreCase(GZIP)) {
+                    gzipListed = acceptable;
+                } else if (s.equalsIgnoreCase(DEFLATE)) {
+                    deflateListed = acceptable;
+                } else if (s.equals("*")) {
+                    acceptAny = acceptable;
+                }
+            }
+            boolean acceptGZip = gzipListed != null ? gzipListed : acceptAny;
+            boolean acceptDeflate = deflateListed != null ? deflateListed : acceptAny;
+            if (acceptGZip && gzip != null) {
+                return GZIP;
+            }
+            if (acceptDeflate && deflate != null) {
+                return DEFLATE;
+            }
+            return null;
+        }
+
+        /**
+         * @param encoding returned by {@link #selectEncoding(String)}
+         */
+        public ByteArray get(String encoding) {
+            if (GZIP.equals(encoding)) {
+                return gzip;
+            }
+            if (DEFLATE.equals(encoding)) {
+                return deflate;
+            }
+            return identity;
+        }
+    }
+}
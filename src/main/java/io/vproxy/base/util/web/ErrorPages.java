@@ -1,8 +1,12 @@
 package io.vproxy.base.util.web;
 
+import io.vproxy.base.util.ByteArray;
+
 import java.util.Date;
 
 public class ErrorPages {
+    private static final CompressedResourceCache cache = new CompressedResourceCache(4 * 1024 * 1024);
+
     private ErrorPages() {
     }
 
@@ -10,6 +14,24 @@ public class ErrorPages {
         return build(code + " " + statusMsg, msg, "<p> current server time " + new Date() + "</p> <p> request raw ip " + rawIp + " </p> <p> x-forwarded-for ip " + xffIp + " </p>");
     }
 
+    /**
+     * Same as {@link #build(String, String, String)}, but the page is built only once and cached with its compressed variants.
+     * Do not put per-request content into the arguments, use {@link #build(String, String, String)} instead.
+     */
+    public static CompressedResourceCache.Entry getCached(String title, String description, String message) {
+        return cache.get(key(title, description, message), () -> ByteArray.from(build(title, description, message)));
+    }
+
+    // each part is prefixed with its length, so that different arguments never make the same key
+    private static String key(String... parts) {
+        var sb = new StringBuilder();
+        for (String p : parts) {
+            p = String.valueOf(p);
+            sb.append(p.length()).append(':').append(p);
+        }
+        return sb.toString();
+    }
+
     public static String build(String title, String description, String message) {
         return build(title, description, message, "Build something amazing", "https://github.com/wkgcass/vproxy");
     }
@@ -1,5 +1,6 @@
 package io.vproxy.base.util.web;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -78,6 +79,14 @@ public class HttpStatusCodeReasonMap {
         put(510, "Not Extended");
         put(511, "Network Authentication Required");
     }};
+    private static final Map<Integer, byte[]> statusLines = new HashMap<>();
+
+    static {
+        for (var e : map.entrySet()) {
+            statusLines.put(e.getKey(), ("HTTP/1.1 " + e.getKey() + " " + e.getValue() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
     private static final Map<Integer, String> unknownMap = new HashMap<>() {{
         put(1, "Informational Response");
         put(2, "Success");
@@ -96,4 +105,12 @@ public class HttpStatusCodeReasonMap {
             return ret;
         return defaultReason;
     }
+
+    /**
+     * @return the encoded <code>HTTP/1.1 {statusCode} {reason}\r\n</code> with the reason from this map,
+     * or null if the status code is not in this map. The returned array must not be modified
+     */
+    public static byte[] getStatusLine(int statusCode) {
+        return statusLines.get(statusCode);
+    }
 }
@@ -9,4 +9,30 @@ public interface ReadableByteStream {
     default int readBlocking(ByteBuffer dst) throws IOException {
         return read(dst);
     }
+
+    /**
+     * Scattering read, same contract as {@link java.nio.channels.ScatteringByteChannel#read(ByteBuffer[])}.<br>
+     * The default implementation reads the buffers one by one, implementations backed by a
+     * ScatteringByteChannel (or readv) should override it to read all buffers in one call.
+     *
+     * @return bytes read, or -1 for EOF
+     */
+    default long read(ByteBuffer[] dsts) throws IOException {
+        long total = 0;
+        for (ByteBuffer dst : dsts) {
+            int expected = dst.remaining();
+            if (expected == 0) {
+                continue;
+            }
+            int n = read(dst);
+            if (n < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+            if (n < expected) {
+                break;
+            }
+        }
+        return total;
+    }
 }
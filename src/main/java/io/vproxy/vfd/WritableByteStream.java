@@ -5,4 +5,27 @@ import java.nio.ByteBuffer;
 
 public interface WritableByteStream {
     int write(ByteBuffer src) throws IOException;
+
+    /**
+     * Gathering write, same contract as {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}.<br>
+     * The default implementation writes the buffers one by one, implementations backed by a
+     * GatheringByteChannel (or writev) should override it to write all buffers in one call.
+     *
+     * @return bytes written
+     */
+    default long write(ByteBuffer[] srcs) throws IOException {
+        long total = 0;
+        for (ByteBuffer src : srcs) {
+            int expected = src.remaining();
+            if (expected == 0) {
+                continue;
+            }
+            int n = write(src);
+            total += n;
+            if (n < expected) {
+                break;
+            }
+        }
+        return total;
+    }
 }
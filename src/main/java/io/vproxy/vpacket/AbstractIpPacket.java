@@ -21,6 +21,25 @@ public abstract class AbstractIpPacket extends AbstractPacket implements Partial
 
     public abstract int getHeaderSize();
 
+    // initPartial(raw) is split into the following steps, so that a batch of packets can be parsed layer by layer,
+    // see PacketBatchParser. running the steps one by one is the same as calling initPartial(raw)
+
+    /**
+     * Parse the header, and create the upper layer packet without parsing it.
+     */
+    abstract String initPartialHeader(PacketDataBuffer raw);
+
+    /**
+     * @return buffer of the upper layer packet which should be parsed with initPartial(raw),
+     * or null if the upper layer packet doesn't need to be parsed
+     */
+    abstract PacketDataBuffer partialUpperLayer(PacketDataBuffer raw);
+
+    /**
+     * Called after the upper layer packet is successfully parsed.
+     */
+    abstract void initPartialDone(PacketDataBuffer raw);
+
     @Override
     public void clearAllRawPackets() {
         clearRawPacket();
@@ -9,9 +9,51 @@ public abstract class AbstractPacket {
     protected PacketDataBuffer raw;
     private AbstractPacket parentPacket;
     private boolean requireUpdatingChecksum = false;
+    PacketArena arena; // the arena which this packet belongs to, null if it's not allocated from an arena
 
     public abstract String from(PacketDataBuffer raw);
 
+    /**
+     * Reset the packet to the state right after it's constructed, so that the object can be reused.<br>
+     * Upper layer packets and buffers are not reset, they are dropped from this packet.
+     */
+    public void reset() {
+        raw = null;
+        parentPacket = null;
+        requireUpdatingChecksum = false;
+    }
+
+    /**
+     * Reset the packet and parse it again from the <code>raw</code> buffer.
+     *
+     * @return error message, or null if succeeded
+     */
+    public String reinit(PacketDataBuffer raw) {
+        reset();
+        return from(raw);
+    }
+
+    protected final PacketDataBuffer subBuffer(PacketDataBuffer raw, int off) {
+        if (arena == null) {
+            return raw.sub(off);
+        }
+        return arena.buffer().reinit(raw.fullbuf, raw.pktOff + off, raw.pad);
+    }
+
+    protected final PacketDataBuffer subBuffer(PacketDataBuffer raw, int off, int len) {
+        if (arena == null) {
+            return raw.sub(off, len);
+        }
+        return arena.buffer().reinit(raw.fullbuf, raw.pktOff + off, raw.fullbuf.length() - (raw.pktOff + off) - len);
+    }
+
+    protected final PacketDataBuffer newBuffer(ByteArray buf) {
+        if (arena == null) {
+            return new PacketDataBuffer(buf);
+        }
+        return arena.buffer().reinit(buf, 0, 0);
+    }
+
     public final ByteArray getRawPacket(int flags) {
         if (raw == null) {
             raw = new PacketDataBuffer(buildPacket(flags));
@@ -27,6 +69,7 @@ public abstract class AbstractPacket {
 
     public final void clearRawPacket() {
         if (raw != null) {
+            ensureLazyFields(); // the raw packet is required to decode the fields
             raw.clearBuffers();
         }
         raw = null;
@@ -35,6 +78,17 @@ public abstract class AbstractPacket {
         }
     }
 
+    /**
+     * Called after bytes of the raw packet are modified in place.<br>
+     * The raw packet of this packet stays valid, but the parent packets are cleared,
+     * because their checksums may cover the modified bytes.
+     */
+    protected final void clearParentRawPacket() {
+        if (parentPacket != null) {
+            parentPacket.clearRawPacket();
+        }
+    }
+
     public boolean isRequireUpdatingChecksum() {
         return requireUpdatingChecksum;
     }
@@ -47,6 +101,14 @@ public abstract class AbstractPacket {
         this.requireUpdatingChecksum = true;
     }
 
+    /**
+     * Decode all fields which are not decoded yet when the packet is initiated with {@link PartialPacket#initPartial(PacketDataBuffer)}.<br>
+     * The fields are decoded from the raw packet on first access,
+     * this method is called before the raw packet is dropped or when the packet is copied or compared.
+     */
+    protected void ensureLazyFields() {
+    }
+
     public abstract AbstractPacket copy();
 
     protected abstract ByteArray buildPacket(int flags);
@@ -79,10 +141,12 @@ public abstract class AbstractPacket {
             assert Logger.lowLevelDebug("requireMoreHeadroom return false because pktOff " + raw.pktOff + " < room " + room);
             return false;
         }
-        raw.pktBuf = raw.fullbuf.sub(raw.pktOff - room, raw.pktBuf.length() + room);
-        for (int i = 0; i < moveLen; ++i) {
-            raw.pktBuf.set(i, raw.pktBuf.get(room + i));
+        if (parentPacket != null) {
+            // the headroom holds the header of the parent packet, and the length changes
+            parentPacket.clearRawPacket();
         }
+        raw.pktBuf = raw.fullbuf.sub(raw.pktOff - room, raw.pktBuf.length() + room);
+        raw.pktBuf.copyWithin(room, 0, moveLen);
         raw.pktOff -= room;
         return true;
     }
@@ -94,13 +158,46 @@ public abstract class AbstractPacket {
         if (raw.pktBuf.length() - room < moveLen) {
             throw new ArrayIndexOutOfBoundsException("pktBuf.length " + raw.pktBuf.length() + " - room " + room + " < moveLen " + moveLen);
         }
-        for (int i = moveLen - 1; i >= 0; --i) {
-            raw.pktBuf.set(room + i, raw.pktBuf.get(i));
+        if (parentPacket != null) {
+            parentPacket.clearRawPacket();
         }
+        raw.pktBuf.copyWithin(0, room, moveLen);
         raw.pktBuf = raw.pktBuf.sub(room, raw.pktBuf.length() - room);
         raw.pktOff += room;
     }
 
+    /**
+     * Use <code>headerLen</code> bytes of the headroom in front of <code>inner</code> as the header of this packet,
+     * the raw bytes of this packet become the header followed by the raw bytes of <code>inner</code>,
+     * no bytes are moved or copied.<br>
+     * The caller should fill in the returned header bytes.
+     *
+     * @return the header bytes, or null if <code>inner</code> has no raw bytes or does not have enough headroom
+     */
+    protected final ByteArray encapsulateInHeadroom(AbstractPacket inner, int headerLen) {
+        var innerRaw = inner.raw;
+        if (innerRaw == null) {
+            assert Logger.lowLevelDebug("encapsulateInHeadroom return null because no raw array");
+            return null;
+        }
+        if (innerRaw.pktOff < headerLen) {
+            assert Logger.lowLevelDebug("encapsulateInHeadroom return null because pktOff " + innerRaw.pktOff + " < headerLen " + headerLen);
+            return null;
+        }
+        if (inner.parentPacket != null && inner.parentPacket != this) {
+            // the headroom holds the header of the old parent packet
+            inner.parentPacket.clearRawPacket();
+        }
+        clearRawPacket();
+
+        var fullbuf = innerRaw.fullbuf;
+        int off = innerRaw.pktOff - headerLen;
+        int pad = fullbuf.length() - innerRaw.pktOff - innerRaw.pktBuf.length();
+        raw = arena == null ? new PacketDataBuffer(fullbuf, off, pad) : arena.buffer().reinit(fullbuf, off, pad);
+        inner.recordParent(this);
+        return raw.pktBuf.sub(0, headerLen);
+    }
+
     protected final void setPktBufLen(PacketDataBuffer raw, int len) {
         if (raw == null) {
             raw = this.raw;
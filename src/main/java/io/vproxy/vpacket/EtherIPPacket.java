@@ -29,6 +29,40 @@ public class EtherIPPacket extends AbstractPacket implements PartialPacket {
         this.packet = packet;
     }
 
+    /**
+     * Encapsulate <code>packet</code> into this etherip packet in place:
+     * the etherip header is written into the headroom in front of the raw bytes of <code>packet</code>,
+     * so the ethernet frame is neither moved nor copied.
+     *
+     * @return false if <code>packet</code> does not have 2 bytes of headroom, nothing is changed in this case,
+     * use {@link #setPacket(EthernetPacket)} instead
+     */
+    public boolean encapsulate(EthernetPacket packet) {
+        var header = encapsulateInHeadroom(packet, 2);
+        if (header == null) {
+            return false;
+        }
+        header.set(0, (byte) (version << 4)).set(1, (byte) 0);
+        this.packet = packet;
+        return true;
+    }
+
+    /**
+     * Detach and return the inner ethernet packet, which keeps its raw bytes in the original buffer,
+     * and the etherip header becomes the headroom of the ethernet packet.<br>
+     * This packet has no inner packet after calling this method.
+     */
+    public EthernetPacket decapsulate() {
+        var packet = this.packet;
+        if (packet == null) {
+            return null;
+        }
+        clearRawPacket();
+        packet.recordParent(null);
+        this.packet = null;
+        return packet;
+    }
+
     @Override
     public String initPartial(PacketDataBuffer raw) {
         ByteArray bytes = raw.pktBuf;
@@ -42,6 +76,7 @@ public class EtherIPPacket extends AbstractPacket implements PartialPacket {
             return err;
         }
         ether.recordParent(this);
+        this.packet = ether;
 
         this.raw = raw;
         return null;
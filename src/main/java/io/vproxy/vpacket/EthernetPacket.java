@@ -24,43 +24,66 @@ public class EthernetPacket extends AbstractPacket {
 
     public String from(PacketDataBuffer raw, boolean allowPartial) {
         ByteArray bytes = raw.pktBuf;
-        String err = from(bytes, null);
+        // mac addresses are decoded on first access in partial mode
+        String err = initHeader(bytes, !allowPartial);
         if (err != null) {
             return err;
         }
-        PacketDataBuffer data;
+        PacketDataBuffer data = upperLayerBuffer(raw);
+        AbstractPacket packet = newUpperLayerPacket();
+        boolean partial = allowPartial && packet instanceof PartialPacket;
+        if (partial) {
+            err = ((PartialPacket) packet).initPartial(data);
+        } else {
+            err = packet.from(data);
+        }
+        return upperLayerDone(raw, data, packet, partial, err);
+    }
+
+    // the following methods are the steps of from(raw, allowPartial), also used by PacketBatchParser
+
+    String initHeader(ByteArray bytes, boolean decodeMacs) {
+        return from(bytes, null, decodeMacs);
+    }
+
+    PacketDataBuffer upperLayerBuffer(PacketDataBuffer raw) {
         if (vlan < 0) {
-            data = raw.sub(14);
+            return subBuffer(raw, 14);
         } else {
             // with vlan tag
-            data = raw.sub(18);
+            return subBuffer(raw, 18);
         }
+    }
+
+    AbstractPacket newUpperLayerPacket() {
         AbstractPacket packet;
-        boolean isIPPacket = false;
         if (type == Consts.ETHER_TYPE_ARP) {
             packet = new ArpPacket();
         } else if (type == Consts.ETHER_TYPE_IPv4) {
-            isIPPacket = true;
-            packet = new Ipv4Packet();
+            packet = PacketArena.ipv4(arena);
         } else if (type == Consts.ETHER_TYPE_IPv6) {
-            isIPPacket = true;
-            packet = new Ipv6Packet();
+            packet = PacketArena.ipv6(arena);
         } else {
-            packet = new PacketBytes();
+            packet = PacketArena.packetBytes(arena);
         }
         packet.recordParent(this);
-        if (allowPartial && packet instanceof PartialPacket) {
-            err = ((PartialPacket) packet).initPartial(data);
-            if (err == null) {
+        return packet;
+    }
+
+    /**
+     * @param partial whether the upper layer packet is parsed with initPartial
+     * @param err     the result of parsing the upper layer packet
+     * @return the result of parsing this packet
+     */
+    String upperLayerDone(PacketDataBuffer raw, PacketDataBuffer data, AbstractPacket packet, boolean partial, String err) {
+        if (err == null) {
+            if (partial) {
                 this.packetBytes = data;
             }
         } else {
-            err = packet.from(data);
-        }
-        if (err != null) {
-            if (isIPPacket) {
+            if (type == Consts.ETHER_TYPE_IPv4 || type == Consts.ETHER_TYPE_IPv6) {
                 Logger.warn(LogType.SYS_ERROR, "got l3 packet unable to parse, type=" + type + ", packet=" + data.pktBuf.toHexString() + ": " + err);
-                packet = new PacketBytes();
+                packet = PacketArena.packetBytes(arena);
                 packet.from(data);
             } else {
                 return err;
@@ -73,11 +96,20 @@ public class EthernetPacket extends AbstractPacket {
     }
 
     public String from(ByteArray bytes, AbstractPacket packet) {
+        return from(bytes, packet, true);
+    }
+
+    private String from(ByteArray bytes, AbstractPacket packet, boolean decodeMacs) {
         if (bytes.length() < (6 /*dst*/ + 6 /*src*/ + 2 /*type*/)) {
             return "input packet length too short for a ethernet packet";
         }
-        dst = new MacAddress(bytes.sub(0, 6));
-        src = new MacAddress(bytes.sub(6, 6));
+        if (decodeMacs) {
+            dst = new MacAddress(bytes.sub(0, 6));
+            src = new MacAddress(bytes.sub(6, 6));
+        } else {
+            dst = null;
+            src = null;
+        }
         type = bytes.uint16(12);
         if (type == Consts.ETHER_TYPE_8021Q) {
             // handle 802.1q tag
@@ -127,6 +159,17 @@ public class EthernetPacket extends AbstractPacket {
         packet.updateChecksum();
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        dst = null;
+        src = null;
+        vlan = NO_VLAN_CODE;
+        type = 0;
+        packet = null;
+        packetBytes = null;
+    }
+
     public PacketDataBuffer getPacketBytes() {
         return packetBytes;
     }
@@ -141,8 +184,15 @@ public class EthernetPacket extends AbstractPacket {
         this.packetBytes = null;
     }
 
+    @Override
+    protected void ensureLazyFields() {
+        getDst();
+        getSrc();
+    }
+
     @Override
     public EthernetPacket copy() {
+        ensureLazyFields();
         var ret = new EthernetPacket();
         ret.dst = dst;
         ret.src = src;
@@ -160,8 +210,8 @@ public class EthernetPacket extends AbstractPacket {
     @Override
     public String description() {
         return "ether"
-            + ",dl_dst=" + dst
-            + ",dl_src=" + src
+            + ",dl_dst=" + getDst()
+            + ",dl_src=" + getSrc()
             + (vlan >= 0 ? ",vlan=" + vlan : "")
             + "," + packet.description();
     }
@@ -169,8 +219,8 @@ public class EthernetPacket extends AbstractPacket {
     @Override
     public String toString() {
         return "EthernetPacket{" +
-            "dst=" + dst +
-            ", src=" + src +
+            "dst=" + getDst() +
+            ", src=" + getSrc() +
             ", type=" + Utils.toHexString(type) +
             (vlan >= 0 ? ", vlan=" + vlan : "") +
             ", packet=" + packet +
@@ -178,6 +228,9 @@ public class EthernetPacket extends AbstractPacket {
     }
 
     public MacAddress getSrc() {
+        if (src == null && raw != null) {
+            src = new MacAddress(raw.pktBuf.sub(6, 6));
+        }
         return src;
     }
 
@@ -191,6 +244,9 @@ public class EthernetPacket extends AbstractPacket {
     }
 
     public MacAddress getDst() {
+        if (dst == null && raw != null) {
+            dst = new MacAddress(raw.pktBuf.sub(0, 6));
+        }
         return dst;
     }
 
@@ -254,6 +310,8 @@ public class EthernetPacket extends AbstractPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         EthernetPacket that = (EthernetPacket) o;
+        ensureLazyFields();
+        that.ensureLazyFields();
         return type == that.type &&
             Objects.equals(dst, that.dst) &&
             Objects.equals(src, that.src) &&
@@ -263,6 +321,7 @@ public class EthernetPacket extends AbstractPacket {
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(dst, src, type, packet);
     }
 }
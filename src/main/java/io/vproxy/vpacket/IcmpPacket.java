@@ -11,6 +11,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
     private int code;
     private int checksum;
     private ByteArray other;
+    private boolean lazyFieldsPending = false;
 
     private final boolean isIpv6;
 
@@ -22,9 +23,22 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
     public String initPartial(PacketDataBuffer raw) {
         this.raw = raw;
         type = raw.pktBuf.uint8(0);
+        this.lazyFieldsPending = true;
         return null;
     }
 
+    @Override
+    protected void ensureLazyFields() {
+        if (!lazyFieldsPending) {
+            return;
+        }
+        lazyFieldsPending = false;
+        ByteArray bytes = raw.pktBuf;
+        code = bytes.uint8(1);
+        checksum = bytes.uint16(2);
+        other = bytes.sub(4, bytes.length() - 4);
+    }
+
     @Override
     public String initPartial(int level) {
         return null;
@@ -42,6 +56,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
         other = bytes.sub(4, bytes.length() - 4);
 
         this.raw = raw;
+        this.lazyFieldsPending = false;
         return null;
     }
 
@@ -78,8 +93,19 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
         // do nothing
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        type = 0;
+        code = 0;
+        checksum = 0;
+        other = null;
+        lazyFieldsPending = false;
+    }
+
     @Override
     public IcmpPacket copy() {
+        ensureLazyFields();
         var ret = new IcmpPacket(isIpv6);
         ret.type = type;
         ret.code = code;
@@ -108,11 +134,8 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
 
         ByteArray ret = ByteArray.allocate(4).set(0, (byte) type).set(1, (byte) code)/*skip checksum here*/.concat(other);
 
-        ByteArray pseudoHeader = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_ICMPv6, ret.length());
-
         if ((flags & FLAG_CHECKSUM_UNNECESSARY) == 0) {
-            ByteArray toCalculate = pseudoHeader.concat(ret);
-            checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+            checksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_ICMPv6, ret);
             ret.int16(2, checksum);
             checksumCalculated();
         } else {
@@ -126,9 +149,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
             throw new UnsupportedOperationException("this packet is ICMP, not v6");
 
         raw.pktBuf.int16(2, 0);
-        ByteArray pseudoHeader = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_ICMPv6, raw.pktBuf.length());
-        ByteArray toCalculate = pseudoHeader.concat(raw.pktBuf);
-        checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+        checksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_ICMPv6, raw.pktBuf);
         raw.pktBuf.int16(2, checksum);
 
         checksumCalculated();
@@ -136,6 +157,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
 
     @Override
     public String toString() {
+        ensureLazyFields();
         return "IcmpPacket{" +
             "type=" + type +
             ", code=" + code +
@@ -154,6 +176,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
     }
 
     public int getCode() {
+        ensureLazyFields();
         return code;
     }
 
@@ -163,6 +186,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
     }
 
     public int getChecksum() {
+        ensureLazyFields();
         return checksum;
     }
 
@@ -172,6 +196,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
     }
 
     public ByteArray getOther() {
+        ensureLazyFields();
         return other;
     }
 
@@ -189,6 +214,8 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IcmpPacket that = (IcmpPacket) o;
+        ensureLazyFields();
+        that.ensureLazyFields();
         return type == that.type &&
             code == that.code &&
             checksum == that.checksum &&
@@ -198,6 +225,7 @@ public class IcmpPacket extends AbstractPacket implements PartialPacket {
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(type, code, checksum, other, isIpv6);
     }
 }
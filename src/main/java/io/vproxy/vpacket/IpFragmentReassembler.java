@@ -0,0 +1,384 @@
+package io.vproxy.vpacket;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.time.TimeElem;
+import io.vproxy.base.util.time.TimeQueue;
+import io.vproxy.vfd.IP;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Reassemble ipv4 fragments and ipv6 packets with fragment headers.<br>
+ * Fragments are grouped by (src, dst, identification, protocol), the protocol is not used for ipv6 (RFC 8200).
+ * The payload of each fragment is kept by reference, and the reassembled datagram is a
+ * {@link io.vproxy.base.util.bytearray.CompositeByteArray} of a copied ip header followed by the payloads,
+ * so no payload bytes are copied, except that a payload smaller than half of its buffer is copied into a compact array,
+ * which lets the buffer go. The buffers of the fragments must not be reused until the datagram is completed or dropped.<br>
+ * Memory is bounded: when the bytes held by incomplete datagrams exceed <code>maxBytes</code>,
+ * the least recently updated datagrams are dropped. Each fragment is charged with the bytes it keeps alive
+ * (the whole buffer of the fragment, or the copied payload) plus a fixed overhead,
+ * so floods of tiny fragments are bounded as well.
+ * An incomplete datagram is dropped when it's not completed in <code>timeout</code> millis after its first fragment.<br>
+ * A fragment overlapping with another fragment drops the whole datagram (RFC 5722), exact duplicates are ignored.<br>
+ * The reassembler is not thread safe.
+ */
+public class IpFragmentReassembler {
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_TIMEOUT = 30_000;
+    private static final int FRAGMENT_OVERHEAD = 64;
+    private static final int MAX_PAYLOAD = 65535;
+
+    private final long maxBytes;
+    private final int timeout;
+    private final TimeQueue<Datagram> timeQueue = TimeQueue.create(TimeQueue.Type.TIMING_WHEEL);
+    private final LinkedHashMap<Key, Datagram> datagrams = new LinkedHashMap<>(16, 0.75f, true);
+    private final Key lookupKey = new Key();
+    private long bytes = 0;
+    private long dropped = 0;
+
+    public IpFragmentReassembler() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_TIMEOUT);
+    }
+
+    public IpFragmentReassembler(long maxBytes, int timeout) {
+        if (maxBytes < MAX_PAYLOAD) {
+            throw new IllegalArgumentException("maxBytes " + maxBytes + " cannot hold a full datagram");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout = " + timeout + " <= 0");
+        }
+        this.maxBytes = maxBytes;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param current current timestamp millis
+     * @param ip      the ip packet, fully parsed or partially parsed
+     * @return <code>ip</code> itself if it's not a fragment,
+     * the reassembled and fully parsed packet if <code>ip</code> is the last missing fragment,
+     * or null if more fragments are required or the datagram is dropped
+     */
+    public AbstractIpPacket feed(long current, AbstractIpPacket ip) {
+        expire(current);
+        if (ip instanceof Ipv4Packet) {
+            return feedIpv4(current, (Ipv4Packet) ip);
+        } else if (ip instanceof Ipv6Packet) {
+            return feedIpv6(current, (Ipv6Packet) ip);
+        }
+        return ip;
+    }
+
+    private AbstractIpPacket feedIpv4(long current, Ipv4Packet ip) {
+        if (!ip.isFragment()) {
+            return ip;
+        }
+        ByteArray raw = ip.getRawPacket(AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        int headerLen = ip.getIhl() * 4;
+        int offset = ip.getFragmentOffset() * 8;
+        boolean more = (ip.getFlags() & 0b001) != 0;
+        ByteArray payload = raw.sub(headerLen, ip.getTotalLength() - headerLen);
+
+        var d = datagram(current, lookupKey.set(ip.getSrc(), ip.getDst(), ip.getIdentification(), ip.getProtocol()), false);
+        if (!add(d, offset, more, payload, ip.raw.fullbuf.length(), MAX_PAYLOAD - headerLen)) {
+            return null;
+        }
+        if (offset == 0) {
+            d.header = raw.sub(0, headerLen).copy(); // do not keep the buffer alive
+        }
+        return tryComplete(d);
+    }
+
+    private AbstractIpPacket feedIpv6(long current, Ipv6Packet ip) {
+        if (!ip.isFragment()) {
+            return ip;
+        }
+        var frag = ip.getFragmentHeader();
+        ByteArray raw = ip.getRawPacket(AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        // locate the fragment header and the next header field pointing to it
+        int fragOff = 40;
+        int nextHeaderField = 6;
+        for (var h : ip.getExtHeaders()) {
+            if (h == frag) {
+                break;
+            }
+            nextHeaderField = fragOff;
+            fragOff += h.length();
+        }
+        int offsetAndFlags = raw.uint16(fragOff + 2);
+        int offset = offsetAndFlags & 0xfff8;
+        boolean more = (offsetAndFlags & 0b001) != 0;
+        int id = raw.int32(fragOff + 4);
+        ByteArray payload = raw.sub(fragOff + 8, 40 + ip.getPayloadLength() - fragOff - 8);
+
+        var d = datagram(current, lookupKey.set(ip.getSrc(), ip.getDst(), id, 0), true);
+        if (!add(d, offset, more, payload, ip.raw.fullbuf.length(), MAX_PAYLOAD - (fragOff - 40))) {
+            return null;
+        }
+        if (offset == 0) {
+            // the unfragmentable part is kept, and the fragment header is removed
+            d.header = raw.sub(0, fragOff).copy();
+            d.nextHeaderField = nextHeaderField;
+            d.nextHeader = frag.getNextHeader();
+        }
+        return tryComplete(d);
+    }
+
+    private Datagram datagram(long current, Key key, boolean ipv6) {
+        var d = datagrams.get(key);
+        if (d != null && d.ipv6 == ipv6) {
+            return d;
+        }
+        if (d != null) {
+            // the same key for different ip versions, which should not happen
+            drop(d);
+        }
+        d = new Datagram(key.copy(), ipv6);
+        d.timer = timeQueue.add(current, timeout, d);
+        datagrams.put(d.key, d);
+        return d;
+    }
+
+    /**
+     * @param bufLen length of the buffer holding <code>payload</code>
+     * @return false if the fragment is ignored or the datagram is dropped
+     */
+    private boolean add(Datagram d, int offset, boolean more, ByteArray payload, int bufLen, int maxLen) {
+        int len = payload.length();
+        int end = offset + len;
+        if (end > maxLen) {
+            assert Logger.lowLevelDebug("fragment end " + end + " exceeds " + maxLen + ", drop " + d.key);
+            drop(d);
+            return false;
+        }
+        if (more) {
+            if (len == 0 || (len & 0b111) != 0) {
+                assert Logger.lowLevelDebug("fragment length " + len + " is not a positive multiple of 8, drop " + d.key);
+                drop(d);
+                return false;
+            }
+            if (d.totalLength != -1 && end > d.totalLength) {
+                assert Logger.lowLevelDebug("fragment end " + end + " exceeds total length " + d.totalLength + ", drop " + d.key);
+                drop(d);
+                return false;
+            }
+        } else {
+            if ((d.totalLength != -1 && d.totalLength != end) || d.maxEnd > end) {
+                assert Logger.lowLevelDebug("conflicting last fragment ending at " + end + ", drop " + d.key);
+                drop(d);
+                return false;
+            }
+            d.totalLength = end;
+        }
+
+        var fragments = d.fragments;
+        int i = fragments.size();
+        while (i > 0 && fragments.get(i - 1).offset > offset) {
+            --i;
+        }
+        if (i > 0) {
+            var prev = fragments.get(i - 1);
+            if (prev.offset == offset && prev.data.length() == len) {
+                return false; // duplicate
+            }
+            if (prev.offset + prev.data.length() > offset) {
+                assert Logger.lowLevelDebug("overlapping fragment at " + offset + ", drop " + d.key);
+                drop(d);
+                return false;
+            }
+        }
+        if (i < fragments.size() && fragments.get(i).offset < end) {
+            assert Logger.lowLevelDebug("overlapping fragment at " + offset + ", drop " + d.key);
+            drop(d);
+            return false;
+        }
+        // the payload keeps its whole buffer alive,
+        // copy it if it's small compared to the buffer, otherwise charge the buffer
+        long charge;
+        if (len < bufLen / 2) {
+            payload = payload.copy();
+            charge = len + FRAGMENT_OVERHEAD;
+        } else {
+            charge = bufLen + FRAGMENT_OVERHEAD;
+        }
+        fragments.add(i, new Fragment(offset, payload));
+        d.received += len;
+        d.maxEnd = Math.max(d.maxEnd, end);
+        d.charged += charge;
+        bytes += charge;
+
+        while (bytes > maxBytes && !datagrams.isEmpty()) {
+            var eldest = datagrams.values().iterator().next();
+            assert Logger.lowLevelDebug("fragment buffer exceeds " + maxBytes + ", evict " + eldest.key);
+            drop(eldest);
+            if (eldest == d) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AbstractIpPacket tryComplete(Datagram d) {
+        // fragments never overlap, so the datagram is complete when the received length equals to the total length
+        if (d.header == null || d.totalLength == -1 || d.received != d.totalLength) {
+            return null;
+        }
+        remove(d);
+
+        ByteArray header = d.header; // already copied
+        AbstractIpPacket ip;
+        if (d.ipv6) {
+            header.int16(4, header.length() - 40 + d.totalLength);
+            header.set(d.nextHeaderField, (byte) d.nextHeader);
+            ip = new Ipv6Packet();
+        } else {
+            header.int16(2, header.length() + d.totalLength);
+            header.int16(6, header.uint16(6) & 0xc000); // clear more fragments flag and fragment offset
+            header.int16(10, 0);
+            header.int16(10, Utils.calculateChecksum(header, header.length()));
+            ip = new Ipv4Packet();
+        }
+        ByteArray datagram = header;
+        for (var f : d.fragments) {
+            datagram = datagram.concat(f.data);
+        }
+        String err = ip.from(new PacketDataBuffer(datagram));
+        if (err != null) {
+            assert Logger.lowLevelDebug("failed to parse the reassembled datagram " + d.key + ": " + err);
+            ++dropped;
+            return null;
+        }
+        return ip;
+    }
+
+    private void remove(Datagram d) {
+        datagrams.remove(d.key);
+        d.timer.removeSelf();
+        bytes -= d.charged;
+    }
+
+    private void drop(Datagram d) {
+        remove(d);
+        ++dropped;
+    }
+
+    /**
+     * Drop incomplete datagrams which are timed-out, this is also called by {@link #feed(long, AbstractIpPacket)}.
+     *
+     * @param current current timestamp millis
+     */
+    public void expire(long current) {
+        while (timeQueue.nextTime(current) == 0) {
+            var d = timeQueue.poll();
+            assert Logger.lowLevelDebug("fragments timed-out: " + d.key);
+            datagrams.remove(d.key);
+            bytes -= d.charged;
+            ++dropped;
+        }
+    }
+
+    /**
+     * @return time left to the nearest timeout, see {@link TimeQueue#nextTime(long)}
+     */
+    public int nextTimeout(long current) {
+        return timeQueue.nextTime(current);
+    }
+
+    /**
+     * @return number of incomplete datagrams
+     */
+    public int size() {
+        return datagrams.size();
+    }
+
+    /**
+     * @return bytes charged for the incomplete datagrams
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of datagrams dropped because of timeout, eviction or invalid fragments
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void clear() {
+        while (!timeQueue.isEmpty()) {
+            timeQueue.poll();
+        }
+        datagrams.clear();
+        bytes = 0;
+    }
+
+    private static final class Key {
+        IP src;
+        IP dst;
+        int id;
+        int protocol;
+
+        Key set(IP src, IP dst, int id, int protocol) {
+            this.src = src;
+            this.dst = dst;
+            this.id = id;
+            this.protocol = protocol;
+            return this;
+        }
+
+        Key copy() {
+            return new Key().set(src, dst, id, protocol);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return id == key.id && protocol == key.protocol && src.equals(key.src) && dst.equals(key.dst);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(src, dst, id, protocol);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + src.formatToIPString() + " -> " + dst.formatToIPString() + ", id=" + id + ", protocol=" + protocol + ")";
+        }
+    }
+
+    private static final class Fragment {
+        final int offset;
+        final ByteArray data;
+
+        Fragment(int offset, ByteArray data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private static final class Datagram {
+        final Key key;
+        final boolean ipv6;
+        final ArrayList<Fragment> fragments = new ArrayList<>();
+        TimeElem<Datagram> timer;
+        ByteArray header; // header of the first fragment, null if it's not received yet
+        int nextHeaderField; // ipv6 only, offset of the next header field pointing to the fragment header
+        int nextHeader; // ipv6 only, next header of the fragment header
+        int totalLength = -1; // payload length of the datagram, -1 if the last fragment is not received yet
+        int maxEnd = 0;
+        int received = 0;
+        long charged = 0;
+
+        Datagram(Key key, boolean ipv6) {
+            this.key = key;
+            this.ipv6 = ipv6;
+        }
+    }
+}
@@ -10,6 +10,8 @@ import io.vproxy.vfd.IPv4;
 import java.util.Objects;
 
 public class Ipv4Packet extends AbstractIpPacket {
+    private static final ByteArray EMPTY_OPTIONS = ByteArray.allocate(0);
+
     private int version;
     private int ihl; // Internet Header Length
     private int dscp; // Differentiated Services Code Point
@@ -23,11 +25,30 @@ public class Ipv4Packet extends AbstractIpPacket {
     private int headerChecksum;
     private IPv4 src;
     private IPv4 dst;
-    private ByteArray options = ByteArray.allocate(0);
+    private ByteArray options = EMPTY_OPTIONS;
     private AbstractPacket packet;
+    private boolean lazyFieldsPending = false;
+    private boolean upperLayerCreated = false;
 
     @Override
     public String initPartial(PacketDataBuffer raw) {
+        String err = initPartialHeader(raw);
+        if (err != null) {
+            return err;
+        }
+        var upper = partialUpperLayer(raw);
+        if (upper != null) {
+            err = ((PartialPacket) packet).initPartial(upper);
+            if (err != null) {
+                return err;
+            }
+        }
+        initPartialDone(raw);
+        return null;
+    }
+
+    @Override
+    String initPartialHeader(PacketDataBuffer raw) {
         ByteArray bytes = raw.pktBuf;
         if (bytes.length() < 20) {
             return "input packet length too short for an ip packet";
@@ -48,20 +69,57 @@ public class Ipv4Packet extends AbstractIpPacket {
             return "totalLength(" + totalLength + ") > input.length(" + bytes.length() + ")";
         }
         protocol = bytes.uint8(9);
-        ByteArray srcBytes = bytes.sub(12, 4);
-        src = IP.fromIPv4(srcBytes.toJavaArray());
-        ByteArray dstBytes = bytes.sub(16, 4);
-        dst = IP.fromIPv4(dstBytes.toJavaArray());
-        String err = initUpperLayerPacket(raw.sub(ihl * 4, totalLength - ihl * 4));
-        if (err != null) {
-            return err;
-        }
         ttl = bytes.uint8(8);
+        // src and dst and other fields are decoded on first access
+        src = null;
+        dst = null;
+        upperLayerCreated = initUpperLayerPacket((bytes.uint16(6) & 0x3fff) != 0);
+        return null;
+    }
 
-        this.raw = raw;
+    @Override
+    PacketDataBuffer partialUpperLayer(PacketDataBuffer raw) {
+        if (upperLayerCreated && packet instanceof PartialPacket) {
+            return subBuffer(raw, ihl * 4, totalLength - ihl * 4);
+        }
+        if (upperLayerCreated && packet instanceof PacketBytes) {
+            // e.g. fragments, the bytes are simply referenced
+            packet.from(subBuffer(raw, ihl * 4, totalLength - ihl * 4));
+        }
         return null;
     }
 
+    @Override
+    void initPartialDone(PacketDataBuffer raw) {
+        this.raw = raw;
+        this.lazyFieldsPending = true;
+    }
+
+    @Override
+    protected void ensureLazyFields() {
+        if (!lazyFieldsPending) {
+            return;
+        }
+        lazyFieldsPending = false;
+        ByteArray bytes = raw.pktBuf;
+        version = (bytes.uint8(0) >> 4) & 0xff;
+        int dscpAndECN = bytes.uint8(1);
+        dscp = (dscpAndECN >> 2) & 0xff;
+        ecn = dscpAndECN & 0b00000011;
+        identification = bytes.uint16(4);
+        int flagsAndFragmentOffset = bytes.uint16(6);
+        flags = (flagsAndFragmentOffset >> 13) & 0b111;
+        fragmentOffset = flagsAndFragmentOffset & 0x1fff;
+        headerChecksum = bytes.uint16(10);
+        getSrc();
+        getDst();
+        if (ihl > 5) {
+            options = bytes.sub(20, ihl * 4 - 20);
+        } else {
+            options = EMPTY_OPTIONS;
+        }
+    }
+
     @Override
     public String initPartial(int level) {
         if (packet instanceof PartialPacket) {
@@ -107,11 +165,9 @@ public class Ipv4Packet extends AbstractIpPacket {
 
         // 4-7
         identification = bytes.uint16(4);
-        int flagsAndFragmentOffsetFirstByte = bytes.get(6);
-        flags = (flagsAndFragmentOffsetFirstByte >> 5) & 0xff;
-        int fragmentOffsetFirstByte = flagsAndFragmentOffsetFirstByte & 0b00011111;
-        int fragmentOffsetSecondByte = bytes.get(7);
-        fragmentOffset = (fragmentOffsetFirstByte << 8) | fragmentOffsetSecondByte;
+        int flagsAndFragmentOffset = bytes.uint16(6);
+        flags = (flagsAndFragmentOffset >> 13) & 0b111;
+        fragmentOffset = flagsAndFragmentOffset & 0x1fff;
 
         // 8-11
         ttl = bytes.uint8(8);
@@ -128,45 +184,46 @@ public class Ipv4Packet extends AbstractIpPacket {
         if (ihl > 5) {
             options = bytes.sub(20, ihl * 4 - 20);
         } else {
-            options = ByteArray.allocate(0);
+            options = EMPTY_OPTIONS;
         }
 
         // packet
-        PacketDataBuffer bytesForPacket = raw.sub(ihl * 4, totalLength - ihl * 4);
-        initUpperLayerPacket(null);
+        PacketDataBuffer bytesForPacket = subBuffer(raw, ihl * 4, totalLength - ihl * 4);
+        initUpperLayerPacket((flags & 0b001) != 0 || fragmentOffset != 0);
         String err = packet.from(bytesForPacket);
         if (err != null) {
             return err;
         }
 
         this.raw = raw;
+        this.lazyFieldsPending = false;
 
         return null;
     }
 
-    private String initUpperLayerPacket(PacketDataBuffer raw) {
+    /**
+     * @return false if the upper layer packet is already set
+     */
+    private boolean initUpperLayerPacket(boolean fragment) {
         if (packet != null) {
-            return null;
+            return false;
         }
-        if (protocol == Consts.IP_PROTOCOL_ICMP) {
-            packet = new IcmpPacket(false);
+        if (fragment) {
+            // the payload of a fragment is not a complete upper layer packet
+            packet = PacketArena.packetBytes(arena);
+        } else if (protocol == Consts.IP_PROTOCOL_ICMP) {
+            packet = PacketArena.icmp(arena, false);
         } else if (protocol == Consts.IP_PROTOCOL_TCP) {
-            packet = new TcpPacket();
+            packet = PacketArena.tcp(arena);
         } else if (protocol == Consts.IP_PROTOCOL_UDP) {
-            packet = new UdpPacket();
+            packet = PacketArena.udp(arena);
         } else if (protocol == Consts.IP_PROTOCOL_ETHERIP) {
             packet = new EtherIPPacket();
         } else {
-            packet = new PacketBytes();
-        }
-        if (raw != null && packet instanceof PartialPacket) {
-            String err = ((PartialPacket) packet).initPartial(raw);
-            if (err != null) {
-                return err;
-            }
+            packet = PacketArena.packetBytes(arena);
         }
         packet.recordParent(this);
-        return null;
+        return true;
     }
 
     @Override
@@ -237,14 +294,51 @@ public class Ipv4Packet extends AbstractIpPacket {
         }
     }
 
-    private void pseudoHeaderChanges() {
-        if (packet instanceof TcpPacket || packet instanceof UdpPacket) {
-            packet.checksumSkipped();
+    private void headerChanges32(int oldValue, int newValue) {
+        if (isRequireUpdatingChecksum()) {
+            return;
         }
+        int cksum = Utils.incrementalChecksum32(raw.pktBuf.uint16(10), oldValue, newValue);
+        raw.pktBuf.int16(10, cksum);
+        headerChecksum = cksum;
+    }
+
+    private void pseudoHeaderChanges(IPv4 old, int oldRaw, IPv4 now) {
+        if (packet instanceof TransportPacket) {
+            if (raw != null) {
+                ((TransportPacket) packet).checksumFieldChanges32(oldRaw, now.getIPv4Value());
+            } else if (old != null) {
+                ((TransportPacket) packet).checksumFieldChanges32(old.getIPv4Value(), now.getIPv4Value());
+            } else {
+                packet.checksumSkipped();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        version = 0;
+        ihl = 0;
+        dscp = 0;
+        ecn = 0;
+        totalLength = 0;
+        identification = 0;
+        flags = 0;
+        fragmentOffset = 0;
+        ttl = 0;
+        protocol = 0;
+        headerChecksum = 0;
+        src = null;
+        dst = null;
+        options = EMPTY_OPTIONS;
+        packet = null;
+        lazyFieldsPending = false;
     }
 
     @Override
     public Ipv4Packet copy() {
+        ensureLazyFields();
         var ret = new Ipv4Packet();
         ret.version = version;
         ret.ihl = ihl;
@@ -275,8 +369,8 @@ public class Ipv4Packet extends AbstractIpPacket {
     @Override
     public String description() {
         return "ip"
-            + ",nw_src=" + (src == null ? "not-parsed-yet" : src.formatToIPString())
-            + ",nw_dst=" + (dst == null ? "not-parsed-yet" : dst.formatToIPString())
+            + ",nw_src=" + (getSrc() == null ? "not-parsed-yet" : src.formatToIPString())
+            + ",nw_dst=" + (getDst() == null ? "not-parsed-yet" : dst.formatToIPString())
             + "," + (packet == null ? "not-parsed-yet" : packet.description());
     }
 
@@ -298,6 +392,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int calculateChecksum() {
+        ensureLazyFields();
         return calculateChecksum(genHeaderWithChecksumUnfilled());
     }
 
@@ -307,6 +402,7 @@ public class Ipv4Packet extends AbstractIpPacket {
 
     @Override
     public String toString() {
+        ensureLazyFields();
         return "Ipv4Packet{" +
             "version=" + version +
             ", ihl=" + ihl +
@@ -327,6 +423,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getVersion() {
+        ensureLazyFields();
         return version;
     }
 
@@ -345,6 +442,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getDscp() {
+        ensureLazyFields();
         return dscp;
     }
 
@@ -354,6 +452,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getEcn() {
+        ensureLazyFields();
         return ecn;
     }
 
@@ -372,6 +471,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getIdentification() {
+        ensureLazyFields();
         return identification;
     }
 
@@ -381,6 +481,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getFlags() {
+        ensureLazyFields();
         return flags;
     }
 
@@ -389,7 +490,16 @@ public class Ipv4Packet extends AbstractIpPacket {
         this.flags = flags;
     }
 
+    /**
+     * @return true if the more fragments flag is set or the fragment offset is not 0
+     * @see IpFragmentReassembler
+     */
+    public boolean isFragment() {
+        return (getFlags() & 0b001) != 0 || getFragmentOffset() != 0;
+    }
+
     public int getFragmentOffset() {
+        ensureLazyFields();
         return fragmentOffset;
     }
 
@@ -404,8 +514,13 @@ public class Ipv4Packet extends AbstractIpPacket {
 
     public void setTtl(int ttl) {
         if (raw != null) {
+            int old = raw.pktBuf.uint16(8);
             raw.pktBuf.set(8, (byte) ttl);
-            checksumSkipped();
+            if (!isRequireUpdatingChecksum()) {
+                int cksum = Utils.incrementalChecksum(raw.pktBuf.uint16(10), old, raw.pktBuf.uint16(8));
+                raw.pktBuf.int16(10, cksum);
+                headerChecksum = cksum;
+            }
         }
         this.ttl = ttl;
     }
@@ -421,6 +536,7 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public int getHeaderChecksum() {
+        ensureLazyFields();
         return headerChecksum;
     }
 
@@ -431,37 +547,64 @@ public class Ipv4Packet extends AbstractIpPacket {
 
     @Override
     public IPv4 getSrc() {
+        if (src == null && raw != null) {
+            src = IP.fromIPv4(raw.pktBuf.sub(12, 4).toNewJavaArray());
+        }
         return this.src;
     }
 
+    /**
+     * Same as <code>getSrc().getIPv4Value()</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public int getSrcIPv4Value() {
+        if (raw != null) {
+            return raw.pktBuf.int32(12);
+        }
+        return src.getIPv4Value();
+    }
+
     public void setSrc(IPv4 src) {
+        int old = 0;
         if (raw != null) {
-            for (int i = 0; i < 4; ++i) {
-                raw.pktBuf.set(12 + i, src.getAddress()[i]);
-            }
-            checksumSkipped();
+            old = raw.pktBuf.int32(12);
+            raw.pktBuf.int32(12, src.getIPv4Value());
+            headerChanges32(old, src.getIPv4Value());
         }
-        pseudoHeaderChanges();
+        pseudoHeaderChanges(this.src, old, src);
         this.src = src;
     }
 
     @Override
     public IPv4 getDst() {
+        if (dst == null && raw != null) {
+            dst = IP.fromIPv4(raw.pktBuf.sub(16, 4).toNewJavaArray());
+        }
         return this.dst;
     }
 
+    /**
+     * Same as <code>getDst().getIPv4Value()</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public int getDstIPv4Value() {
+        if (raw != null) {
+            return raw.pktBuf.int32(16);
+        }
+        return dst.getIPv4Value();
+    }
+
     public void setDst(IPv4 dst) {
+        int old = 0;
         if (raw != null) {
-            for (int i = 0; i < 4; ++i) {
-                raw.pktBuf.set(16 + i, dst.getAddress()[i]);
-            }
-            checksumSkipped();
+            old = raw.pktBuf.int32(16);
+            raw.pktBuf.int32(16, dst.getIPv4Value());
+            headerChanges32(old, dst.getIPv4Value());
         }
-        pseudoHeaderChanges();
+        pseudoHeaderChanges(this.dst, old, dst);
         this.dst = dst;
     }
 
     public ByteArray getOptions() {
+        ensureLazyFields();
         return options;
     }
 
@@ -507,6 +650,8 @@ public class Ipv4Packet extends AbstractIpPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Ipv4Packet that = (Ipv4Packet) o;
+        ensureLazyFields();
+        that.ensureLazyFields();
         return version == that.version &&
             ihl == that.ihl &&
             dscp == that.dscp &&
@@ -526,6 +671,7 @@ public class Ipv4Packet extends AbstractIpPacket {
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(version, ihl, dscp, ecn, totalLength, identification, flags, fragmentOffset, ttl, protocol, headerChecksum, src, dst, options, packet);
     }
 }
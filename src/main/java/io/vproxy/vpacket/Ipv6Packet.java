@@ -22,18 +22,45 @@ public class Ipv6Packet extends AbstractIpPacket {
     private IPv6 dst;
     private List<ExtHeader> extHeaders = Collections.emptyList();
     private AbstractPacket packet;
+    private boolean lazyFieldsPending = false;
+    private boolean upperLayerCreated = false;
 
     @Override
     public String initPartial(PacketDataBuffer raw) {
+        if (needsFullParse(raw)) {
+            return from(raw); // must run a full load to ensure the upper level packet is parsed
+        }
+        String err = initPartialHeader(raw);
+        if (err != null) {
+            return err;
+        }
+        var upper = partialUpperLayer(raw);
+        if (upper != null) {
+            err = ((PartialPacket) packet).initPartial(upper);
+            if (err != null) {
+                return err;
+            }
+        }
+        initPartialDone(raw);
+        return null;
+    }
+
+    /**
+     * @return true if the packet has extension headers, the partial parsing steps cannot be used in this case
+     */
+    static boolean needsFullParse(PacketDataBuffer raw) {
+        ByteArray bytes = raw.pktBuf;
+        return bytes.length() >= 40 && Consts.IPv6_needs_next_header.contains(bytes.uint8(6));
+    }
+
+    @Override
+    String initPartialHeader(PacketDataBuffer raw) {
         ByteArray bytes = raw.pktBuf;
         if (bytes.length() < 40) {
             return "input packet length too short for an ipv6 packet";
         }
 
         nextHeader = bytes.uint8(6);
-        if (Consts.IPv6_needs_next_header.contains(nextHeader)) {
-            return from(raw); // must run a full load to ensure the upper level packet is parsed
-        }
         extHeaders = Collections.emptyList();
 
         payloadLength = bytes.uint16(4);
@@ -44,20 +71,44 @@ public class Ipv6Packet extends AbstractIpPacket {
             return "40+payloadLength(" + payloadLength + ") > input.length(" + bytes.length() + ")";
         }
 
-        ByteArray srcBytes = bytes.sub(8, 16);
-        ByteArray dstBytes = bytes.sub(24, 16);
-        src = IP.fromIPv6(srcBytes.toJavaArray());
-        dst = IP.fromIPv6(dstBytes.toJavaArray());
-        String err = initUpperLayerPacket(nextHeader, raw.sub(40, payloadLength));
-        if (err != null) {
-            return err;
-        }
         hopLimit = bytes.uint8(7);
+        // src and dst and other fields are decoded on first access
+        src = null;
+        dst = null;
+        upperLayerCreated = initUpperLayerPacket(nextHeader, false);
+        return null;
+    }
 
-        this.raw = raw;
+    @Override
+    PacketDataBuffer partialUpperLayer(PacketDataBuffer raw) {
+        if (upperLayerCreated && packet instanceof PartialPacket) {
+            return subBuffer(raw, 40, payloadLength);
+        }
         return null;
     }
 
+    @Override
+    void initPartialDone(PacketDataBuffer raw) {
+        this.raw = raw;
+        this.lazyFieldsPending = true;
+    }
+
+    @Override
+    protected void ensureLazyFields() {
+        if (!lazyFieldsPending) {
+            return;
+        }
+        lazyFieldsPending = false;
+        ByteArray bytes = raw.pktBuf;
+        byte b0 = bytes.get(0);
+        byte b1 = bytes.get(1);
+        // the version field is used to indicate parsing done, so it's not assigned here
+        trafficClass = ((b0 << 4) & 0xf0) | ((b1 >> 4) & 0x0f);
+        flowLabel = ((b1 & 0x0f) << 16) | bytes.uint16(2);
+        getSrc();
+        getDst();
+    }
+
     @Override
     public String initPartial(int level) {
         if (packet instanceof PartialPacket) {
@@ -133,11 +184,11 @@ public class Ipv6Packet extends AbstractIpPacket {
                     return "invalid packet length too short for next header";
                 }
                 skipLengthForExtHeaders += len;
-                xhBuf = xhBuf.sub(0, len);
+                xhBuf = xhBuf.sub(len, xhBuf.length() - len);
             }
         }
 
-        PacketDataBuffer bytesForPacket = raw.sub(40 + skipLengthForExtHeaders, bytes.length() - 40 - skipLengthForExtHeaders);
+        PacketDataBuffer bytesForPacket = subBuffer(raw, 40 + skipLengthForExtHeaders, bytes.length() - 40 - skipLengthForExtHeaders);
         int protocol = nextHeader;
         if (!extHeaders.isEmpty()) {
             protocol = extHeaders.get(extHeaders.size() - 1).nextHeader;
@@ -147,7 +198,7 @@ public class Ipv6Packet extends AbstractIpPacket {
                 return "invalid packet: getting next header " + protocol + "(NO_NEXT_HEADER) but the input bytes length for next packet is not 0";
             }
         }
-        initUpperLayerPacket(protocol, null);
+        initUpperLayerPacket(protocol, isFragment());
         String err = packet.from(bytesForPacket);
         if (err != null) {
             return err;
@@ -155,33 +206,34 @@ public class Ipv6Packet extends AbstractIpPacket {
 
         this.version = version; // the version field is used to indicate parsing done, so assign it last
         this.raw = raw;
+        this.lazyFieldsPending = false;
 
         return null;
     }
 
-    private String initUpperLayerPacket(int protocol, PacketDataBuffer raw) {
+    /**
+     * @return false if the upper layer packet is already set
+     */
+    private boolean initUpperLayerPacket(int protocol, boolean fragment) {
         if (packet != null) {
-            return null;
+            return false;
         }
-        if (protocol == Consts.IP_PROTOCOL_ICMP || protocol == Consts.IP_PROTOCOL_ICMPv6) {
-            packet = new IcmpPacket(protocol == Consts.IP_PROTOCOL_ICMPv6);
+        if (fragment) {
+            // the payload of a fragment is not a complete upper layer packet
+            packet = PacketArena.packetBytes(arena);
+        } else if (protocol == Consts.IP_PROTOCOL_ICMP || protocol == Consts.IP_PROTOCOL_ICMPv6) {
+            packet = PacketArena.icmp(arena, protocol == Consts.IP_PROTOCOL_ICMPv6);
         } else if (protocol == Consts.IP_PROTOCOL_TCP) {
-            packet = new TcpPacket();
+            packet = PacketArena.tcp(arena);
         } else if (protocol == Consts.IP_PROTOCOL_UDP) {
-            packet = new UdpPacket();
+            packet = PacketArena.udp(arena);
         } else if (protocol == Consts.IP_PROTOCOL_ETHERIP) {
             packet = new EtherIPPacket();
         } else {
-            packet = new PacketBytes();
-        }
-        if (raw != null && packet instanceof PartialPacket) {
-            String err = ((PartialPacket) packet).initPartial(raw);
-            if (err != null) {
-                return err;
-            }
+            packet = PacketArena.packetBytes(arena);
         }
         packet.recordParent(this);
-        return null;
+        return true;
     }
 
     @Override
@@ -238,14 +290,33 @@ public class Ipv6Packet extends AbstractIpPacket {
         }
     }
 
-    private void pseudoHeaderChanges() {
-        if (packet instanceof IcmpPacket || packet instanceof TcpPacket || packet instanceof UdpPacket) {
+    private void pseudoHeaderChanges(ByteArray old, IPv6 now) {
+        if (packet instanceof TransportPacket && old != null) {
+            ((TransportPacket) packet).checksumFieldChanges(old, now.bytes);
+        } else if (packet instanceof IcmpPacket || packet instanceof TransportPacket) {
             packet.checksumSkipped();
         }
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        version = 0;
+        trafficClass = 0;
+        flowLabel = 0;
+        payloadLength = 0;
+        nextHeader = 0;
+        hopLimit = 0;
+        src = null;
+        dst = null;
+        extHeaders = Collections.emptyList();
+        packet = null;
+        lazyFieldsPending = false;
+    }
+
     @Override
     public Ipv6Packet copy() {
+        ensureLazyFields();
         var ret = new Ipv6Packet();
         ret.version = version;
         ret.trafficClass = trafficClass;
@@ -284,13 +355,14 @@ public class Ipv6Packet extends AbstractIpPacket {
     @Override
     public String description() {
         return "ipv6"
-            + ",ipv6_src=" + (src == null ? "not-parsed-yet" : src.formatToIPString())
-            + ",ipv6_dst=" + (dst == null ? "not-parsed-yet" : dst.formatToIPString())
+            + ",ipv6_src=" + (getSrc() == null ? "not-parsed-yet" : src.formatToIPString())
+            + ",ipv6_dst=" + (getDst() == null ? "not-parsed-yet" : dst.formatToIPString())
             + "," + (packet == null ? "not-parsed-yet" : packet.description());
     }
 
     @Override
     public String toString() {
+        ensureLazyFields();
         return "Ipv6Packet{" +
             "version=" + version +
             ", trafficClass=" + trafficClass +
@@ -315,6 +387,7 @@ public class Ipv6Packet extends AbstractIpPacket {
     }
 
     public int getTrafficClass() {
+        ensureLazyFields();
         return trafficClass;
     }
 
@@ -324,6 +397,7 @@ public class Ipv6Packet extends AbstractIpPacket {
     }
 
     public int getFlowLabel() {
+        ensureLazyFields();
         return flowLabel;
     }
 
@@ -371,31 +445,79 @@ public class Ipv6Packet extends AbstractIpPacket {
 
     @Override
     public IPv6 getSrc() {
+        if (src == null && raw != null) {
+            src = IP.fromIPv6(raw.pktBuf.sub(8, 16).toNewJavaArray());
+        }
         return src;
     }
 
+    /**
+     * Same as <code>getSrc().bytes.int64(0)</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public long getSrcHigh64() {
+        if (raw != null) {
+            return raw.pktBuf.int64(8);
+        }
+        return src.bytes.int64(0);
+    }
+
+    /**
+     * Same as <code>getSrc().bytes.int64(8)</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public long getSrcLow64() {
+        if (raw != null) {
+            return raw.pktBuf.int64(16);
+        }
+        return src.bytes.int64(8);
+    }
+
     public void setSrc(IPv6 src) {
+        // must be called before the raw packet is modified
+        pseudoHeaderChanges(raw != null ? raw.pktBuf.sub(8, 16) : (this.src == null ? null : this.src.bytes), src);
         if (raw != null) {
             for (int i = 0; i < 16; ++i) {
                 raw.pktBuf.set(8 + i, src.getAddress()[i]);
             }
         }
-        pseudoHeaderChanges();
         this.src = src;
     }
 
     @Override
     public IPv6 getDst() {
+        if (dst == null && raw != null) {
+            dst = IP.fromIPv6(raw.pktBuf.sub(24, 16).toNewJavaArray());
+        }
         return dst;
     }
 
+    /**
+     * Same as <code>getDst().bytes.int64(0)</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public long getDstHigh64() {
+        if (raw != null) {
+            return raw.pktBuf.int64(24);
+        }
+        return dst.bytes.int64(0);
+    }
+
+    /**
+     * Same as <code>getDst().bytes.int64(8)</code>, but reads the raw packet directly if possible, no object is allocated.
+     */
+    public long getDstLow64() {
+        if (raw != null) {
+            return raw.pktBuf.int64(32);
+        }
+        return dst.bytes.int64(8);
+    }
+
     public void setDst(IPv6 dst) {
+        // must be called before the raw packet is modified
+        pseudoHeaderChanges(raw != null ? raw.pktBuf.sub(24, 16) : (this.dst == null ? null : this.dst.bytes), dst);
         if (raw != null) {
             for (int i = 0; i < 16; ++i) {
                 raw.pktBuf.set(24 + i, dst.getAddress()[i]);
             }
         }
-        pseudoHeaderChanges();
         this.dst = dst;
     }
 
@@ -403,6 +525,30 @@ public class Ipv6Packet extends AbstractIpPacket {
         return extHeaders;
     }
 
+    /**
+     * @return the fragment header, or null if the packet does not have one
+     */
+    public ExtHeader getFragmentHeader() {
+        int type = nextHeader;
+        for (var h : extHeaders) {
+            if (type == Consts.IPv6_NEXT_HEADER_FRAGMENT) {
+                return h;
+            }
+            type = h.nextHeader;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the packet has a fragment header which is not an atomic fragment,
+     * i.e. the fragment offset is not 0 or the more fragments flag is set
+     * @see IpFragmentReassembler
+     */
+    public boolean isFragment() {
+        var h = getFragmentHeader();
+        return h != null && (h.other.uint16(0) & 0xfff9) != 0;
+    }
+
     public void setExtHeaders(List<ExtHeader> extHeaders) {
         clearRawPacket();
         this.extHeaders = extHeaders;
@@ -431,8 +577,7 @@ public class Ipv6Packet extends AbstractIpPacket {
         int n = 40;
         if (extHeaders != null) {
             for (var h : extHeaders) {
-                n += 8;
-                n += h.hdrExtLen;
+                n += h.length();
             }
         }
         return n;
@@ -454,15 +599,23 @@ public class Ipv6Packet extends AbstractIpPacket {
             }
             nextHeader = bytes.uint8(0);
             hdrExtLen = bytes.uint8(1);
-            if (bytes.length() < 8 + hdrExtLen) {
+            int len = length();
+            if (bytes.length() < len) {
                 return "input packet length too short for an ipv6 ext hdr packet";
             }
-            other = bytes.sub(2, 6 + hdrExtLen);
+            other = bytes.sub(2, len - 2);
 
-            raw = new PacketDataBuffer(bytes.sub(0, 8 + hdrExtLen));
+            raw = new PacketDataBuffer(bytes.sub(0, len));
             return null;
         }
 
+        /**
+         * @return length of the header in bytes, hdrExtLen is in 8-octet units, not including the first 8 octets
+         */
+        int length() {
+            return 8 + hdrExtLen * 8;
+        }
+
         @Override
         protected ByteArray buildPacket(int flags) {
             return ByteArray.allocate(2).set(0, (byte) nextHeader).set(1, (byte) hdrExtLen).concat(other);
@@ -549,6 +702,8 @@ public class Ipv6Packet extends AbstractIpPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Ipv6Packet that = (Ipv6Packet) o;
+        ensureLazyFields();
+        that.ensureLazyFields();
         return version == that.version &&
             trafficClass == that.trafficClass &&
             flowLabel == that.flowLabel &&
@@ -563,6 +718,7 @@ public class Ipv6Packet extends AbstractIpPacket {
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(version, trafficClass, flowLabel, payloadLength, nextHeader, hopLimit, src, dst, extHeaders, packet);
     }
 }
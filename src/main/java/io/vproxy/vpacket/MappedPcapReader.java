@@ -0,0 +1,470 @@
+package io.vproxy.vpacket;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.LogType;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.bytearray.ByteBufferByteArray;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read pcap or pcapng files from memory mapped chunks.<br>
+ * The file is mapped in chunks, and each chunk overlaps the next one, so a record almost always lies entirely inside
+ * one chunk, and the packets are parsed from views of the mapped memory, no bytes are copied.
+ * Only records larger than the overlap and crossing the chunk border are copied.<br>
+ * The mapped memory is read-only, the packets must not be modified unless {@link #setCopyPacket(boolean)} is enabled.<br>
+ * <br>
+ * Packets can be read one by one with {@link #next()}, or with a stream which can be split for parallel parsing:
+ * <pre>
+ * try (var reader = new MappedPcapReader(path)) {
+ *     reader.stream(true).forEach(pkt -> ...);
+ * }
+ * </pre>
+ * Splitting walks the record headers only, the packets are parsed by the thread consuming them.
+ */
+public class MappedPcapReader implements AutoCloseable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int CHUNK_OVERLAP = 1024 * 1024;
+    private static final long MIN_SPLIT_SIZE = 64 * 1024;
+
+    private static final int PCAPNG_SHB = 0x0A0D0D0A;
+    private static final int PCAPNG_IDB = 1;
+    private static final int PCAPNG_PB = 2; // obsolete packet block
+    private static final int PCAPNG_SPB = 3;
+    private static final int PCAPNG_EPB = 6;
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int chunkSize;
+    private final MappedByteBuffer[] chunks;
+
+    private final boolean pcapng;
+    private final PcapGlobalHeader globalHeader; // only for pcap
+    private final boolean littleEndian; // only for pcap
+    private final boolean nanos; // only for pcap
+
+    private boolean copyPacket = false;
+    private final Walker walker;
+
+    public MappedPcapReader(String filename) throws IOException {
+        this(Path.of(filename));
+    }
+
+    public MappedPcapReader(Path path) throws IOException {
+        this(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedPcapReader(Path path, int chunkSize) throws IOException {
+        if (chunkSize < 4096 || chunkSize > Integer.MAX_VALUE - CHUNK_OVERLAP) {
+            throw new IllegalArgumentException("invalid chunkSize: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            this.chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; ++i) {
+                long start = (long) i * chunkSize;
+                long len = Math.min(chunkSize + CHUNK_OVERLAP, size - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+            }
+
+            if (size < 4) {
+                throw new IllegalArgumentException("unable to read file header: EOF");
+            }
+            int magic = int32(0, false);
+            if (magic == PCAPNG_SHB) {
+                pcapng = true;
+                globalHeader = null;
+                littleEndian = false;
+                nanos = false;
+                walker = new Walker(0, size, null);
+            } else {
+                pcapng = false;
+                if (magic == 0xA1B2C3D4 || magic == 0xA1B23C4D) {
+                    littleEndian = false;
+                } else if (magic == 0xD4C3B2A1 || magic == 0x4D3CB2A1) {
+                    littleEndian = true;
+                    magic = Integer.reverseBytes(magic);
+                } else {
+                    throw new IllegalArgumentException("unknown magic number: " + Integer.toHexString(magic));
+                }
+                nanos = magic == 0xA1B23C4D;
+                if (size < 24) {
+                    throw new IllegalArgumentException("unable to read global header: EOF");
+                }
+                globalHeader = new PcapGlobalHeader(
+                    magic,
+                    uint16(4, littleEndian),
+                    uint16(6, littleEndian),
+                    int32(8, littleEndian),
+                    int32(12, littleEndian),
+                    int32(16, littleEndian),
+                    int32(20, littleEndian)
+                );
+                walker = new Walker(24, size, null);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean isPcapng() {
+        return pcapng;
+    }
+
+    /**
+     * @return the global header of a pcap file, or null for pcapng files
+     */
+    public PcapGlobalHeader getGlobalHeader() {
+        return globalHeader;
+    }
+
+    public boolean isCopyPacket() {
+        return copyPacket;
+    }
+
+    public void setCopyPacket(boolean copyPacket) {
+        this.copyPacket = copyPacket;
+    }
+
+    // return null when eof
+    public PcapPacket next() {
+        return walker.advance();
+    }
+
+    /**
+     * @return a spliterator from the current position of {@link #next()} to the end of the file,
+     * the estimated size is the number of remaining bytes
+     */
+    public Spliterator<PcapPacket> spliterator() {
+        return new RecordSpliterator(walker.copy());
+    }
+
+    public Stream<PcapPacket> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer chunkOf(long off) {
+        return chunks[(int) (off / chunkSize)];
+    }
+
+    private int int32(long off, boolean littleEndian) {
+        int n = chunkOf(off).getInt((int) (off % chunkSize));
+        return littleEndian ? Integer.reverseBytes(n) : n;
+    }
+
+    private int uint16(long off, boolean littleEndian) {
+        short n = chunkOf(off).getShort((int) (off % chunkSize));
+        return (littleEndian ? Short.reverseBytes(n) : n) & 0xffff;
+    }
+
+    private int uint8(long off) {
+        return chunkOf(off).get((int) (off % chunkSize)) & 0xff;
+    }
+
+    private ByteArray bytes(long off, int len) {
+        var chunk = chunkOf(off);
+        int pos = (int) (off % chunkSize);
+        ByteArray ret;
+        if (pos + len <= chunk.capacity()) {
+            ret = new ByteBufferByteArray(chunk.duplicate().limit(pos + len).position(pos));
+            if (copyPacket) {
+                ret = ret.copy();
+            }
+        } else {
+            byte[] array = new byte[len];
+            var buf = ByteBuffer.wrap(array);
+            try {
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, off + buf.position()) < 0) {
+                        throw new IOException("unexpected EOF");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ret = ByteArray.from(array);
+        }
+        return ret;
+    }
+
+    private static final class Iface {
+        final int linkType;
+        final long tsUnitsPerSecond;
+
+        Iface(int linkType, long tsUnitsPerSecond) {
+            this.linkType = linkType;
+            this.tsUnitsPerSecond = tsUnitsPerSecond;
+        }
+    }
+
+    private static final class Section {
+        final boolean littleEndian;
+        final List<Iface> ifaces;
+
+        Section(boolean littleEndian, List<Iface> ifaces) {
+            this.littleEndian = littleEndian;
+            this.ifaces = ifaces;
+        }
+    }
+
+    /**
+     * Walks the records in [pos, end), records can only start at record boundaries.
+     */
+    private final class Walker {
+        private long pos;
+        private long end;
+        private Section section; // only for pcapng
+
+        Walker(long pos, long end, Section section) {
+            this.pos = pos;
+            this.end = end;
+            this.section = section;
+        }
+
+        Walker copy() {
+            return new Walker(pos, end,
+                section == null ? null : new Section(section.littleEndian, new ArrayList<>(section.ifaces)));
+        }
+
+        private void stop(String msg) {
+            Logger.warn(LogType.INVALID_EXTERNAL_DATA, msg + ", offset=" + pos);
+            pos = end = size;
+        }
+
+        // return null when eof
+        PcapPacket advance() {
+            while (pos < end) {
+                var pkt = pcapng ? pcapngBlock(true) : pcapRecord(true);
+                if (pkt != null) {
+                    return pkt;
+                }
+            }
+            return null;
+        }
+
+        // return false when eof
+        boolean skip() {
+            if (pos >= end) {
+                return false;
+            }
+            if (pcapng) {
+                pcapngBlock(false);
+            } else {
+                pcapRecord(false);
+            }
+            return true;
+        }
+
+        private PcapPacket pcapRecord(boolean parse) {
+            if (size - pos < 16) {
+                stop("incomplete packet header, probably tcpdump is interrupted");
+                return null;
+            }
+            int capLen = int32(pos + 8, littleEndian);
+            if (capLen < 0 || size - pos - 16 < capLen) {
+                stop("no packet data, probably tcpdump is interrupted, expecting " + capLen + ", got " + (size - pos - 16));
+                return null;
+            }
+            long off = pos;
+            pos += 16 + capLen;
+            if (!parse) {
+                return null;
+            }
+            int tsusec = int32(off + 4, littleEndian);
+            if (nanos) {
+                tsusec = (int) (Integer.toUnsignedLong(tsusec) / 1000);
+            }
+            var pcapPacket = new PcapPacket(int32(off, littleEndian), tsusec, capLen, int32(off + 12, littleEndian));
+            PcapParser.initPacket(pcapPacket, globalHeader.dataLinkType, bytes(off + 16, capLen));
+            return pcapPacket;
+        }
+
+        private PcapPacket pcapngBlock(boolean parse) {
+            if (size - pos < 12) {
+                stop("incomplete block header");
+                return null;
+            }
+            int type = int32(pos, section != null && section.littleEndian);
+            if (type == PCAPNG_SHB) {
+                int bom = int32(pos + 8, false);
+                if (bom == PCAPNG_BYTE_ORDER_MAGIC) {
+                    section = new Section(false, new ArrayList<>());
+                } else if (bom == Integer.reverseBytes(PCAPNG_BYTE_ORDER_MAGIC)) {
+                    section = new Section(true, new ArrayList<>());
+                } else {
+                    stop("invalid byte-order magic: " + Integer.toHexString(bom));
+                    return null;
+                }
+            } else if (section == null) {
+                stop("the first block is not a section header block");
+                return null;
+            }
+            boolean le = section.littleEndian;
+            long blockLen = Integer.toUnsignedLong(int32(pos + 4, le));
+            if (blockLen < 12 || blockLen % 4 != 0 || size - pos < blockLen) {
+                stop("invalid block length: " + blockLen);
+                return null;
+            }
+            long off = pos;
+            pos += blockLen;
+
+            if (type == PCAPNG_IDB) {
+                if (blockLen < 20) {
+                    stop("invalid interface description block length: " + blockLen);
+                    return null;
+                }
+                section.ifaces.add(new Iface(uint16(off + 8, le), tsUnitsPerSecond(off + 16, off + blockLen - 4, le)));
+                return null;
+            }
+            if (!parse) {
+                return null;
+            }
+            int ifaceId;
+            long ts;
+            int capLen;
+            int origLen;
+            long dataOff;
+            if (type == PCAPNG_EPB || type == PCAPNG_PB) {
+                if (blockLen < 32) {
+                    stop("invalid packet block length: " + blockLen);
+                    return null;
+                }
+                ifaceId = type == PCAPNG_EPB ? int32(off + 8, le) : uint16(off + 8, le);
+                ts = (Integer.toUnsignedLong(int32(off + 12, le)) << 32) | Integer.toUnsignedLong(int32(off + 16, le));
+                capLen = int32(off + 20, le);
+                origLen = int32(off + 24, le);
+                dataOff = off + 28;
+            } else if (type == PCAPNG_SPB) {
+                if (blockLen < 16) {
+                    stop("invalid simple packet block length: " + blockLen);
+                    return null;
+                }
+                ifaceId = 0;
+                ts = 0;
+                origLen = int32(off + 8, le);
+                capLen = (int) Math.min(Integer.toUnsignedLong(origLen), blockLen - 16);
+                dataOff = off + 12;
+            } else {
+                return null; // other blocks are ignored
+            }
+            if (ifaceId < 0 || ifaceId >= section.ifaces.size()) {
+                Logger.warn(LogType.INVALID_EXTERNAL_DATA, "unknown interface " + ifaceId + ", offset=" + off);
+                return null;
+            }
+            if (capLen < 0 || off + blockLen - 4 - dataOff < capLen) {
+                Logger.warn(LogType.INVALID_EXTERNAL_DATA, "invalid captured length " + capLen + ", offset=" + off);
+                return null;
+            }
+            var iface = section.ifaces.get(ifaceId);
+            long units = iface.tsUnitsPerSecond;
+            long frac = Long.remainderUnsigned(ts, units);
+            long usec;
+            if (units % 1_000_000 == 0) {
+                usec = frac / (units / 1_000_000);
+            } else {
+                usec = (long) ((double) frac * 1_000_000 / units);
+            }
+            var pcapPacket = new PcapPacket((int) Long.divideUnsigned(ts, units), (int) usec, capLen, origLen);
+            PcapParser.initPacket(pcapPacket, iface.linkType, bytes(dataOff, capLen));
+            return pcapPacket;
+        }
+
+        private long tsUnitsPerSecond(long opt, long optEnd, boolean le) {
+            while (optEnd - opt >= 4) {
+                int code = uint16(opt, le);
+                int len = uint16(opt + 2, le);
+                if (code == 0) { // opt_endofopt
+                    break;
+                }
+                if (code == 9 && len == 1 && optEnd - opt >= 5) { // if_tsresol
+                    int v = uint8(opt + 4);
+                    int exp = v & 0x7f;
+                    if ((v & 0x80) == 0) {
+                        if (exp <= 18) {
+                            long n = 1;
+                            for (int i = 0; i < exp; ++i) {
+                                n *= 10;
+                            }
+                            return n;
+                        }
+                    } else if (exp <= 62) {
+                        return 1L << exp;
+                    }
+                    break;
+                }
+                opt += 4 + ((len + 3) & ~3);
+            }
+            return 1_000_000;
+        }
+    }
+
+    private final class RecordSpliterator implements Spliterator<PcapPacket> {
+        private Walker walker;
+
+        RecordSpliterator(Walker walker) {
+            this.walker = walker;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PcapPacket> action) {
+            var pkt = walker.advance();
+            if (pkt == null) {
+                return false;
+            }
+            action.accept(pkt);
+            return true;
+        }
+
+        @Override
+        public Spliterator<PcapPacket> trySplit() {
+            long remaining = walker.end - walker.pos;
+            if (remaining < MIN_SPLIT_SIZE) {
+                return null;
+            }
+            long mid = walker.pos + remaining / 2;
+            var suffix = walker.copy();
+            while (suffix.pos < mid && suffix.skip()) {
+                // walk to the first record boundary after mid
+            }
+            if (suffix.pos >= walker.end) {
+                return null;
+            }
+            var prefix = walker;
+            prefix.end = suffix.pos;
+            this.walker = suffix;
+            return new RecordSpliterator(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return walker.end - walker.pos;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.vproxy.vpacket;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.objectpool.GarbageFree;
+import io.vproxy.base.util.objectpool.PrototypeObjectList;
+
+/**
+ * Packet objects which can be reused to parse frames without allocating new packet objects.<br>
+ * The arena is not thread safe, each worker thread should hold its own arena.<br>
+ * All packets and buffers retrieved from the arena are returned to it when {@link #reset()} is called,
+ * so they must not be used after that. The common usage is:
+ * <pre>
+ * for (var frame : batch) {
+ *     var pkt = arena.ethernet();
+ *     var err = pkt.from(arena.buffer(frame), true);
+ *     ...
+ * }
+ * arena.reset();
+ * </pre>
+ * Upper layer packets created while parsing a packet from the arena are also retrieved from the arena.
+ */
+public class PacketArena {
+    private final PrototypeObjectList<PacketDataBuffer> buffers;
+    private final PrototypeObjectList<EthernetPacket> ethernetPackets;
+    private final PrototypeObjectList<Ipv4Packet> ipv4Packets;
+    private final PrototypeObjectList<Ipv6Packet> ipv6Packets;
+    private final PrototypeObjectList<TcpPacket> tcpPackets;
+    private final PrototypeObjectList<UdpPacket> udpPackets;
+    private final PrototypeObjectList<IcmpPacket> icmpPackets;
+    private final PrototypeObjectList<IcmpPacket> icmpv6Packets;
+    private final PrototypeObjectList<PacketBytes> packetBytes;
+
+    public PacketArena() {
+        this(64);
+    }
+
+    public PacketArena(int capacity) {
+        buffers = new PrototypeObjectList<>(capacity * 3, PacketDataBuffer::new);
+        ethernetPackets = new PrototypeObjectList<>(capacity, () -> withArena(new EthernetPacket()));
+        ipv4Packets = new PrototypeObjectList<>(capacity, () -> withArena(new Ipv4Packet()));
+        ipv6Packets = new PrototypeObjectList<>(capacity, () -> withArena(new Ipv6Packet()));
+        tcpPackets = new PrototypeObjectList<>(capacity, () -> withArena(new TcpPacket()));
+        udpPackets = new PrototypeObjectList<>(capacity, () -> withArena(new UdpPacket()));
+        icmpPackets = new PrototypeObjectList<>(capacity, () -> withArena(new IcmpPacket(false)));
+        icmpv6Packets = new PrototypeObjectList<>(capacity, () -> withArena(new IcmpPacket(true)));
+        packetBytes = new PrototypeObjectList<>(capacity, () -> withArena(new PacketBytes()));
+    }
+
+    private <T extends AbstractPacket> T withArena(T pkt) {
+        pkt.arena = this;
+        return pkt;
+    }
+
+    private static <T extends AbstractPacket> T reset(T pkt) {
+        pkt.reset();
+        return pkt;
+    }
+
+    @GarbageFree
+    public PacketDataBuffer buffer() {
+        return buffers.add();
+    }
+
+    @GarbageFree
+    public PacketDataBuffer buffer(ByteArray fullbuf) {
+        return buffers.add().reinit(fullbuf, 0, 0);
+    }
+
+    @GarbageFree
+    public PacketDataBuffer buffer(ByteArray fullbuf, int pktOff, int pad) {
+        return buffers.add().reinit(fullbuf, pktOff, pad);
+    }
+
+    @GarbageFree
+    public EthernetPacket ethernet() {
+        return reset(ethernetPackets.add());
+    }
+
+    @GarbageFree
+    public Ipv4Packet ipv4() {
+        return reset(ipv4Packets.add());
+    }
+
+    @GarbageFree
+    public Ipv6Packet ipv6() {
+        return reset(ipv6Packets.add());
+    }
+
+    @GarbageFree
+    public TcpPacket tcp() {
+        return reset(tcpPackets.add());
+    }
+
+    @GarbageFree
+    public UdpPacket udp() {
+        return reset(udpPackets.add());
+    }
+
+    @GarbageFree
+    public IcmpPacket icmp(boolean isIpv6) {
+        return reset(isIpv6 ? icmpv6Packets.add() : icmpPackets.add());
+    }
+
+    @GarbageFree
+    public PacketBytes packetBytes() {
+        return reset(packetBytes.add());
+    }
+
+    /**
+     * Return all objects retrieved from this arena.
+     */
+    @GarbageFree
+    public void reset() {
+        buffers.clear();
+        ethernetPackets.clear();
+        ipv4Packets.clear();
+        ipv6Packets.clear();
+        tcpPackets.clear();
+        udpPackets.clear();
+        icmpPackets.clear();
+        icmpv6Packets.clear();
+        packetBytes.clear();
+    }
+
+    static EthernetPacket ethernet(PacketArena arena) {
+        return arena == null ? new EthernetPacket() : arena.ethernet();
+    }
+
+    static Ipv4Packet ipv4(PacketArena arena) {
+        return arena == null ? new Ipv4Packet() : arena.ipv4();
+    }
+
+    static Ipv6Packet ipv6(PacketArena arena) {
+        return arena == null ? new Ipv6Packet() : arena.ipv6();
+    }
+
+    static TcpPacket tcp(PacketArena arena) {
+        return arena == null ? new TcpPacket() : arena.tcp();
+    }
+
+    static UdpPacket udp(PacketArena arena) {
+        return arena == null ? new UdpPacket() : arena.udp();
+    }
+
+    static IcmpPacket icmp(PacketArena arena, boolean isIpv6) {
+        return arena == null ? new IcmpPacket(isIpv6) : arena.icmp(isIpv6);
+    }
+
+    static PacketBytes packetBytes(PacketArena arena) {
+        return arena == null ? new PacketBytes() : arena.packetBytes();
+    }
+}
@@ -36,6 +36,12 @@ public class PacketBytes extends AbstractPacket {
         // do nothing
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        bytes = null;
+    }
+
     @Override
     public PacketBytes copy() {
         var ret = new PacketBytes();
@@ -9,6 +9,16 @@ public class PacketDataBuffer {
     public ByteArray pktBuf; // sub buffer of buf
 
     public PacketDataBuffer(ByteArray fullbuf, int pktOff, int pad) {
+        reinit(fullbuf, pktOff, pad);
+    }
+
+    PacketDataBuffer() {
+    }
+
+    /**
+     * Same as the constructor, used when the object is reused.
+     */
+    public PacketDataBuffer reinit(ByteArray fullbuf, int pktOff, int pad) {
         this.fullbuf = fullbuf;
         this.pktOff = pktOff;
         this.pad = pad;
@@ -17,6 +27,7 @@ public class PacketDataBuffer {
         } else {
             this.pktBuf = fullbuf.sub(pktOff, fullbuf.length() - pktOff - pad);
         }
+        return this;
     }
 
     public PacketDataBuffer(ByteArray pktBuf) {
@@ -121,17 +121,22 @@ public class PcapParser {
         if (copyPacket) {
             buf = buf.copy();
         }
+        initPacket(pcapPacket, globalHeader.dataLinkType, buf);
+        return pcapPacket;
+    }
+
+    static void initPacket(PcapPacket pcapPacket, int dataLinkType, ByteArray buf) {
         String err = null;
-        if (globalHeader.dataLinkType == PcapGlobalHeader.LINKTYPE_ETHERNET) {
+        if (dataLinkType == PcapGlobalHeader.LINKTYPE_ETHERNET) {
             // for null type, try to use ethernet anyway
             var e = new EthernetPacket();
             err = e.from(new PacketDataBuffer(buf));
             pcapPacket.setPacket(e);
-        } else if (globalHeader.dataLinkType == PcapGlobalHeader.LINKTYPE_LINUX_SLL) {
+        } else if (dataLinkType == PcapGlobalHeader.LINKTYPE_LINUX_SLL) {
             var l = new LinuxCookedPacket();
             err = l.from(new PacketDataBuffer(buf));
             pcapPacket.setPacket(l);
-        } else if (globalHeader.dataLinkType == PcapGlobalHeader.LINKTYPE_NULL) {
+        } else if (dataLinkType == PcapGlobalHeader.LINKTYPE_NULL) {
             var bsd = new BSDLoopbackEncapsulation();
             err = bsd.from(new PacketDataBuffer(buf));
             pcapPacket.setPacket(bsd);
@@ -142,9 +147,7 @@ public class PcapParser {
         if (err != null) {
             Logger.warn(LogType.INVALID_EXTERNAL_DATA, "invalid packet: " + err);
             pcapPacket.setPacket(new PacketBytes(buf));
-            return pcapPacket;
         }
-        return pcapPacket;
     }
 
     private ByteArray next(int len) {
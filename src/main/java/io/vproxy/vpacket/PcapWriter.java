@@ -0,0 +1,386 @@
+package io.vproxy.vpacket;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.LogType;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.anno.Blocking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Write pcap or pcapng files.<br>
+ * Records are encoded directly into pre-allocated direct buffers (batches),
+ * a full batch is handed to a background thread which writes it to the file,
+ * so the thread writing packets never does file io.<br>
+ * When all batches are waiting to be written, {@link #writeOrDrop(PcapPacket)} drops the packet,
+ * and {@link #write(PcapPacket)} blocks until a batch is available.<br>
+ * When <code>rotateSize</code> is set, a new file is created when the current file would exceed that size,
+ * the files are named as <code>prefix + index + suffix</code>, same as {@link io.vproxy.base.util.file.MappedByteBufferLogger}.<br>
+ * The link type of the file is ethernet unless specified, e.g. use the dataLinkType of the {@link PcapGlobalHeader}
+ * when re-writing packets read from another file. Packets of other encapsulations are rejected.<br>
+ * The writer is not thread safe, each thread should use its own writer.
+ */
+public class PcapWriter implements AutoCloseable {
+    public enum Format {
+        PCAP,
+        PCAPNG,
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BATCH_COUNT = 4;
+
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private final Format format;
+    private final int linkType;
+    private final int snaplen;
+    private final String prefix; // null when not rotating
+    private final String suffix;
+    private final long rotateSize;
+    private final ByteBuffer fileHeader;
+
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Thread flushThread;
+    private ByteBuffer current;
+    private long dropped = 0;
+    private boolean closed = false;
+
+    // accessed by the flush thread
+    private int fileNameIndex = 0;
+    private FileChannel channel;
+    private long fileSize;
+    private volatile IOException flushFailure;
+
+    public PcapWriter(Path file) throws IOException {
+        this(file, Format.PCAP);
+    }
+
+    public PcapWriter(Path file, Format format) throws IOException {
+        this(file, format, 65536, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_COUNT);
+    }
+
+    public PcapWriter(Path file, Format format, int snaplen, int batchSize, int batchCount) throws IOException {
+        this(file, format, PcapGlobalHeader.LINKTYPE_ETHERNET, snaplen, batchSize, batchCount);
+    }
+
+    /**
+     * @param linkType see {@link PcapGlobalHeader#dataLinkType}
+     */
+    public PcapWriter(Path file, Format format, int linkType, int snaplen, int batchSize, int batchCount) throws IOException {
+        this(format, linkType, snaplen, batchSize, batchCount, null, null, 0);
+        channel = open(file);
+        startFlushThread(file.toString());
+    }
+
+    /**
+     * @param rotateSize a new file is created when the current file would exceed this size
+     */
+    public PcapWriter(String location, String prefix, String suffix, long rotateSize,
+                      Format format, int snaplen, int batchSize, int batchCount) throws IOException {
+        this(location, prefix, suffix, rotateSize, format, PcapGlobalHeader.LINKTYPE_ETHERNET, snaplen, batchSize, batchCount);
+    }
+
+    /**
+     * @param rotateSize a new file is created when the current file would exceed this size
+     * @param linkType   see {@link PcapGlobalHeader#dataLinkType}
+     */
+    public PcapWriter(String location, String prefix, String suffix, long rotateSize,
+                      Format format, int linkType, int snaplen, int batchSize, int batchCount) throws IOException {
+        this(format, linkType, snaplen, batchSize, batchCount,
+            new File(location).getCanonicalPath() + File.separator + prefix, suffix, rotateSize);
+        if (!new File(location).isDirectory()) {
+            throw new IOException(location + " is not a directory");
+        }
+        if (rotateSize < batchSize + fileHeader.capacity()) {
+            throw new IllegalArgumentException("rotateSize " + rotateSize + " is too small for batchSize " + batchSize);
+        }
+        channel = open(Path.of(this.prefix + nextFileNameIndex() + suffix));
+        startFlushThread(this.prefix + "..." + suffix);
+    }
+
+    private PcapWriter(Format format, int linkType, int snaplen, int batchSize, int batchCount,
+                       String prefix, String suffix, long rotateSize) {
+        if (snaplen <= 0) {
+            throw new IllegalArgumentException("invalid snaplen: " + snaplen);
+        }
+        if (batchSize < snaplen + 64) {
+            throw new IllegalArgumentException("batchSize " + batchSize + " cannot hold a record of snaplen " + snaplen);
+        }
+        if (batchCount < 2) {
+            throw new IllegalArgumentException("batchCount " + batchCount + " < 2");
+        }
+        if (linkType < 0 || linkType > 0xffff) {
+            throw new IllegalArgumentException("invalid linkType: " + linkType);
+        }
+        this.format = format;
+        this.linkType = linkType;
+        this.snaplen = snaplen;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.rotateSize = rotateSize;
+        this.fileHeader = buildFileHeader();
+
+        free = new ArrayBlockingQueue<>(batchCount);
+        full = new ArrayBlockingQueue<>(batchCount + 1); // +1 for the close signal
+        for (int i = 1; i < batchCount; ++i) {
+            free.add(ByteBuffer.allocateDirect(batchSize).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        current = ByteBuffer.allocateDirect(batchSize).order(ByteOrder.LITTLE_ENDIAN);
+        flushThread = new Thread(this::flushLoop);
+    }
+
+    private void startFlushThread(String name) {
+        flushThread.setName("pcap-writer:" + name);
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    private ByteBuffer buildFileHeader() {
+        if (format == Format.PCAP) {
+            var h = new PcapGlobalHeader(snaplen, linkType).build();
+            return ByteBuffer.wrap(h.toJavaArray());
+        }
+        var buf = ByteBuffer.allocate(28 + 20).order(ByteOrder.LITTLE_ENDIAN);
+        // section header block
+        buf.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D)
+            .putShort((short) 1).putShort((short) 0) // version 1.0
+            .putLong(-1) // section length not specified
+            .putInt(28);
+        // interface description block, the timestamp resolution is the default (microseconds)
+        buf.putInt(1).putInt(20)
+            .putShort((short) linkType).putShort((short) 0)
+            .putInt(snaplen)
+            .putInt(20);
+        return buf.flip();
+    }
+
+    private String nextFileNameIndex() {
+        var n = (fileNameIndex++);
+        var s = "" + n;
+        if (s.length() < 4) {
+            s = "0".repeat(4 - s.length()) + s;
+        }
+        return s;
+    }
+
+    private FileChannel open(Path path) throws IOException {
+        var ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeFully(ch, fileHeader.duplicate());
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        fileSize = fileHeader.capacity();
+        return ch;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer buf;
+            try {
+                buf = full.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (buf == CLOSE) {
+                break;
+            }
+            if (flushFailure == null) {
+                try {
+                    flush(buf);
+                } catch (IOException e) {
+                    Logger.error(LogType.FILE_ERROR, "failed writing pcap file", e);
+                    flushFailure = e;
+                }
+            }
+            buf.clear();
+            free.add(buf);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (flushFailure == null) {
+                flushFailure = e;
+            }
+        }
+    }
+
+    private void flush(ByteBuffer buf) throws IOException {
+        buf.flip();
+        if (prefix != null && fileSize + buf.remaining() > rotateSize) {
+            channel.close();
+            channel = open(Path.of(prefix + nextFileNameIndex() + suffix));
+        }
+        fileSize += buf.remaining();
+        writeFully(channel, buf);
+    }
+
+    private void checkState() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        var e = flushFailure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if written into the batch, false if dropped because all batches are waiting to be written
+     */
+    public boolean writeOrDrop(PcapPacket pkt) throws IOException {
+        return write(pkt.getTssec(), pkt.getTsusec(), pkt.getOrigLen(), pkt.getPacket(), false);
+    }
+
+    public boolean writeOrDrop(AbstractPacket pkt) throws IOException {
+        long ts = System.currentTimeMillis();
+        return write((int) (ts / 1000), (int) (ts % 1000) * 1000, 0, pkt, false);
+    }
+
+    @Blocking
+    public void write(PcapPacket pkt) throws IOException {
+        write(pkt.getTssec(), pkt.getTsusec(), pkt.getOrigLen(), pkt.getPacket(), true);
+    }
+
+    @Blocking
+    public void write(AbstractPacket pkt) throws IOException {
+        long ts = System.currentTimeMillis();
+        write((int) (ts / 1000), (int) (ts % 1000) * 1000, 0, pkt, true);
+    }
+
+    private boolean write(int tssec, int tsusec, int origLen, AbstractPacket packet, boolean block) throws IOException {
+        checkState();
+        checkLinkType(packet);
+        ByteArray data = packet.getRawPacket(AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        int dataLen = data.length();
+        if (origLen == 0) {
+            origLen = dataLen;
+        }
+        int capLen = Math.min(dataLen, snaplen);
+        int recordLen = format == Format.PCAP ? 16 + capLen : 32 + ((capLen + 3) & ~3);
+        if (current.remaining() < recordLen) {
+            if (!handOver(block)) {
+                ++dropped;
+                return false;
+            }
+        }
+        var buf = current;
+        if (format == Format.PCAP) {
+            buf.putInt(tssec).putInt(tsusec).putInt(capLen).putInt(origLen);
+            data.byteBufferPut(buf, 0, capLen);
+        } else {
+            long ts = Integer.toUnsignedLong(tssec) * 1_000_000 + tsusec;
+            buf.putInt(6).putInt(recordLen)
+                .putInt(0) // interface id
+                .putInt((int) (ts >>> 32)).putInt((int) ts)
+                .putInt(capLen).putInt(origLen);
+            data.byteBufferPut(buf, 0, capLen);
+            for (int i = capLen; i < ((capLen + 3) & ~3); ++i) {
+                buf.put((byte) 0);
+            }
+            buf.putInt(recordLen);
+        }
+        return true;
+    }
+
+    private void checkLinkType(AbstractPacket packet) {
+        if (packet instanceof PacketBytes) {
+            return; // raw bytes, e.g. failed to parse when reading, they are written as is
+        }
+        boolean matches;
+        if (linkType == PcapGlobalHeader.LINKTYPE_ETHERNET) {
+            matches = packet instanceof EthernetPacket;
+        } else if (linkType == PcapGlobalHeader.LINKTYPE_LINUX_SLL) {
+            matches = packet instanceof LinuxCookedPacket;
+        } else if (linkType == PcapGlobalHeader.LINKTYPE_NULL) {
+            matches = packet instanceof BSDLoopbackEncapsulation;
+        } else {
+            return; // not known by the parser either
+        }
+        if (!matches) {
+            throw new IllegalArgumentException("the packet " + packet.getClass().getSimpleName() +
+                " does not match the link type " + linkType + " of the file");
+        }
+    }
+
+    private boolean handOver(boolean block) throws IOException {
+        ByteBuffer next;
+        if (block) {
+            try {
+                next = free.take();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        } else {
+            next = free.poll();
+            if (next == null) {
+                return false;
+            }
+        }
+        full.add(current);
+        current = next;
+        return true;
+    }
+
+    /**
+     * Hand the current batch to the background thread even if it's not full.
+     *
+     * @return false if all batches are waiting to be written, the current batch is kept in this case
+     */
+    public boolean flush() throws IOException {
+        checkState();
+        if (current.position() == 0) {
+            return true;
+        }
+        return handOver(false);
+    }
+
+    /**
+     * @return number of packets dropped by {@link #writeOrDrop(PcapPacket)}
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Write the remaining batches and close the file.
+     */
+    @Blocking
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current.position() != 0) {
+            full.add(current);
+        }
+        current = null;
+        full.add(CLOSE);
+        try {
+            flushThread.join();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        var e = flushFailure;
+        if (e != null) {
+            throw e;
+        }
+    }
+}
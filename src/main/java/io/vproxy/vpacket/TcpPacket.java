@@ -20,7 +20,9 @@ public class TcpPacket extends TransportPacket {
     private int checksum;
     private int urgentPointer;
     private List<TcpOption> options;
+    private String optionsError; // recorded when the options of a partially parsed packet fail to decode
     private ByteArray data;
+    private boolean lazyFieldsPending = false;
 
     @Override
     public int getSrcPort() {
@@ -30,8 +32,9 @@ public class TcpPacket extends TransportPacket {
     @Override
     public void setSrcPort(int srcPort) {
         if (raw != null) {
+            int old = raw.pktBuf.uint16(0);
             raw.pktBuf.int16(0, srcPort);
-            checksumSkipped();
+            checksumFieldChanges(old, srcPort);
         }
         this.srcPort = srcPort;
     }
@@ -44,37 +47,43 @@ public class TcpPacket extends TransportPacket {
     @Override
     public void setDstPort(int dstPort) {
         if (raw != null) {
+            int old = raw.pktBuf.uint16(2);
             raw.pktBuf.int16(2, dstPort);
-            checksumSkipped();
+            checksumFieldChanges(old, dstPort);
         }
         this.dstPort = dstPort;
     }
 
     public long getSeqNum() {
+        ensureHeaderFields();
         return seqNum;
     }
 
     public void setSeqNum(long seqNum) {
         if (raw != null) {
+            int old = raw.pktBuf.int32(4);
             raw.pktBuf.int32(4, (int) seqNum);
-            checksumSkipped();
+            checksumFieldChanges32(old, (int) seqNum);
         }
         this.seqNum = seqNum;
     }
 
     public long getAckNum() {
+        ensureHeaderFields();
         return ackNum;
     }
 
     public void setAckNum(long ackNum) {
         if (raw != null) {
+            int old = raw.pktBuf.int32(8);
             raw.pktBuf.int32(8, (int) ackNum);
-            checksumSkipped();
+            checksumFieldChanges32(old, (int) ackNum);
         }
         this.ackNum = ackNum;
     }
 
     public int getDataOffset() {
+        ensureHeaderFields();
         return dataOffset;
     }
 
@@ -89,13 +98,16 @@ public class TcpPacket extends TransportPacket {
 
     public void setFlags(int flags) {
         if (raw != null) {
-            raw.pktBuf.int16(12, (raw.pktBuf.uint16(12) & 0b1111_1111_1100_0000) | (flags & 0b0011_1111));
-            checksumSkipped();
+            int old = raw.pktBuf.uint16(12);
+            int n = (old & 0b1111_1111_1100_0000) | (flags & 0b0011_1111);
+            raw.pktBuf.int16(12, n);
+            checksumFieldChanges(old, n);
         }
         this.flags = flags;
     }
 
     public int getWindow() {
+        ensureHeaderFields();
         return window;
     }
 
@@ -105,6 +117,7 @@ public class TcpPacket extends TransportPacket {
     }
 
     public int getChecksum() {
+        ensureHeaderFields();
         return checksum;
     }
 
@@ -114,6 +127,7 @@ public class TcpPacket extends TransportPacket {
     }
 
     public int getUrgentPointer() {
+        ensureHeaderFields();
         return urgentPointer;
     }
 
@@ -122,9 +136,19 @@ public class TcpPacket extends TransportPacket {
         this.urgentPointer = urgentPointer;
     }
 
+    /**
+     * @throws IllegalStateException the packet is partially parsed and the options are invalid
+     */
     public List<TcpOption> getOptions() {
         if (options == null) {
-            options = new LinkedList<>();
+            if (raw != null || optionsError != null) {
+                var err = ensureOptions();
+                if (err != null) {
+                    throw new IllegalStateException("invalid tcp options: " + err);
+                }
+            } else {
+                options = new LinkedList<>();
+            }
         }
         return options;
     }
@@ -132,9 +156,11 @@ public class TcpPacket extends TransportPacket {
     public void setOptions(List<TcpOption> options) {
         clearRawPacket();
         this.options = options;
+        this.optionsError = null;
     }
 
     public ByteArray getData() {
+        ensureHeaderFields();
         return data;
     }
 
@@ -148,6 +174,8 @@ public class TcpPacket extends TransportPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TcpPacket tcpPacket = (TcpPacket) o;
+        ensureLazyFields();
+        tcpPacket.ensureLazyFields();
         return srcPort == tcpPacket.srcPort &&
             dstPort == tcpPacket.dstPort &&
             seqNum == tcpPacket.seqNum &&
@@ -163,11 +191,13 @@ public class TcpPacket extends TransportPacket {
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(srcPort, dstPort, seqNum, ackNum, dataOffset, flags, window, checksum, urgentPointer, options, data);
     }
 
     @Override
     public String toString() {
+        ensureLazyFields();
         return "TcpPacket{" +
             "srcPort=" + srcPort +
             ", dstPort=" + dstPort +
@@ -195,6 +225,7 @@ public class TcpPacket extends TransportPacket {
         flags = (dataOffsetReservedFlags & 0b0011_1111);
 
         this.raw = raw;
+        this.lazyFieldsPending = true;
         return null;
     }
 
@@ -204,20 +235,37 @@ public class TcpPacket extends TransportPacket {
         var dataOffsetReservedFlags = bytes.uint16(12);
         flags = (dataOffsetReservedFlags & 0b0011_1111);
         if (level > LEVEL_KEY_FIELDS) {
-            seqNum = bytes.uint32(4);
-            ackNum = bytes.uint32(8);
-
-            dataOffset = ((dataOffsetReservedFlags >> 12) & 0xf) * 4;
+            ensureHeaderFields();
+        }
+        return null;
+    }
 
-            window = bytes.uint16(14);
+    private void ensureHeaderFields() {
+        if (!lazyFieldsPending) {
+            return;
+        }
+        lazyFieldsPending = false;
+        ByteArray bytes = raw.pktBuf;
+        seqNum = bytes.uint32(4);
+        ackNum = bytes.uint32(8);
+        dataOffset = ((bytes.uint16(12) >> 12) & 0xf) * 4;
+        window = bytes.uint16(14);
+        checksum = bytes.uint16(16);
+        urgentPointer = bytes.uint16(18);
+        if (bytes.length() > dataOffset) {
+            data = bytes.sub(dataOffset, bytes.length() - dataOffset);
+        } else {
+            data = ByteArray.allocate(0);
+        }
+    }
 
-            if (bytes.length() > dataOffset) {
-                data = bytes.sub(dataOffset, bytes.length() - dataOffset);
-            } else {
-                data = ByteArray.allocate(0);
-            }
+    @Override
+    protected void ensureLazyFields() {
+        if (raw == null) {
+            return;
         }
-        return null;
+        ensureHeaderFields();
+        ensureOptions();
     }
 
     @Override
@@ -249,14 +297,37 @@ public class TcpPacket extends TransportPacket {
         }
 
         this.raw = raw;
+        this.lazyFieldsPending = false;
         return ensureOptions();
     }
 
+    /**
+     * Decode the options if not decoded yet.<br>
+     * The error is recorded, the same error is returned on later calls and {@link #getOptions()} throws it.
+     *
+     * @return error message, or null if succeeded
+     */
     public String ensureOptions() {
         if (options != null) {
             return null;
         }
+        if (optionsError != null) {
+            return optionsError;
+        }
+        var err = parseOptions();
+        if (err != null) {
+            options = null;
+            optionsError = err;
+        }
+        return err;
+    }
+
+    private String parseOptions() {
+        ensureHeaderFields();
         var bytes = raw.pktBuf;
+        if (dataOffset > bytes.length()) {
+            return "dataOffset too big";
+        }
         options = new LinkedList<>();
         if (dataOffset > 20) {
             // parse tcp options
@@ -280,6 +351,9 @@ public class TcpPacket extends TransportPacket {
                         return "invalid tcp option, reaches dataOffset";
                     }
                     int len = bytes.uint8(off + 1);
+                    if (len < 2) {
+                        return "invalid tcp option, length is too short";
+                    }
                     if (off + len > dataOffset) {
                         return "invalid tcp option, length is too long";
                     }
@@ -310,7 +384,7 @@ public class TcpPacket extends TransportPacket {
     }
 
     public boolean isPsh() {
-        return (flags & Consts.TCP_FLAGS_PSH) == Consts.TCP_FLAGS_PSH || (data != null && data.length() > 0);
+        return (flags & Consts.TCP_FLAGS_PSH) == Consts.TCP_FLAGS_PSH || (getData() != null && data.length() > 0);
     }
 
     public boolean isFin() {
@@ -332,8 +406,38 @@ public class TcpPacket extends TransportPacket {
         // do nothing
     }
 
+    @Override
+    protected int checksumOffset() {
+        return 16;
+    }
+
+    @Override
+    protected void checksumUpdatedIncrementally(int checksum) {
+        raw.pktBuf.int16(16, checksum);
+        this.checksum = checksum;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        srcPort = 0;
+        dstPort = 0;
+        seqNum = 0;
+        ackNum = 0;
+        dataOffset = 0;
+        flags = 0;
+        window = 0;
+        checksum = 0;
+        urgentPointer = 0;
+        options = null;
+        optionsError = null;
+        data = null;
+        lazyFieldsPending = false;
+    }
+
     @Override
     public TcpPacket copy() {
+        ensureLazyFields();
         var ret = new TcpPacket();
         ret.srcPort = srcPort;
         ret.dstPort = dstPort;
@@ -344,6 +448,7 @@ public class TcpPacket extends TransportPacket {
         ret.window = window;
         ret.checksum = checksum;
         ret.urgentPointer = urgentPointer;
+        ret.optionsError = optionsError;
         if (options != null) {
             ret.options = new ArrayList<>(options.size());
             for (var o : options) {
@@ -372,7 +477,7 @@ public class TcpPacket extends TransportPacket {
             + ",flags=" + formatFlagsDesc(flags)
             + ",tp_src=" + (srcPort == 0 ? "not-parsed-yet" : srcPort)
             + ",tp_dst=" + (dstPort == 0 ? "not-parsed-yet" : dstPort)
-            + ",data=" + (data == null ? 0 : data.length());
+            + ",data=" + (getData() == null ? 0 : data.length());
     }
 
     private String formatFlagsDesc(int flags) {
@@ -461,11 +566,8 @@ public class TcpPacket extends TransportPacket {
     public ByteArray buildIPv4TcpPacket(Ipv4Packet ipv4, int flags) {
         var common = buildCommonPart();
 
-        var pseudo = Utils.buildPseudoIPv4Header(ipv4, Consts.IP_PROTOCOL_TCP, common.length());
-        var toCalculate = pseudo.concat(common);
-
         if ((flags & FLAG_CHECKSUM_UNNECESSARY) == 0) {
-            checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+            checksum = Utils.calculateChecksum(ipv4, Consts.IP_PROTOCOL_TCP, common);
 
             // build checksum
             common.int16(16, checksum);
@@ -481,9 +583,7 @@ public class TcpPacket extends TransportPacket {
 
     protected void updateChecksumWithIPv4(Ipv4Packet ipv4) {
         raw.pktBuf.int16(16, 0);
-        var pseudo = Utils.buildPseudoIPv4Header(ipv4, Consts.IP_PROTOCOL_TCP, raw.pktBuf.length());
-        var toCalculate = pseudo.concat(raw.pktBuf);
-        var cksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+        var cksum = Utils.calculateChecksum(ipv4, Consts.IP_PROTOCOL_TCP, raw.pktBuf);
 
         checksum = cksum;
         raw.pktBuf.int16(16, cksum);
@@ -494,11 +594,8 @@ public class TcpPacket extends TransportPacket {
     public ByteArray buildIPv6TcpPacket(Ipv6Packet ipv6, int flags) {
         var common = buildCommonPart();
 
-        var pseudo = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_TCP, common.length());
-        var toCalculate = pseudo.concat(common);
-
         if ((flags & FLAG_CHECKSUM_UNNECESSARY) == 0) {
-            checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+            checksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_TCP, common);
 
             // build checksum
             common.int16(16, checksum);
@@ -514,9 +611,7 @@ public class TcpPacket extends TransportPacket {
 
     protected void updateChecksumWithIPv6(Ipv6Packet ipv6) {
         raw.pktBuf.int16(16, 0);
-        var pseudo = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_TCP, raw.pktBuf.length());
-        var toCalculate = pseudo.concat(raw.pktBuf);
-        var cksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+        var cksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_TCP, raw.pktBuf);
 
         checksum = cksum;
         raw.pktBuf.int16(16, cksum);
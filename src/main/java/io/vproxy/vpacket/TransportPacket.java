@@ -1,5 +1,7 @@
 package io.vproxy.vpacket;
 
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Utils;
 import io.vproxy.vfd.IPPort;
 
 public abstract class TransportPacket extends AbstractPacket implements PartialPacket {
@@ -21,4 +23,50 @@ public abstract class TransportPacket extends AbstractPacket implements PartialP
 
     @Override
     public abstract TransportPacket copy();
+
+    protected abstract int checksumOffset();
+
+    protected abstract void checksumUpdatedIncrementally(int checksum);
+
+    /**
+     * @return the checksum in the raw packet, or -1 if it cannot be updated incrementally
+     */
+    protected int checksumForIncrementalUpdate() {
+        if (raw == null || isRequireUpdatingChecksum()) {
+            return -1;
+        }
+        return raw.pktBuf.uint16(checksumOffset());
+    }
+
+    /**
+     * Called when a 16-bit word covered by the checksum (including the pseudo header) is modified.<br>
+     * The checksum in the raw packet is updated with RFC 1624 instead of summing the whole packet again,
+     * or the packet is marked to recalculate the checksum if it's not up-to-date.
+     */
+    protected final void checksumFieldChanges(int oldWord, int newWord) {
+        int cksum = checksumForIncrementalUpdate();
+        if (cksum == -1) {
+            checksumSkipped();
+            return;
+        }
+        checksumUpdatedIncrementally(Utils.incrementalChecksum(cksum, oldWord, newWord));
+    }
+
+    protected final void checksumFieldChanges32(int oldValue, int newValue) {
+        int cksum = checksumForIncrementalUpdate();
+        if (cksum == -1) {
+            checksumSkipped();
+            return;
+        }
+        checksumUpdatedIncrementally(Utils.incrementalChecksum32(cksum, oldValue, newValue));
+    }
+
+    protected final void checksumFieldChanges(ByteArray oldBytes, ByteArray newBytes) {
+        int cksum = checksumForIncrementalUpdate();
+        if (cksum == -1) {
+            checksumSkipped();
+            return;
+        }
+        checksumUpdatedIncrementally(Utils.incrementalChecksum(cksum, oldBytes, newBytes));
+    }
 }
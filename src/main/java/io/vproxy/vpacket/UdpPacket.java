@@ -12,6 +12,7 @@ public class UdpPacket extends TransportPacket {
     private int length;
     private int checksum;
     private AbstractPacket data;
+    private boolean lazyFieldsPending = false;
 
     @Override
     public String initPartial(PacketDataBuffer raw) {
@@ -23,20 +24,32 @@ public class UdpPacket extends TransportPacket {
         dstPort = bytes.uint16(2);
 
         this.raw = raw;
+        this.lazyFieldsPending = true;
         return null;
     }
 
     @Override
     public String initPartial(int level) {
-        ByteArray bytes = raw.pktBuf;
         if (level > LEVEL_KEY_FIELDS) {
-            PacketBytes pktBytes = new PacketBytes();
-            pktBytes.from(new PacketDataBuffer(bytes.sub(8, bytes.length() - 8)));
-            data = pktBytes;
+            ensureLazyFields();
         }
         return null;
     }
 
+    @Override
+    protected void ensureLazyFields() {
+        if (!lazyFieldsPending) {
+            return;
+        }
+        lazyFieldsPending = false;
+        ByteArray bytes = raw.pktBuf;
+        length = bytes.uint16(4);
+        checksum = bytes.uint16(6);
+        PacketBytes pktBytes = PacketArena.packetBytes(arena);
+        pktBytes.from(subBuffer(raw, 8, bytes.length() - 8));
+        data = pktBytes;
+    }
+
     @Override
     public String from(PacketDataBuffer raw) {
         ByteArray bytes = raw.pktBuf;
@@ -51,11 +64,12 @@ public class UdpPacket extends TransportPacket {
         if (bytes.length() != length) {
             return "udp packet length not matching the input bytes length";
         }
-        PacketBytes pktBytes = new PacketBytes();
-        pktBytes.from(new PacketDataBuffer(bytes.sub(8, bytes.length() - 8)));
+        PacketBytes pktBytes = PacketArena.packetBytes(arena);
+        pktBytes.from(subBuffer(raw, 8, bytes.length() - 8));
         data = pktBytes;
 
         this.raw = raw;
+        this.lazyFieldsPending = false;
 
         return null;
     }
@@ -78,11 +92,8 @@ public class UdpPacket extends TransportPacket {
     public ByteArray buildIPv4UdpPacket(Ipv4Packet ipv4, int flags) {
         var common = buildCommonPart(flags);
 
-        var pseudo = Utils.buildPseudoIPv4Header(ipv4, Consts.IP_PROTOCOL_UDP, common.length());
-        var toCalculate = pseudo.concat(common);
-
         if ((flags & FLAG_CHECKSUM_UNNECESSARY) == 0) {
-            checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+            checksum = Utils.calculateChecksum(ipv4, Consts.IP_PROTOCOL_UDP, common);
 
             if (checksum == 0) {
                 checksum = 0xffff;
@@ -102,11 +113,8 @@ public class UdpPacket extends TransportPacket {
     public ByteArray buildIPv6UdpPacket(Ipv6Packet ipv6, int flags) {
         var common = buildCommonPart(flags);
 
-        var pseudo = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_UDP, common.length());
-        var toCalculate = pseudo.concat(common);
-
         if ((flags & FLAG_CHECKSUM_UNNECESSARY) == 0) {
-            checksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+            checksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_UDP, common);
 
             if (checksum == 0) {
                 checksum = 0xffff;
@@ -133,11 +141,32 @@ public class UdpPacket extends TransportPacket {
         // do nothing
     }
 
+    @Override
+    protected int checksumOffset() {
+        return 6;
+    }
+
+    @Override
+    protected int checksumForIncrementalUpdate() {
+        int cksum = super.checksumForIncrementalUpdate();
+        if (cksum == 0) {
+            return -1; // no checksum, let the full calculation decide
+        }
+        return cksum;
+    }
+
+    @Override
+    protected void checksumUpdatedIncrementally(int checksum) {
+        if (checksum == 0) {
+            checksum = 0xffff;
+        }
+        raw.pktBuf.int16(6, checksum);
+        this.checksum = checksum;
+    }
+
     protected void updateChecksumWithIPv4(Ipv4Packet ipv4) {
         raw.pktBuf.int16(6, 0);
-        var pseudo = Utils.buildPseudoIPv4Header(ipv4, Consts.IP_PROTOCOL_UDP, raw.pktBuf.length());
-        var toCalculate = pseudo.concat(raw.pktBuf);
-        var cksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+        var cksum = Utils.calculateChecksum(ipv4, Consts.IP_PROTOCOL_UDP, raw.pktBuf);
 
         if (cksum == 0) {
             cksum = 0xffff;
@@ -150,9 +179,7 @@ public class UdpPacket extends TransportPacket {
 
     protected void updateChecksumWithIPv6(Ipv6Packet ipv6) {
         raw.pktBuf.int16(6, 0);
-        var pseudo = Utils.buildPseudoIPv6Header(ipv6, Consts.IP_PROTOCOL_UDP, raw.pktBuf.length());
-        var toCalculate = pseudo.concat(raw.pktBuf);
-        var cksum = Utils.calculateChecksum(toCalculate, toCalculate.length());
+        var cksum = Utils.calculateChecksum(ipv6, Consts.IP_PROTOCOL_UDP, raw.pktBuf);
 
         if (cksum == 0) {
             cksum = 0xffff;
@@ -163,8 +190,20 @@ public class UdpPacket extends TransportPacket {
         checksumCalculated();
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        srcPort = 0;
+        dstPort = 0;
+        length = 0;
+        checksum = 0;
+        data = null;
+        lazyFieldsPending = false;
+    }
+
     @Override
     public UdpPacket copy() {
+        ensureLazyFields();
         var ret = new UdpPacket();
         ret.srcPort = srcPort;
         ret.dstPort = dstPort;
@@ -177,7 +216,7 @@ public class UdpPacket extends TransportPacket {
 
     @Override
     public String description() {
-        return "udp,tp_src=" + srcPort + ",tp_dst=" + dstPort + ",data=" + (data == null ? "" : data.description());
+        return "udp,tp_src=" + srcPort + ",tp_dst=" + dstPort + ",data=" + (getData() == null ? "" : data.description());
     }
 
     @Override
@@ -188,8 +227,9 @@ public class UdpPacket extends TransportPacket {
     @Override
     public void setSrcPort(int srcPort) {
         if (raw != null) {
+            int old = raw.pktBuf.uint16(0);
             raw.pktBuf.int16(0, srcPort);
-            checksumSkipped();
+            checksumFieldChanges(old, srcPort);
         }
         this.srcPort = srcPort;
     }
@@ -202,13 +242,15 @@ public class UdpPacket extends TransportPacket {
     @Override
     public void setDstPort(int dstPort) {
         if (raw != null) {
+            int old = raw.pktBuf.uint16(2);
             raw.pktBuf.int16(2, dstPort);
-            checksumSkipped();
+            checksumFieldChanges(old, dstPort);
         }
         this.dstPort = dstPort;
     }
 
     public int getLength() {
+        ensureLazyFields();
         return length;
     }
 
@@ -218,6 +260,7 @@ public class UdpPacket extends TransportPacket {
     }
 
     public int getChecksum() {
+        ensureLazyFields();
         return checksum;
     }
 
@@ -227,6 +270,7 @@ public class UdpPacket extends TransportPacket {
     }
 
     public AbstractPacket getData() {
+        ensureLazyFields();
         return data;
     }
 
@@ -244,7 +288,7 @@ public class UdpPacket extends TransportPacket {
     @Override
     public void clearAllRawPackets() {
         clearRawPacket();
-        data.clearAllRawPackets();
+        getData().clearAllRawPackets();
     }
 
     @Override
@@ -252,16 +296,20 @@ public class UdpPacket extends TransportPacket {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         UdpPacket udpPacket = (UdpPacket) o;
+        ensureLazyFields();
+        udpPacket.ensureLazyFields();
         return srcPort == udpPacket.srcPort && dstPort == udpPacket.dstPort && length == udpPacket.length && checksum == udpPacket.checksum && Objects.equals(data, udpPacket.data);
     }
 
     @Override
     public int hashCode() {
+        ensureLazyFields();
         return Objects.hash(srcPort, dstPort, length, checksum, data);
     }
 
     @Override
     public String toString() {
+        ensureLazyFields();
         return "UdpPacket{" +
             "srcPort=" + srcPort +
             ", dstPort=" + dstPort +
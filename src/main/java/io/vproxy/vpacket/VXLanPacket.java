@@ -38,6 +38,46 @@ public class VXLanPacket extends AbstractPacket {
         return null;
     }
 
+    /**
+     * Encapsulate <code>packet</code> into this vxlan packet in place:
+     * the vxlan header is written into the headroom in front of the raw bytes of <code>packet</code>,
+     * so the ethernet frame is neither moved nor copied.<br>
+     * Set the vni before calling this method, or modify it later, the raw bytes are updated in place
+     * (the raw packets of the parent packets are cleared, because their checksums may cover the header).
+     *
+     * @return false if <code>packet</code> does not have 8 bytes of headroom, nothing is changed in this case,
+     * use {@link #setPacket(EthernetPacket)} instead
+     */
+    public boolean encapsulate(EthernetPacket packet) {
+        var header = encapsulateInHeadroom(packet, 8);
+        if (header == null) {
+            return false;
+        }
+        header.set(0, (byte) flags)
+            .int24(1, reserved1)
+            .int24(4, vni)
+            .set(7, (byte) reserved2);
+        this.packet = packet;
+        return true;
+    }
+
+    /**
+     * Detach and return the inner ethernet packet, which keeps its raw bytes in the original buffer,
+     * and the vxlan header becomes the headroom of the ethernet packet,
+     * which can be reused by {@link #encapsulate(EthernetPacket)} or {@link EthernetPacket#setVlan(int)}.<br>
+     * This packet has no inner packet after calling this method.
+     */
+    public EthernetPacket decapsulate() {
+        var packet = this.packet;
+        if (packet == null) {
+            return null;
+        }
+        clearRawPacket();
+        packet.recordParent(null);
+        this.packet = null;
+        return packet;
+    }
+
     @Override
     protected ByteArray buildPacket(int flags) {
         return ByteArray.allocate(8)
@@ -99,7 +139,10 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setFlags(int flags) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.pktBuf.set(0, (byte) flags);
+            clearParentRawPacket();
+        }
         this.flags = flags;
     }
 
@@ -108,7 +151,10 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setReserved1(int reserved1) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.pktBuf.int24(1, reserved1);
+            clearParentRawPacket();
+        }
         this.reserved1 = reserved1;
     }
 
@@ -117,7 +163,10 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setVni(int vni) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.pktBuf.int24(4, vni);
+            clearParentRawPacket();
+        }
         this.vni = vni;
     }
 
@@ -126,7 +175,10 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setReserved2(int reserved2) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.pktBuf.set(7, (byte) reserved2);
+            clearParentRawPacket();
+        }
         this.reserved2 = reserved2;
     }
 
@@ -0,0 +1,302 @@
+package io.vproxy.vpacket.tuples;
+
+import io.vproxy.base.util.Consts;
+import io.vproxy.vfd.IP;
+import io.vproxy.vpacket.*;
+
+/**
+ * A compact 5-tuple flow key, with vlan and devin.<br>
+ * All fields are packed into six longs, no object is referenced, so the key can be copied and compared cheaply,
+ * and the same object can be refilled for every packet.<br>
+ * <pre>
+ * srcHi, srcLo: source address, for ipv4, srcHi is 0 and srcLo is the unsigned address
+ * dstHi, dstLo: destination address, same as the source address
+ * meta: srcPort(16) | dstPort(16) | 0(16) | proto(8) | 0(7) | ipv6(1)
+ * link: devin(32) | vlan(32)
+ * </pre>
+ * Ports are 0 for protocols other than tcp and udp.
+ */
+public final class FlowKey {
+    private long srcHi;
+    private long srcLo;
+    private long dstHi;
+    private long dstLo;
+    private long meta;
+    private long link = EthernetPacket.NO_VLAN_CODE & 0xffffffffL;
+
+    public FlowKey() {
+    }
+
+    public FlowKey(FlowKey that) {
+        set(that);
+    }
+
+    public FlowKey set(FlowKey that) {
+        this.srcHi = that.srcHi;
+        this.srcLo = that.srcLo;
+        this.dstHi = that.dstHi;
+        this.dstLo = that.dstLo;
+        this.meta = that.meta;
+        this.link = that.link;
+        return this;
+    }
+
+    FlowKey set(long srcHi, long srcLo, long dstHi, long dstLo, long meta, long link) {
+        this.srcHi = srcHi;
+        this.srcLo = srcLo;
+        this.dstHi = dstHi;
+        this.dstLo = dstLo;
+        this.meta = meta;
+        this.link = link;
+        return this;
+    }
+
+    public FlowKey setIPv4(int src, int dst, int proto, int srcPort, int dstPort) {
+        this.srcHi = 0;
+        this.srcLo = src & 0xffffffffL;
+        this.dstHi = 0;
+        this.dstLo = dst & 0xffffffffL;
+        this.meta = meta(false, proto, srcPort, dstPort);
+        return this;
+    }
+
+    public FlowKey setIPv6(long srcHi, long srcLo, long dstHi, long dstLo, int proto, int srcPort, int dstPort) {
+        this.srcHi = srcHi;
+        this.srcLo = srcLo;
+        this.dstHi = dstHi;
+        this.dstLo = dstLo;
+        this.meta = meta(true, proto, srcPort, dstPort);
+        return this;
+    }
+
+    private static long meta(boolean ipv6, int proto, int srcPort, int dstPort) {
+        return ((long) (srcPort & 0xffff) << 48)
+            | ((long) (dstPort & 0xffff) << 32)
+            | ((proto & 0xff) << 8)
+            | (ipv6 ? 1 : 0);
+    }
+
+    public FlowKey setDevin(int devin) {
+        this.link = ((long) devin << 32) | (link & 0xffffffffL);
+        return this;
+    }
+
+    public FlowKey setVlan(int vlan) {
+        this.link = (link & 0xffffffff00000000L) | (vlan & 0xffffffffL);
+        return this;
+    }
+
+    /**
+     * Fill the key with the packet, the packet may be partially parsed, no object is allocated when reading the packet.
+     *
+     * @return false if it's not an ip packet, the key is not modified in this case
+     */
+    public boolean from(int devin, EthernetPacket pkt) {
+        var l3 = pkt.getPacket();
+        int proto;
+        AbstractPacket l4;
+        if (l3 instanceof Ipv4Packet) {
+            var ip = (Ipv4Packet) l3;
+            proto = ip.getProtocol();
+            l4 = ip.getPacket();
+            srcHi = 0;
+            srcLo = ip.getSrcIPv4Value() & 0xffffffffL;
+            dstHi = 0;
+            dstLo = ip.getDstIPv4Value() & 0xffffffffL;
+        } else if (l3 instanceof Ipv6Packet) {
+            var ip = (Ipv6Packet) l3;
+            proto = ip.getProtocol();
+            l4 = ip.getPacket();
+            srcHi = ip.getSrcHigh64();
+            srcLo = ip.getSrcLow64();
+            dstHi = ip.getDstHigh64();
+            dstLo = ip.getDstLow64();
+        } else {
+            return false;
+        }
+        int srcPort = 0;
+        int dstPort = 0;
+        if (l4 instanceof TcpPacket) {
+            srcPort = ((TcpPacket) l4).getSrcPort();
+            dstPort = ((TcpPacket) l4).getDstPort();
+        } else if (l4 instanceof UdpPacket) {
+            srcPort = ((UdpPacket) l4).getSrcPort();
+            dstPort = ((UdpPacket) l4).getDstPort();
+        }
+        meta = meta(l3 instanceof Ipv6Packet, proto, srcPort, dstPort);
+        link = ((long) devin << 32) | (pkt.getVlan() & 0xffffffffL);
+        return true;
+    }
+
+    /**
+     * Swap source and destination, e.g. to build the key of the reply direction.
+     */
+    public FlowKey reverse() {
+        long hi = srcHi;
+        long lo = srcLo;
+        srcHi = dstHi;
+        srcLo = dstLo;
+        dstHi = hi;
+        dstLo = lo;
+        meta = ((meta >>> 16) & 0xffff00000000L) | ((meta & 0xffff00000000L) << 16) | (meta & 0xffffffffL);
+        return this;
+    }
+
+    public boolean isIPv6() {
+        return (meta & 1) != 0;
+    }
+
+    public int getSrcIPv4Value() {
+        return (int) srcLo;
+    }
+
+    public int getDstIPv4Value() {
+        return (int) dstLo;
+    }
+
+    public long getSrcHigh64() {
+        return srcHi;
+    }
+
+    public long getSrcLow64() {
+        return srcLo;
+    }
+
+    public long getDstHigh64() {
+        return dstHi;
+    }
+
+    public long getDstLow64() {
+        return dstLo;
+    }
+
+    public int getProtocol() {
+        return (int) ((meta >>> 8) & 0xff);
+    }
+
+    public int getSrcPort() {
+        return (int) (meta >>> 48);
+    }
+
+    public int getDstPort() {
+        return (int) ((meta >>> 32) & 0xffff);
+    }
+
+    public int getDevin() {
+        return (int) (link >>> 32);
+    }
+
+    public int getVlan() {
+        return (int) link;
+    }
+
+    /**
+     * @return true if the ports are part of the key
+     */
+    public boolean hasPorts() {
+        int proto = getProtocol();
+        return proto == Consts.IP_PROTOCOL_TCP || proto == Consts.IP_PROTOCOL_UDP;
+    }
+
+    public IP getSrc() {
+        return toIP(srcHi, srcLo);
+    }
+
+    public IP getDst() {
+        return toIP(dstHi, dstLo);
+    }
+
+    private IP toIP(long hi, long lo) {
+        if (isIPv6()) {
+            byte[] b = new byte[16];
+            for (int i = 0; i < 8; ++i) {
+                b[i] = (byte) (hi >>> (56 - i * 8));
+                b[8 + i] = (byte) (lo >>> (56 - i * 8));
+            }
+            return IP.fromIPv6(b);
+        } else {
+            int n = (int) lo;
+            return IP.fromIPv4(new byte[]{(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n});
+        }
+    }
+
+    long srcHi() {
+        return srcHi;
+    }
+
+    long srcLo() {
+        return srcLo;
+    }
+
+    long dstHi() {
+        return dstHi;
+    }
+
+    long dstLo() {
+        return dstLo;
+    }
+
+    long meta() {
+        return meta;
+    }
+
+    long link() {
+        return link;
+    }
+
+    /**
+     * A fast non-cryptographic hash of all fields.
+     */
+    public long hash64() {
+        return hash64(srcHi, srcLo, dstHi, dstLo, meta, link);
+    }
+
+    static long hash64(long srcHi, long srcLo, long dstHi, long dstLo, long meta, long link) {
+        long h = 0x243F6A8885A308D3L;
+        h = mix(h, srcHi);
+        h = mix(h, srcLo);
+        h = mix(h, dstHi);
+        h = mix(h, dstLo);
+        h = mix(h, meta);
+        h = mix(h, link);
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mix(long h, long w) {
+        return Long.rotateLeft(h ^ (w * 0x9E3779B97F4A7C15L), 27) * 0xBF58476D1CE4E5B9L;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FlowKey)) return false;
+        FlowKey that = (FlowKey) o;
+        return srcHi == that.srcHi && srcLo == that.srcLo && dstHi == that.dstHi && dstLo == that.dstLo
+            && meta == that.meta && link == that.link;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "FlowKey{" +
+            "devin=" + getDevin() +
+            ", vlan=" + getVlan() +
+            ", src=" + getSrc().formatToIPString() +
+            ", dst=" + getDst().formatToIPString() +
+            ", proto=" + getProtocol() +
+            ", srcPort=" + getSrcPort() +
+            ", dstPort=" + getDstPort() +
+            '}';
+    }
+}
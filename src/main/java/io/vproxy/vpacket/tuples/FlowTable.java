@@ -0,0 +1,271 @@
+package io.vproxy.vpacket.tuples;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A hash map keyed by {@link FlowKey}.<br>
+ * The keys are copied into a flat long array (6 longs per slot), together with their hash,
+ * so a lookup reads one or two cache lines of the key array and never dereferences a key object.
+ * Uses open addressing with linear probing, and deletes with backward shifting, same as
+ * {@link io.vproxy.base.util.coll.IntObjectHashMap}.<br>
+ * The FlowKey objects passed in are not retained, so the same key object can be refilled and reused for every packet.<br>
+ * Null values are not allowed, null returned from get/remove/put means absent.<br>
+ * The table must not be modified when iterating.
+ *
+ * @param <V> value type
+ */
+public class FlowTable<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 28;
+    private static final int WORDS = 6;
+
+    private long[] keys;
+    private int[] hashes;
+    private Object[] values; // null means the slot is empty
+    private int mask;
+    private int size;
+    private int threshold;
+
+    private final FlowKey visitingKey = new FlowKey();
+
+    public FlowTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FlowTable(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize = " + expectedSize + " < 0");
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        // keep load factor <= 0.5
+        long n = Math.max(DEFAULT_CAPACITY, (long) expectedSize * 2);
+        if (n >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) n - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * WORDS];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity == MAX_CAPACITY ? MAX_CAPACITY - 1 : capacity >>> 1;
+    }
+
+    private static int hash(FlowKey key) {
+        return key.hashCode();
+    }
+
+    private boolean keyEquals(int i, int hash, FlowKey key) {
+        if (hashes[i] != hash) {
+            return false;
+        }
+        int base = i * WORDS;
+        long[] keys = this.keys;
+        return keys[base] == key.srcHi()
+            && keys[base + 1] == key.srcLo()
+            && keys[base + 2] == key.dstHi()
+            && keys[base + 3] == key.dstLo()
+            && keys[base + 4] == key.meta()
+            && keys[base + 5] == key.link();
+    }
+
+    private void store(int i, int hash, FlowKey key) {
+        int base = i * WORDS;
+        keys[base] = key.srcHi();
+        keys[base + 1] = key.srcLo();
+        keys[base + 2] = key.dstHi();
+        keys[base + 3] = key.dstLo();
+        keys[base + 4] = key.meta();
+        keys[base + 5] = key.link();
+        hashes[i] = hash;
+    }
+
+    private int indexOf(FlowKey key) {
+        int hash = hash(key);
+        int i = hash & mask;
+        while (true) {
+            if (values[i] == null) {
+                return -1;
+            }
+            if (keyEquals(i, hash, key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(FlowKey key) {
+        return indexOf(key) != -1;
+    }
+
+    public V get(FlowKey key) {
+        int i = indexOf(key);
+        if (i == -1) {
+            return null;
+        }
+        //noinspection unchecked
+        return (V) values[i];
+    }
+
+    public V put(FlowKey key, V value) {
+        return put(key, value, false);
+    }
+
+    public V putIfAbsent(FlowKey key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @param func called only when the key is absent, the key passed to the function must not be retained
+     */
+    public V computeIfAbsent(FlowKey key, Function<FlowKey, ? extends V> func) {
+        V v = get(key);
+        if (v != null) {
+            return v;
+        }
+        v = func.apply(key);
+        if (v != null) {
+            put(key, v, false);
+        }
+        return v;
+    }
+
+    private V put(FlowKey key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new IllegalArgumentException("null is not allowed");
+        }
+        int hash = hash(key);
+        int i = hash & mask;
+        while (true) {
+            Object v = values[i];
+            if (v == null) {
+                break;
+            }
+            if (keyEquals(i, hash, key)) {
+                if (!onlyIfAbsent) {
+                    values[i] = value;
+                }
+                //noinspection unchecked
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+        store(i, hash, key);
+        values[i] = value;
+        if (++size > threshold) {
+            rehash();
+        }
+        return null;
+    }
+
+    private void rehash() {
+        if (values.length == MAX_CAPACITY) {
+            throw new IllegalStateException("table is full: size=" + size);
+        }
+        long[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        allocate(oldValues.length << 1);
+        for (int j = 0; j < oldValues.length; ++j) {
+            Object v = oldValues[j];
+            if (v == null) {
+                continue;
+            }
+            int i = oldHashes[j] & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            System.arraycopy(oldKeys, j * WORDS, keys, i * WORDS, WORDS);
+            hashes[i] = oldHashes[j];
+            values[i] = v;
+        }
+    }
+
+    public V remove(FlowKey key) {
+        int i = indexOf(key);
+        if (i == -1) {
+            return null;
+        }
+        //noinspection unchecked
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    private void removeAt(int i) {
+        values[i] = null;
+        --size;
+        // shift back the following entries in the same probe sequence
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = hashes[j] & mask;
+            // move the entry if its home slot is not in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                System.arraycopy(keys, j * WORDS, keys, gap * WORDS, WORDS);
+                hashes[gap] = hashes[j];
+                values[gap] = values[j];
+                values[j] = null;
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public interface Visitor<V> {
+        /**
+         * @param key the key object is reused for every entry, copy it if it needs to be retained
+         */
+        void accept(FlowKey key, V value);
+    }
+
+    public void forEach(Visitor<? super V> visitor) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < values.length; ++i) {
+            Object v = values[i];
+            if (v != null) {
+                int base = i * WORDS;
+                visitingKey.set(keys[base], keys[base + 1], keys[base + 2], keys[base + 3], keys[base + 4], keys[base + 5]);
+                //noinspection unchecked
+                visitor.accept(visitingKey, (V) v);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean[] first = {true};
+        forEach((k, v) -> {
+            if (!first[0]) {
+                sb.append(", ");
+            }
+            first[0] = false;
+            sb.append(k).append("=").append(v);
+        });
+        return sb.append("}").toString();
+    }
+}
@@ -27,7 +27,7 @@ public class PacketFullTuple {
         this.tpSrc = tpSrc;
         this.tpDst = tpDst;
 
-        this.hashCode = hashCode();
+        this.hashCode = Objects.hash(devin, dlSrc, dlDst, nwSrc, nwDst, ipProto, tpSrc, tpDst);
     }
 
     @Override
@@ -50,11 +50,11 @@ public class PacketFullTuple {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         PacketFullTuple that = (PacketFullTuple) o;
-        return devin == that.devin && ipProto == that.ipProto && tpSrc == that.tpSrc && tpDst == that.tpDst && hashCode == that.hashCode && Objects.equals(dlSrc, that.dlSrc) && Objects.equals(dlDst, that.dlDst) && Objects.equals(nwSrc, that.nwSrc) && Objects.equals(nwDst, that.nwDst);
+        return hashCode == that.hashCode && devin == that.devin && ipProto == that.ipProto && tpSrc == that.tpSrc && tpDst == that.tpDst && Objects.equals(dlSrc, that.dlSrc) && Objects.equals(dlDst, that.dlDst) && Objects.equals(nwSrc, that.nwSrc) && Objects.equals(nwDst, that.nwDst);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(devin, dlSrc, dlDst, nwSrc, nwDst, ipProto, tpSrc, tpDst, hashCode);
+        return hashCode;
     }
 }
@@ -0,0 +1,121 @@
+package io.vproxy.vpacket.tuples;
+
+import io.vproxy.base.util.ByteArray;
+
+/**
+ * The Toeplitz hash used by RSS (receive side scaling) of NICs.<br>
+ * The input is src address, dst address, then src port and dst port if the protocol is tcp or udp,
+ * so the result is the same as the hash calculated by a NIC with the same key,
+ * and can be used to pick the same queue/worker as the NIC does.<br>
+ * A table is pre-computed for each input byte position, so the hash costs one lookup per input byte.
+ */
+public class ToeplitzHash {
+    /**
+     * The default key from the RSS specification, also used by many NIC drivers.
+     */
+    private static final byte[] DEFAULT_KEY = {
+        (byte) 0x6d, (byte) 0x5a, (byte) 0x56, (byte) 0xda, (byte) 0x25, (byte) 0x5b, (byte) 0x0e, (byte) 0xc2,
+        (byte) 0x41, (byte) 0x67, (byte) 0x25, (byte) 0x3d, (byte) 0x43, (byte) 0xa3, (byte) 0x8f, (byte) 0xb0,
+        (byte) 0xd0, (byte) 0xca, (byte) 0x2b, (byte) 0xcb, (byte) 0xae, (byte) 0x7b, (byte) 0x30, (byte) 0xb4,
+        (byte) 0x77, (byte) 0xcb, (byte) 0x2d, (byte) 0xa3, (byte) 0x80, (byte) 0x30, (byte) 0xf2, (byte) 0x0c,
+        (byte) 0x6a, (byte) 0x42, (byte) 0xb7, (byte) 0x3b, (byte) 0xbe, (byte) 0xac, (byte) 0x01, (byte) 0xfa,
+    };
+    public static final ToeplitzHash DEFAULT = new ToeplitzHash(DEFAULT_KEY);
+
+    private final int maxInputLength;
+    private final int[] table; // [input byte index * 256 + byte value]
+
+    /**
+     * @param key the hash key, the input can be at most (key.length - 4) bytes,
+     *            a 40 bytes key is required to hash ipv6 with ports.
+     */
+    public ToeplitzHash(byte[] key) {
+        if (key.length < 5) {
+            throw new IllegalArgumentException("key too short: " + key.length);
+        }
+        maxInputLength = key.length - 4;
+        table = new int[maxInputLength * 256];
+        for (int i = 0; i < maxInputLength; ++i) {
+            for (int bit = 0; bit < 8; ++bit) {
+                int window = window(key, i * 8 + bit);
+                int mask = 0x80 >>> bit;
+                for (int b = 0; b < 256; ++b) {
+                    if ((b & mask) != 0) {
+                        table[i * 256 + b] ^= window;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 32 bits of the key starting from bit <code>n</code>
+     */
+    private static int window(byte[] key, int n) {
+        int off = n / 8;
+        int shift = n % 8;
+        long v = 0;
+        for (int i = 0; i < 5; ++i) {
+            v = (v << 8) | (off + i < key.length ? key[off + i] & 0xff : 0);
+        }
+        return (int) (v >>> (8 - shift));
+    }
+
+    public int getMaxInputLength() {
+        return maxInputLength;
+    }
+
+    private int feed32(int h, int pos, int v) {
+        int base = pos * 256;
+        return h ^ table[base + (v >>> 24)]
+            ^ table[base + 256 + ((v >>> 16) & 0xff)]
+            ^ table[base + 512 + ((v >>> 8) & 0xff)]
+            ^ table[base + 768 + (v & 0xff)];
+    }
+
+    private int feed64(int h, int pos, long v) {
+        h = feed32(h, pos, (int) (v >>> 32));
+        return feed32(h, pos + 4, (int) v);
+    }
+
+    /**
+     * The RSS hash of the flow key. devin and vlan are not part of the input.
+     */
+    public int hash(FlowKey key) {
+        boolean ipv6 = key.isIPv6();
+        boolean ports = key.hasPorts();
+        int len = (ipv6 ? 32 : 8) + (ports ? 4 : 0);
+        if (len > maxInputLength) {
+            throw new IllegalArgumentException("input too long: " + len + " > " + maxInputLength);
+        }
+        int h = 0;
+        int pos;
+        if (ipv6) {
+            h = feed64(h, 0, key.srcHi());
+            h = feed64(h, 8, key.srcLo());
+            h = feed64(h, 16, key.dstHi());
+            h = feed64(h, 24, key.dstLo());
+            pos = 32;
+        } else {
+            h = feed32(h, 0, (int) key.srcLo());
+            h = feed32(h, 4, (int) key.dstLo());
+            pos = 8;
+        }
+        if (ports) {
+            h = feed32(h, pos, (int) (key.meta() >>> 32));
+        }
+        return h;
+    }
+
+    public int hash(ByteArray input) {
+        int len = input.length();
+        if (len > maxInputLength) {
+            throw new IllegalArgumentException("input too long: " + len + " > " + maxInputLength);
+        }
+        int h = 0;
+        for (int i = 0; i < len; ++i) {
+            h ^= table[i * 256 + input.uint8(i)];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,323 @@
+package io.vproxy.test;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.RingBufferETHandler;
+import io.vproxy.base.util.ringbuffer.MPSCRingBuffer;
+import io.vproxy.base.util.ringbuffer.SPSCRingBuffer;
+import io.vproxy.vfd.ReadableByteStream;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestConcurrentRingBuffer {
+    private static class CountingHandler implements RingBufferETHandler {
+        final AtomicInteger readable = new AtomicInteger();
+        final AtomicInteger writable = new AtomicInteger();
+
+        @Override
+        public void readableET() {
+            readable.incrementAndGet();
+        }
+
+        @Override
+        public void writableET() {
+            writable.incrementAndGet();
+        }
+    }
+
+    // a stream providing at most `max` bytes per read, the bytes are the sequence counting from 0 until `end`
+    private static class SeqStream implements ReadableByteStream {
+        final int max;
+        final int end;
+        int next;
+
+        SeqStream(int max, int end) {
+            this.max = max;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            int n = Math.min(Math.min(max, dst.remaining()), end - next);
+            for (int i = 0; i < n; ++i) {
+                dst.put((byte) next++);
+            }
+            return n;
+        }
+    }
+
+    private static byte[] seq(int from, int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; ++i) {
+            b[i] = (byte) (from + i);
+        }
+        return b;
+    }
+
+    private static byte[] writeOut(RingBuffer rb, int len) {
+        var arr = ByteArray.allocate(len);
+        int n = rb.writeTo(arr);
+        return arr.sub(0, n).toJavaArray();
+    }
+
+    private static void checkWrapAround(RingBuffer rb, boolean stream) throws Exception {
+        var s = new SeqStream(5, Integer.MAX_VALUE);
+        int stored = 0;
+        int consumed = 0;
+        for (int i = 0; i < 100; ++i) {
+            int n;
+            if (stream) {
+                n = rb.storeBytesFrom(s);
+            } else {
+                n = rb.storeBytesFrom(ByteArray.from(seq(stored, 5)));
+            }
+            stored += n;
+            byte[] b = writeOut(rb, 3);
+            assertArrayEquals(seq(consumed, b.length), b);
+            consumed += b.length;
+            assertEquals(stored - consumed, rb.used());
+        }
+        byte[] b = writeOut(rb, rb.used());
+        assertArrayEquals(seq(consumed, b.length), b);
+        assertEquals(0, rb.used());
+        assertTrue(stored > rb.capacity() * 4);
+    }
+
+    @Test
+    public void spscWrapAround() throws Exception {
+        checkWrapAround(SPSCRingBuffer.allocate(16), false);
+        checkWrapAround(SPSCRingBuffer.allocateDirect(16), true);
+    }
+
+    @Test
+    public void mpscWrapAround() throws Exception {
+        checkWrapAround(MPSCRingBuffer.allocate(16), false);
+        checkWrapAround(MPSCRingBuffer.allocateDirect(16), true);
+    }
+
+    @Test
+    public void spscConcurrent() throws Exception {
+        var rb = SPSCRingBuffer.allocate(1024);
+        int total = 1024 * 200;
+        var err = new AtomicReference<Throwable>();
+        var producer = new Thread(() -> {
+            try {
+                var s = new SeqStream(100, total);
+                while (s.next < total) {
+                    if (rb.storeBytesFrom(s) == 0) {
+                        Thread.yield();
+                    }
+                }
+            } catch (Throwable t) {
+                err.set(t);
+            }
+        });
+        producer.start();
+        int consumed = 0;
+        while (consumed < total && err.get() == null) {
+            byte[] b = writeOut(rb, 333);
+            assertArrayEquals(seq(consumed, b.length), b);
+            consumed += b.length;
+            if (b.length == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertNull(err.get());
+        assertEquals(total, consumed);
+        assertEquals(0, rb.used());
+    }
+
+    private static final int MSG_LEN = 16;
+
+    // producer(1) | seq(4) | payload(11), the payload is derived from producer and seq
+    private static byte[] message(int producer, int seq) {
+        byte[] b = new byte[MSG_LEN];
+        var a = ByteArray.from(b);
+        a.set(0, (byte) producer).int32(1, seq);
+        for (int i = 5; i < MSG_LEN; ++i) {
+            b[i] = (byte) (producer * 31 + seq + i);
+        }
+        return b;
+    }
+
+    // provides one whole message per read, or nothing if the space is not enough
+    private static class MessageStream implements ReadableByteStream {
+        final int producer;
+        int seq;
+
+        MessageStream(int producer) {
+            this.producer = producer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return (int) read(new ByteBuffer[]{dst});
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts) {
+            long remaining = 0;
+            for (var dst : dsts) {
+                remaining += dst.remaining();
+            }
+            if (remaining < MSG_LEN) {
+                return 0;
+            }
+            var msg = ByteBuffer.wrap(message(producer, seq++));
+            for (var dst : dsts) {
+                int n = Math.min(dst.remaining(), msg.remaining());
+                dst.put(msg.slice().limit(n));
+                msg.position(msg.position() + n);
+            }
+            return MSG_LEN;
+        }
+    }
+
+    @Test
+    public void mpscConcurrent() throws Exception {
+        var rb = MPSCRingBuffer.allocate(MSG_LEN * 10 + 7); // messages wrap around at different positions
+        int producers = 4;
+        int messages = 2000;
+        var err = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            int id = p;
+            // half of the producers store with ByteArray, the others read from streams
+            boolean stream = p % 2 == 1;
+            var t = new Thread(() -> {
+                try {
+                    var s = new MessageStream(id);
+                    int seq = 0;
+                    while (seq < messages) {
+                        int n;
+                        if (stream) {
+                            n = rb.storeBytesFrom(s);
+                        } else {
+                            n = rb.storeBytesFrom(ByteArray.from(message(id, seq)));
+                        }
+                        if (n == 0) {
+                            Thread.yield();
+                            continue;
+                        }
+                        assertEquals(MSG_LEN, n);
+                        ++seq;
+                    }
+                } catch (Throwable e) {
+                    err.set(e);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        int[] next = new int[producers];
+        var pending = ByteArray.allocate(0);
+        int total = producers * messages;
+        int received = 0;
+        while (received < total && err.get() == null) {
+            byte[] b = writeOut(rb, 50);
+            if (b.length == 0) {
+                Thread.yield();
+                continue;
+            }
+            pending = pending.concat(ByteArray.from(b)).copy();
+            while (pending.length() >= MSG_LEN) {
+                var msg = pending.sub(0, MSG_LEN).toJavaArray();
+                int p = msg[0];
+                int seq = ByteArray.from(msg).int32(1);
+                assertEquals(next[p], seq);
+                assertArrayEquals(message(p, seq), msg);
+                ++next[p];
+                ++received;
+                pending = pending.sub(MSG_LEN, pending.length() - MSG_LEN).copy();
+            }
+        }
+        for (var t : threads) {
+            t.join();
+        }
+        assertNull(err.get());
+        assertEquals(total, received);
+        assertEquals(0, pending.length());
+        assertEquals(0, rb.used());
+    }
+
+    @Test
+    public void spscEvents() throws Exception {
+        var rb = SPSCRingBuffer.allocate(8);
+        var h = new CountingHandler();
+        rb.addHandler(h);
+
+        rb.storeBytesFrom(ByteArray.from(seq(0, 3)));
+        assertEquals(1, h.readable.get());
+        rb.storeBytesFrom(ByteArray.from(seq(3, 3)));
+        assertEquals(1, h.readable.get()); // not empty before storing
+
+        writeOut(rb, 2);
+        assertEquals(0, h.writable.get()); // not full before consuming
+        rb.storeBytesFrom(ByteArray.from(seq(6, 4)));
+        assertEquals(0, rb.free());
+        writeOut(rb, 1);
+        assertEquals(1, h.writable.get());
+
+        writeOut(rb, rb.used());
+        rb.storeBytesFrom(ByteArray.from(seq(0, 1)));
+        assertEquals(2, h.readable.get());
+    }
+
+    @Test
+    public void mpscEvents() throws Exception {
+        var rb = MPSCRingBuffer.allocate(8);
+        var h = new CountingHandler();
+        rb.addHandler(h);
+
+        assertEquals(6, rb.storeBytesFrom(ByteArray.from(seq(0, 6))));
+        assertEquals(1, h.readable.get());
+
+        // does not fit, the buffer is not full, but the producer is notified when space is freed
+        assertEquals(0, rb.storeBytesFrom(ByteArray.from(seq(6, 4))));
+        assertEquals(0, h.writable.get());
+        writeOut(rb, 1);
+        assertEquals(1, h.writable.get());
+        writeOut(rb, 1);
+        assertEquals(1, h.writable.get()); // already notified
+        assertEquals(4, rb.storeBytesFrom(ByteArray.from(seq(6, 4))));
+        assertEquals(1, h.readable.get());
+    }
+
+    @Test
+    public void mpscStreamReservation() throws Exception {
+        var rb = MPSCRingBuffer.allocate(16);
+        var h = new CountingHandler();
+        rb.addHandler(h);
+
+        int[] storedWhileReading = {-1};
+        ReadableByteStream s = dst -> {
+            // another producer stores while the stream is being read
+            storedWhileReading[0] = rb.storeBytesFrom(ByteArray.from(seq(100, 2)));
+            dst.put(seq(0, 3));
+            return 3;
+        };
+        assertEquals(3, rb.storeBytesFrom(s));
+        assertEquals(0, storedWhileReading[0]);
+        assertEquals(3, rb.used());
+        assertEquals(13, rb.free());
+        assertEquals(1, h.writable.get()); // the space not used is given back
+
+        assertEquals(2, rb.storeBytesFrom(ByteArray.from(seq(100, 2))));
+        assertArrayEquals(seq(0, 3), writeOut(rb, 3));
+        assertArrayEquals(seq(100, 2), writeOut(rb, 2));
+
+        // EOF gives back all the space
+        assertEquals(-1, rb.storeBytesFrom((ReadableByteStream) dst -> -1));
+        assertEquals(16, rb.free());
+        assertEquals(16, rb.storeBytesFrom(ByteArray.from(seq(0, 16))));
+    }
+}
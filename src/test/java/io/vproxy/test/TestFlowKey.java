@@ -0,0 +1,133 @@
+package io.vproxy.test;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
+import io.vproxy.vfd.IP;
+import io.vproxy.vpacket.tuples.FlowKey;
+import io.vproxy.vpacket.tuples.FlowTable;
+import io.vproxy.vpacket.tuples.ToeplitzHash;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestFlowKey {
+    private static FlowKey ipv4(String src, int srcPort, String dst, int dstPort, int proto) {
+        return new FlowKey().setIPv4(IP.fromIPv4(src).getIPv4Value(), IP.fromIPv4(dst).getIPv4Value(),
+            proto, srcPort, dstPort);
+    }
+
+    private static FlowKey ipv6(String src, int srcPort, String dst, int dstPort, int proto) {
+        var s = ByteArray.from(IP.from(src).getAddress());
+        var d = ByteArray.from(IP.from(dst).getAddress());
+        return new FlowKey().setIPv6(s.int64(0), s.int64(8), d.int64(0), d.int64(8), proto, srcPort, dstPort);
+    }
+
+    private static void checkRss(FlowKey noPorts, FlowKey withPorts, int expectedIp, int expectedTcp) {
+        assertEquals(expectedIp, ToeplitzHash.DEFAULT.hash(noPorts));
+        assertEquals(expectedTcp, ToeplitzHash.DEFAULT.hash(withPorts));
+    }
+
+    // the verification suite of "Verifying the RSS Hash Calculation", Microsoft
+    private static void checkRssIPv4(String dst, int dstPort, String src, int srcPort, int expectedIp, int expectedTcp) {
+        checkRss(
+            ipv4(src, srcPort, dst, dstPort, Consts.IP_PROTOCOL_ICMP),
+            ipv4(src, srcPort, dst, dstPort, Consts.IP_PROTOCOL_TCP),
+            expectedIp, expectedTcp);
+    }
+
+    private static void checkRssIPv6(String dst, int dstPort, String src, int srcPort, int expectedIp, int expectedTcp) {
+        checkRss(
+            ipv6(src, srcPort, dst, dstPort, Consts.IP_PROTOCOL_ICMPv6),
+            ipv6(src, srcPort, dst, dstPort, Consts.IP_PROTOCOL_TCP),
+            expectedIp, expectedTcp);
+    }
+
+    @Test
+    public void toeplitzIPv4() {
+        checkRssIPv4("161.142.100.80", 1766, "66.9.149.187", 2794, 0x323e8fc2, 0x51ccc178);
+        checkRssIPv4("65.69.140.83", 4739, "199.92.111.2", 14230, 0xd718262a, 0xc626b0ea);
+        checkRssIPv4("12.22.207.184", 38024, "24.19.198.95", 12898, 0xd2d0a5de, 0x5c2b394a);
+        checkRssIPv4("209.142.163.6", 2217, "38.27.205.30", 48228, 0x82989176, 0xafc7327f);
+        checkRssIPv4("202.188.127.2", 1303, "153.39.163.191", 44251, 0x5d1809c5, 0x10e828a2);
+    }
+
+    @Test
+    public void toeplitzIPv6() {
+        checkRssIPv6("3ffe:2501:200:3::1", 1766, "3ffe:2501:200:1fff::7", 2794, 0x2cc18cd5, 0x40207d3d);
+        checkRssIPv6("ff02::1", 4739, "3ffe:501:8::260:97ff:fe40:efab", 14230, 0x0f0c461c, 0xdde51bbf);
+        checkRssIPv6("fe80::200:f8ff:fe21:67cf", 38024, "3ffe:1900:4545:3:200:f8ff:fe21:67cf", 44251, 0x4b61e985, 0x02d1feef);
+    }
+
+    @Test
+    public void toeplitzByteArrayInput() {
+        var key = ipv4("66.9.149.187", 2794, "161.142.100.80", 1766, Consts.IP_PROTOCOL_TCP);
+        var input = ByteArray.allocate(12)
+            .int32(0, key.getSrcIPv4Value()).int32(4, key.getDstIPv4Value())
+            .int16(8, key.getSrcPort()).int16(10, key.getDstPort());
+        assertEquals(ToeplitzHash.DEFAULT.hash(key), ToeplitzHash.DEFAULT.hash(input));
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        var a = ipv4("10.0.0.1", 1234, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP).setDevin(3).setVlan(100);
+        var b = new FlowKey(a);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.hash64(), b.hash64());
+
+        assertNotEquals(a, new FlowKey(a).setDevin(4));
+        assertNotEquals(a, new FlowKey(a).setVlan(101));
+        assertNotEquals(a, ipv4("10.0.0.1", 1234, "10.0.0.2", 80, Consts.IP_PROTOCOL_UDP).setDevin(3).setVlan(100));
+
+        var r = new FlowKey(a).reverse();
+        assertNotEquals(a, r);
+        assertEquals(80, r.getSrcPort());
+        assertEquals(1234, r.getDstPort());
+        assertEquals(a, r.reverse());
+
+        var v6 = ipv6("fd00::1", 1234, "fd00::2", 80, Consts.IP_PROTOCOL_TCP);
+        assertEquals(v6, new FlowKey(v6));
+        assertEquals(IP.from("fd00::1"), v6.getSrc());
+        assertNotEquals(v6, ipv6("fd00::1", 1234, "fd00::3", 80, Consts.IP_PROTOCOL_TCP));
+    }
+
+    @Test
+    public void flowTable() {
+        var table = new FlowTable<Integer>();
+        int n = 1000;
+        for (int i = 0; i < n; ++i) {
+            assertNull(table.put(ipv4("10.0.0.1", i, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP), i));
+        }
+        assertEquals(n, table.size());
+
+        // the key object can be reused for lookups
+        var key = new FlowKey();
+        for (int i = 0; i < n; ++i) {
+            key.setIPv4(IP.fromIPv4("10.0.0.1").getIPv4Value(), IP.fromIPv4("10.0.0.2").getIPv4Value(),
+                Consts.IP_PROTOCOL_TCP, i, 80);
+            assertEquals(Integer.valueOf(i), table.get(key));
+        }
+        assertNull(table.get(ipv4("10.0.0.1", 0, "10.0.0.2", 80, Consts.IP_PROTOCOL_UDP)));
+
+        assertEquals(Integer.valueOf(7), table.put(ipv4("10.0.0.1", 7, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP), 70));
+        assertEquals(Integer.valueOf(70), table.get(ipv4("10.0.0.1", 7, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP)));
+        assertEquals(n, table.size());
+
+        for (int i = 0; i < n; i += 2) {
+            assertNotNull(table.remove(ipv4("10.0.0.1", i, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP)));
+        }
+        assertNull(table.remove(ipv4("10.0.0.1", 0, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP)));
+        assertEquals(n / 2, table.size());
+        for (int i = 0; i < n; ++i) {
+            var v = table.get(ipv4("10.0.0.1", i, "10.0.0.2", 80, Consts.IP_PROTOCOL_TCP));
+            if (i % 2 == 0) {
+                assertNull(v);
+            } else {
+                assertNotNull(v);
+            }
+        }
+
+        table.clear();
+        assertTrue(table.isEmpty());
+    }
+}
@@ -0,0 +1,210 @@
+package io.vproxy.test;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Utils;
+import io.vproxy.vpacket.AbstractIpPacket;
+import io.vproxy.vpacket.IpFragmentReassembler;
+import io.vproxy.vpacket.Ipv4Packet;
+import io.vproxy.vpacket.PacketBytes;
+import io.vproxy.vpacket.PacketDataBuffer;
+import io.vproxy.vpacket.UdpPacket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestIpFragmentReassembler {
+    private static final int PAYLOAD_LEN = 4000;
+    private static final byte[] udp = buildUdp();
+
+    private static byte[] buildUdp() {
+        byte[] b = new byte[8 + PAYLOAD_LEN];
+        var a = ByteArray.from(b);
+        a.int16(0, 1234).int16(2, 5678).int16(4, b.length).int16(6, 0); // no checksum
+        for (int i = 8; i < b.length; ++i) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    /**
+     * @param room bytes in front of and after each fragment in its buffer
+     */
+    private static List<Ipv4Packet> fragments(int id, int chunk, int room) {
+        var ret = new ArrayList<Ipv4Packet>();
+        for (int off = 0; off < udp.length; off += chunk) {
+            int len = Math.min(chunk, udp.length - off);
+            var full = ByteArray.allocateInitZero(room + 20 + len + room);
+            var a = full.sub(room, 20 + len);
+            a.set(0, (byte) 0x45).int16(2, 20 + len).int16(4, id)
+                .int16(6, (off + len < udp.length ? 0x2000 : 0) | (off / 8))
+                .set(8, (byte) 64).set(9, (byte) 17)
+                .int32(12, 0x0a000001).int32(16, 0x0a000002);
+            a.int16(10, Utils.calculateChecksum(a, 20));
+            for (int i = 0; i < len; ++i) {
+                a.set(20 + i, udp[off + i]);
+            }
+            var ip = new Ipv4Packet();
+            String err = ip.from(new PacketDataBuffer(full, room, room));
+            assertNull(err);
+            assertEquals(chunk < udp.length, ip.isFragment());
+            ret.add(ip);
+        }
+        return ret;
+    }
+
+    private static void checkDatagram(AbstractIpPacket ip) {
+        assertNotNull(ip);
+        assertFalse(((Ipv4Packet) ip).isFragment());
+        var u = (UdpPacket) ip.getPacket();
+        assertEquals(1234, u.getSrcPort());
+        assertEquals(5678, u.getDstPort());
+        var data = ((PacketBytes) u.getData()).getBytes();
+        assertEquals(ByteArray.from(udp).sub(8, PAYLOAD_LEN), data);
+    }
+
+    private static AbstractIpPacket feedAll(IpFragmentReassembler r, List<Ipv4Packet> fs) {
+        AbstractIpPacket out = null;
+        for (int i = 0; i < fs.size(); ++i) {
+            out = r.feed(1000, fs.get(i));
+            if (i < fs.size() - 1) {
+                assertNull(out);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void inOrder() {
+        var r = new IpFragmentReassembler();
+        checkDatagram(feedAll(r, fragments(1, 1480, 0)));
+        assertEquals(0, r.size());
+        assertEquals(0, r.getBytes());
+        assertEquals(0, r.getDropped());
+    }
+
+    @Test
+    public void outOfOrder() {
+        var r = new IpFragmentReassembler();
+        var fs = fragments(1, 512, 0);
+        Collections.shuffle(fs, new Random(1));
+        checkDatagram(feedAll(r, fs));
+
+        fs = fragments(2, 1480, 0);
+        Collections.reverse(fs);
+        checkDatagram(feedAll(r, fs));
+        assertEquals(0, r.size());
+        assertEquals(0, r.getBytes());
+    }
+
+    @Test
+    public void notFragment() {
+        var r = new IpFragmentReassembler();
+        var fs = fragments(1, udp.length, 0);
+        assertEquals(1, fs.size());
+        var ip = fs.get(0);
+        assertSame(ip, r.feed(1000, ip));
+        assertEquals(0, r.size());
+    }
+
+    @Test
+    public void duplicate() {
+        var r = new IpFragmentReassembler();
+        var fs = fragments(1, 1480, 0);
+        assertNull(r.feed(1000, fs.get(0)));
+        long bytes = r.getBytes();
+        assertNull(r.feed(1000, fs.get(0)));
+        assertEquals(1, r.size());
+        assertEquals(bytes, r.getBytes());
+        assertEquals(0, r.getDropped());
+        checkDatagram(feedAll(r, fs.subList(1, fs.size())));
+    }
+
+    @Test
+    public void overlapDrop() {
+        var r = new IpFragmentReassembler();
+        var a = fragments(1, 1480, 0);
+        var b = fragments(1, 1024, 0);
+        assertNull(r.feed(1000, a.get(0))); // [0, 1480)
+        assertNull(r.feed(1000, b.get(1))); // [1024, 2048)
+        assertEquals(0, r.size());
+        assertEquals(0, r.getBytes());
+        assertEquals(1, r.getDropped());
+
+        // the remaining fragments start a new datagram, which is never completed
+        for (int i = 1; i < a.size(); ++i) {
+            assertNull(r.feed(1000, a.get(i)));
+        }
+        assertEquals(1, r.size());
+    }
+
+    @Test
+    public void timeout() {
+        var r = new IpFragmentReassembler(IpFragmentReassembler.DEFAULT_MAX_BYTES, 1000);
+        var fs = fragments(1, 1480, 0);
+        assertNull(r.feed(1000, fs.get(0)));
+        assertTrue(r.nextTimeout(1000) <= 1000);
+        r.expire(1999);
+        assertEquals(1, r.size());
+        r.expire(2000);
+        assertEquals(0, r.size());
+        assertEquals(0, r.getBytes());
+        assertEquals(1, r.getDropped());
+
+        // late fragments do not complete the expired datagram
+        for (int i = 1; i < fs.size(); ++i) {
+            assertNull(r.feed(2000, fs.get(i)));
+        }
+    }
+
+    @Test
+    public void eviction() {
+        long max = 65535 * 2;
+        var r = new IpFragmentReassembler(max, 1000);
+        for (int id = 0; id < 1000; ++id) {
+            assertNull(r.feed(1000, fragments(id, 1480, 0).get(0)));
+            assertTrue(r.getBytes() <= max);
+        }
+        assertTrue(r.getDropped() > 0);
+        assertEquals(1000, r.size() + r.getDropped());
+
+        // the most recent datagram is kept
+        var last = fragments(999, 1480, 0);
+        checkDatagram(feedAll(r, last.subList(1, last.size())));
+    }
+
+    @Test
+    public void chargeBuffer() {
+        var r = new IpFragmentReassembler();
+        var fs = fragments(1, 1480, 0);
+        assertNull(r.feed(1000, fs.get(0)));
+        // the fragment fills its buffer, the buffer is kept and charged
+        assertTrue(r.getBytes() >= 20 + 1480);
+    }
+
+    @Test
+    public void copySmallPayloadInLargeBuffer() {
+        var r = new IpFragmentReassembler();
+        int room = 32 * 1024;
+        var fs = fragments(1, 512, room);
+        for (int i = 0; i < fs.size() - 1; ++i) {
+            assertNull(r.feed(1000, fs.get(i)));
+        }
+        // the payloads are copied, so the large buffers are not charged
+        assertTrue(r.getBytes() < (long) fs.size() * 1024);
+
+        // the original buffers can be reused after the payloads are copied
+        for (int i = 0; i < fs.size() - 1; ++i) {
+            var raw = fs.get(i).getRawPacket(0);
+            for (int j = 20; j < raw.length(); ++j) {
+                raw.set(j, (byte) 0);
+            }
+        }
+        checkDatagram(r.feed(1000, fs.get(fs.size() - 1)));
+        assertEquals(0, r.getBytes());
+    }
+}
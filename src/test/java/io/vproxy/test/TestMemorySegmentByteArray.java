@@ -171,6 +171,28 @@ public class TestMemorySegmentByteArray {
         );
     }
 
+    @Test
+    public void uint24() {
+        var x = array.uint24(2);
+        assertEquals(
+            (('2' & 0xff) << 2 * 8) |
+            (('3' & 0xff) << 8) |
+            ('4' & 0xff),
+            x
+        );
+    }
+
+    @Test
+    public void uint24ReverseNetworkByteOrder() {
+        var x = array.uint24ReverseNetworkByteOrder(2);
+        assertEquals(
+            (('4' & 0xff) << 2 * 8) |
+            (('3' & 0xff) << 8) |
+            ('2' & 0xff),
+            x
+        );
+    }
+
     @Test
     public void setInt16() {
         assertEquals('2', array.get(2));
@@ -184,6 +206,23 @@ public class TestMemorySegmentByteArray {
         assertEquals('b', array.get(3));
     }
 
+    @Test
+    public void setInt24() {
+        assertEquals('2', array.get(2));
+        assertEquals('3', array.get(3));
+        assertEquals('4', array.get(4));
+
+        array.int24(2,
+            (('a' & 0xff) << 2 * 8) |
+            (('b' & 0xff) << 8) |
+            ('c' & 0xff)
+        );
+        assertEquals('a', array.get(2));
+        assertEquals('b', array.get(3));
+        assertEquals('c', array.get(4));
+        assertEquals('5', array.get(5));
+    }
+
     @Test
     public void setInt32() {
         assertEquals('2', array.get(2));